@@ -0,0 +1,86 @@
+package com.irhammuch.android.facerecognition;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 query latency of EmbeddingIndex against gallery size: the full scan, and the
+ * coarse index with sqrt(n) lists and a few probes. Embeddings are clustered like
+ * re-identification galleries, many views of a smaller set of identities.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddingIndexBenchmark {
+    private static final int DIM = 128;
+    private static final int K = 10;
+    private static final int PROBES = 8;
+
+    @Param({"1000", "10000", "100000"})
+    public int gallery;
+
+    private EmbeddingIndex scan;
+    private EmbeddingIndex coarse;
+    private float[][] queries;
+    private int next;
+    private final int[] rows = new int[K];
+    private final float[] distances = new float[K];
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(11);
+        float[][] identities = new float[Math.max(1, gallery / 20)][];
+        for (int i = 0; i < identities.length; i++) identities[i] = gaussian(rnd, null, 1f);
+        scan = new EmbeddingIndex(DIM, gallery);
+        coarse = new EmbeddingIndex(DIM, gallery);
+        for (int i = 0; i < gallery; i++) {
+            float[] v = gaussian(rnd, identities[rnd.nextInt(identities.length)], 0.3f);
+            scan.register("e" + i, null, v);
+            coarse.register("e" + i, null, v);
+        }
+        coarse.buildCoarseIndex((int) Math.sqrt(gallery), 8, 1);
+        coarse.setProbes(PROBES);
+        queries = new float[64][];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = gaussian(rnd, identities[rnd.nextInt(identities.length)], 0.3f);
+        }
+    }
+
+    @Benchmark
+    public int fullScan() {
+        return scan.nearest(nextQuery(), rows, distances);
+    }
+
+    @Benchmark
+    public int coarseIndex() {
+        return coarse.nearest(nextQuery(), rows, distances);
+    }
+
+    private float[] nextQuery() {
+        next = (next + 1) & (queries.length - 1);
+        return queries[next];
+    }
+
+    private static float[] gaussian(Random rnd, float[] around, float spread) {
+        float[] v = new float[DIM];
+        for (int i = 0; i < DIM; i++) {
+            v[i] = (around != null ? around[i] : 0f) + spread * (float) rnd.nextGaussian();
+        }
+        return v;
+    }
+}
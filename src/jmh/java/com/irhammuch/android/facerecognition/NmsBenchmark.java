@@ -0,0 +1,134 @@
+package com.irhammuch.android.facerecognition;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NonMaxSuppression against the original List/Integer[] implementation from MainActivity,
+ * on candidate sets shaped like raw YOLOv8 output: a few objects, each surrounded by a
+ * cloud of overlapping anchors, plus scattered low-score noise.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NmsBenchmark {
+    private static final int SIZE = 640;
+    private static final float IOU_THRESH = 0.45f;
+
+    @Param({"300", "2000", "8400"})
+    public int candidates;
+
+    private Detections input;
+    private Detections output;
+    private NonMaxSuppression greedy;
+    private NonMaxSuppression classAware;
+    private List<float[]> legacyBoxes;
+    private List<Float> legacyScores;
+
+    @Setup
+    public void setup() {
+        input = clusteredCandidates(candidates, new Random(7));
+        output = new Detections(100);
+        greedy = new NonMaxSuppression(IOU_THRESH, 100, SIZE, false);
+        classAware = new NonMaxSuppression(IOU_THRESH, 100, SIZE, true);
+        legacyBoxes = new ArrayList<>();
+        legacyScores = new ArrayList<>();
+        for (int i = 0; i < input.size(); i++) {
+            legacyBoxes.add(new float[]{input.x1[i], input.y1[i], input.x2[i], input.y2[i]});
+            legacyScores.add(input.score[i]);
+        }
+    }
+
+    @Benchmark
+    public int legacy() {
+        return legacyNms(legacyBoxes, legacyScores).length;
+    }
+
+    @Benchmark
+    public int grid() {
+        return greedy.run(input, output);
+    }
+
+    @Benchmark
+    public int gridClassAware() {
+        return classAware.run(input, output);
+    }
+
+    @Benchmark
+    public int soft() {
+        return greedy.runSoft(input, 0.5f, 0.25f, output);
+    }
+
+    static Detections clusteredCandidates(int n, Random rnd) {
+        Detections d = new Detections(n);
+        int objects = 8;
+        float[] cx = new float[objects], cy = new float[objects], sz = new float[objects];
+        for (int o = 0; o < objects; o++) {
+            cx[o] = 40 + rnd.nextFloat() * (SIZE - 80);
+            cy[o] = 40 + rnd.nextFloat() * (SIZE - 80);
+            sz[o] = 8 + rnd.nextFloat() * 60;
+        }
+        for (int i = 0; i < n; i++) {
+            if (i % 4 == 3) {
+                // background noise
+                float x = rnd.nextFloat() * (SIZE - 20), y = rnd.nextFloat() * (SIZE - 20);
+                float s = 4 + rnd.nextFloat() * 16;
+                d.add(x, y, x + s, y + s, 0.01f + rnd.nextFloat() * 0.2f, rnd.nextInt(2));
+            } else {
+                int o = rnd.nextInt(objects);
+                float jx = (rnd.nextFloat() - 0.5f) * sz[o] * 0.3f;
+                float jy = (rnd.nextFloat() - 0.5f) * sz[o] * 0.3f;
+                float half = sz[o] * (0.4f + rnd.nextFloat() * 0.2f);
+                d.add(cx[o] + jx - half, cy[o] + jy - half, cx[o] + jx + half, cy[o] + jy + half,
+                        0.3f + rnd.nextFloat() * 0.7f, o & 1);
+            }
+        }
+        return d;
+    }
+
+    // Original MainActivity.iou / nms, kept verbatim as the baseline
+    private static float legacyIou(float[] a, float[] b) {
+        float x1 = Math.max(a[0], b[0]), y1 = Math.max(a[1], b[1]);
+        float x2 = Math.min(a[2], b[2]), y2 = Math.min(a[3], b[3]);
+        float w = Math.max(0, x2 - x1), h = Math.max(0, y2 - y1);
+        float inter = w * h;
+        float areaA = (a[2]-a[0])*(a[3]-a[1]);
+        float areaB = (b[2]-b[0])*(b[3]-b[1]);
+        return inter / (areaA + areaB - inter + 1e-6f);
+    }
+
+    private static int[] legacyNms(List<float[]> boxes, List<Float> scores) {
+        Integer[] idxs = new Integer[boxes.size()];
+        for (int i = 0; i < idxs.length; i++) idxs[i] = i;
+        Arrays.sort(idxs, (i,j) -> -Float.compare(scores.get(i), scores.get(j)));
+        List<Integer> keep = new ArrayList<>();
+        boolean[] rem = new boolean[boxes.size()];
+        for (int i : idxs) {
+            if (rem[i]) continue;
+            keep.add(i);
+            for (int j : idxs) {
+                if (i == j || rem[j]) continue;
+                if (legacyIou(boxes.get(i), boxes.get(j)) > IOU_THRESH) rem[j] = true;
+            }
+        }
+        return keep.stream().mapToInt(x -> x).toArray();
+    }
+}
@@ -0,0 +1,170 @@
+package com.irhammuch.android.facerecognition;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage cost of the pure-Java part of a frame: letterbox math, ARGB to float
+ * normalization, output decode, NMS and coordinate rescaling, plus all post-processing
+ * stages together. AverageTime gives ns/op, SampleTime gives the p99, and running
+ * {@link #main} adds the GC profiler for allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final int SIZE = TensorFixtures.SIZE;
+    private static final float CONF_THRESH = 0.5f;
+    private static final float IOU_THRESH = 0.45f;
+    private static final int MAX_DETECTIONS = 100;
+    private static final int TOP_K = 300;
+
+    /** Fixture name under /fixtures; a synthesized tensor is used if it is missing. */
+    @Param({"output_000"})
+    public String fixture;
+
+    private float[] output;
+    private FloatBuffer outputBuffer; // direct, like the interpreter's output tensor
+    private FramePreprocessor preprocessor;
+    private Letterbox letterbox;
+    private DetectionDecoder decoder;
+    private DetectionDecoder topKDecoder;
+    private NonMaxSuppression nms;
+    private Detections candidates;
+    private Detections decoded;
+    private Detections kept;
+    private Detections scaled;
+    private int letterboxFlip;
+    private int[] sourceFrame;
+    private FramePreprocessor fused;
+
+    @Setup
+    public void setup() {
+        TensorDump dump = TensorFixtures.load(fixture);
+        output = dump.data;
+        outputBuffer = ByteBuffer.allocateDirect(output.length * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        outputBuffer.put(output).rewind();
+
+        preprocessor = new FramePreprocessor(SIZE);
+        int[] frame = TensorFixtures.argbFrame(SIZE, SIZE);
+        System.arraycopy(frame, 0, preprocessor.pixels(), 0, frame.length);
+        sourceFrame = TensorFixtures.argbFrame(1920, 1080);
+        fused = new FramePreprocessor(SIZE);
+        letterbox = new Letterbox(SIZE);
+        letterbox.update(1920, 1080);
+
+        decoder = new DetectionDecoder(dump.shape, SIZE, true, CONF_THRESH);
+        topKDecoder = new DetectionDecoder(dump.shape, SIZE, true, CONF_THRESH, TOP_K);
+        nms = new NonMaxSuppression(IOU_THRESH, MAX_DETECTIONS, SIZE, false);
+        candidates = new Detections(decoder.maxCandidates());
+        decoded = new Detections(decoder.maxCandidates());
+        kept = new Detections(MAX_DETECTIONS);
+        scaled = new Detections(MAX_DETECTIONS);
+        decoder.decode(output, decoded);
+        nms.run(decoded, kept);
+    }
+
+    // calculateResizeParams: alternate source sizes so the cache never short-circuits
+    @Benchmark
+    public float letterbox() {
+        letterboxFlip ^= 1;
+        letterbox.update(letterboxFlip == 0 ? 1920 : 1280, letterboxFlip == 0 ? 1080 : 720);
+        return letterbox.ratio();
+    }
+
+    @Benchmark
+    public ByteBuffer normalize() {
+        return preprocessor.normalize();
+    }
+
+    // letterboxFrom into pixels(), then normalize: two passes over the input
+    @Benchmark
+    public ByteBuffer letterboxThenNormalize() {
+        preprocessor.letterboxFrom(sourceFrame, 1920, 1080);
+        return preprocessor.normalize();
+    }
+
+    // one pass with cached sampling tables, straight into the tensor
+    @Benchmark
+    public ByteBuffer letterboxNormalizeFused() {
+        return fused.letterboxNormalize(sourceFrame, 1920, 1080);
+    }
+
+    @Benchmark
+    public int decode() {
+        return decoder.decode(output, candidates);
+    }
+
+    // copy out of the tensor buffer, then decode the array (the old inferFrame path)
+    @Benchmark
+    public int decodeCopy() {
+        outputBuffer.rewind();
+        outputBuffer.get(output);
+        return decoder.decode(output, candidates);
+    }
+
+    // confidence-first decode straight from the direct buffer
+    @Benchmark
+    public int decodeInPlace() {
+        return decoder.decode(outputBuffer, candidates);
+    }
+
+    @Benchmark
+    public int decodeInPlaceTopK() {
+        return topKDecoder.decode(outputBuffer, candidates);
+    }
+
+    @Benchmark
+    public int nms() {
+        return nms.run(decoded, candidates);
+    }
+
+    // scaleCoords on a fresh copy of the kept boxes (copy is at most MAX_DETECTIONS entries)
+    @Benchmark
+    public float scaleCoords() {
+        scaled.clear();
+        for (int i = 0; i < kept.size(); i++) scaled.add(kept, i);
+        DetectionDecoder.scaleCoords(scaled, letterbox);
+        return scaled.isEmpty() ? 0 : scaled.x1[0];
+    }
+
+    // decode -> NMS -> scale, everything after tflite.run
+    @Benchmark
+    public int postprocess() {
+        decoder.decode(output, candidates);
+        nms.run(candidates, scaled);
+        DetectionDecoder.scaleCoords(scaled, letterbox);
+        return scaled.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PipelineBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
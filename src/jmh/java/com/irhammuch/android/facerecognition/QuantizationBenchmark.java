@@ -0,0 +1,101 @@
+package com.irhammuch.android.facerecognition;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre- and post-processing cost per model variant: input packing (floats vs raw bytes) and
+ * output decoding (float tensor vs quantized tensor with per-candidate dequantization).
+ * FLOAT16 models keep float32 tensors, so they share the FLOAT32 numbers here; interpreter
+ * latency itself is measured on device by {@link EngineTuner}. {@link #main} prints the
+ * tensor footprint of each variant before running.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuantizationBenchmark {
+    private static final int SIZE = TensorFixtures.SIZE;
+    private static final float CONF_THRESH = 0.5f;
+    private static final float SCALE = 1 / 255f;
+
+    @Param({"FLOAT32", "UINT8", "INT8"})
+    public FramePreprocessor.InputFormat format;
+
+    private FramePreprocessor preprocessor;
+    private DetectionDecoder decoder;
+    private Detections candidates;
+    private float[] floatOutput;
+    private byte[] quantOutput;
+    private int zeroPoint;
+
+    @Setup
+    public void setup() {
+        preprocessor = new FramePreprocessor(SIZE, format);
+        int[] frame = TensorFixtures.argbFrame(SIZE, SIZE);
+        System.arraycopy(frame, 0, preprocessor.pixels(), 0, frame.length);
+
+        TensorDump dump = TensorFixtures.load("output_000");
+        decoder = new DetectionDecoder(dump.shape, SIZE, true, CONF_THRESH);
+        candidates = new Detections(decoder.maxCandidates());
+        floatOutput = dump.data;
+        zeroPoint = format == FramePreprocessor.InputFormat.INT8 ? -128 : 0;
+        quantOutput = quantize(floatOutput, zeroPoint);
+    }
+
+    static byte[] quantize(float[] values, int zeroPoint) {
+        byte[] q = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            int v = Math.round(values[i] / SCALE) + zeroPoint;
+            q[i] = (byte) Math.max(zeroPoint, Math.min(zeroPoint + 255, v));
+        }
+        return q;
+    }
+
+    @Benchmark
+    public ByteBuffer packInput() {
+        return preprocessor.normalize();
+    }
+
+    @Benchmark
+    public int decodeOutput() {
+        if (format == FramePreprocessor.InputFormat.FLOAT32) {
+            return decoder.decode(floatOutput, candidates);
+        }
+        return decoder.decode(quantOutput, SCALE, zeroPoint,
+                format == FramePreprocessor.InputFormat.INT8, candidates);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int outputElements = TensorFixtures.load("output_000").data.length;
+        for (FramePreprocessor.InputFormat f : FramePreprocessor.InputFormat.values()) {
+            int in = new FramePreprocessor(SIZE, f).inputBuffer().capacity();
+            int out = outputElements * f.bytesPerChannel;
+            System.out.printf("%-8s input %,d B, output %,d B%n", f, in, out);
+        }
+        Options opt = new OptionsBuilder()
+                .include(QuantizationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
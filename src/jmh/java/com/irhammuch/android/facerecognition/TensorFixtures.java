@@ -0,0 +1,87 @@
+package com.irhammuch.android.facerecognition;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * Output tensor fixtures for the benchmarks.
+ *
+ * <p>Recorded tensors are read from {@code /fixtures/<name>.bin} on the classpath
+ * (src/jmh/resources/fixtures). Record them by enabling {@code DUMP_OUTPUT_TENSORS} in
+ * MainActivity and pulling {@code files/tensors/} from the device. When no recording is
+ * present a deterministic YOLOv8-shaped tensor is synthesized instead, so the suite always
+ * runs.
+ */
+final class TensorFixtures {
+    static final int SIZE = 640;
+    // anchors of a 640 input at strides 8, 16 and 32
+    private static final int[] STRIDES = {8, 16, 32};
+
+    private TensorFixtures() {}
+
+    static TensorDump load(String name) {
+        InputStream is = TensorFixtures.class.getResourceAsStream("/fixtures/" + name + ".bin");
+        if (is == null) return synthesizeYolo(5, 7);
+        try (InputStream in = new BufferedInputStream(is)) {
+            return TensorDump.read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Raw YOLOv8 head [1, channels, 8400] with normalized xywh: background anchors score
+     * near zero and a few balls light up clusters of neighbouring anchors.
+     */
+    static TensorDump synthesizeYolo(int channels, long seed) {
+        Random rnd = new Random(seed);
+        int n = 0;
+        for (int s : STRIDES) n += (SIZE / s) * (SIZE / s);
+        float[] out = new float[channels * n];
+
+        float[][] balls = new float[4][];
+        for (int b = 0; b < balls.length; b++) {
+            balls[b] = new float[]{40 + rnd.nextFloat() * 560, 40 + rnd.nextFloat() * 560, 10 + rnd.nextFloat() * 50};
+        }
+
+        int i = 0;
+        for (int s : STRIDES) {
+            int cells = SIZE / s;
+            for (int gy = 0; gy < cells; gy++) {
+                for (int gx = 0; gx < cells; gx++, i++) {
+                    float ax = (gx + 0.5f) * s, ay = (gy + 0.5f) * s;
+                    float cx = ax, cy = ay, w = s * 2f, h = s * 2f;
+                    float score = rnd.nextFloat() * 0.02f;
+                    for (float[] ball : balls) {
+                        float dx = ax - ball[0], dy = ay - ball[1];
+                        float d2 = (dx * dx + dy * dy) / (ball[2] * ball[2]);
+                        if (d2 < 1f) {
+                            cx = ball[0] + (rnd.nextFloat() - 0.5f) * 3;
+                            cy = ball[1] + (rnd.nextFloat() - 0.5f) * 3;
+                            w = h = ball[2] * (0.9f + rnd.nextFloat() * 0.2f);
+                            score = Math.max(score, 0.95f - 0.6f * d2);
+                        }
+                    }
+                    out[i] = cx / SIZE;
+                    out[n + i] = cy / SIZE;
+                    out[2 * n + i] = w / SIZE;
+                    out[3 * n + i] = h / SIZE;
+                    out[4 * n + i] = score;
+                    for (int c = 5; c < channels; c++) out[c * n + i] = rnd.nextFloat() * 0.01f;
+                }
+            }
+        }
+        return new TensorDump(new int[]{1, channels, n}, out);
+    }
+
+    // Deterministic ARGB frame content for the preprocessing stages
+    static int[] argbFrame(int width, int height) {
+        int[] pix = new int[width * height];
+        Random rnd = new Random(11);
+        for (int p = 0; p < pix.length; p++) pix[p] = 0xFF000000 | rnd.nextInt(0x1000000);
+        return pix;
+    }
+}
@@ -0,0 +1,161 @@
+package com.irhammuch.android.facerecognition;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.DataType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput against recall of TiledDetector on a 4K frame holding a few large balls and
+ * many distant ones, for the plain letterboxed pass (1x1) and tile grids with a global pass.
+ * The model is a stand-in that finds bright blobs of at least MIN_BLOB input pixels a side,
+ * so distant balls vanish exactly when downscaling shrinks them below what the detector can
+ * resolve; its cost is far below a real network's, so the time here is mostly the tiling,
+ * letterboxing and fusion overhead. Recall is reported as the hits/misses aux counters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TiledDetectionBenchmark {
+    private static final int SIZE = 640;
+    private static final int FRAME_W = 3840, FRAME_H = 2160;
+    private static final int MIN_BLOB = 3;
+    private static final int MAX_BLOBS = 64;
+    private static final int SMALL_BALLS = 12, SMALL_SIDE = 10;
+    private static final int LARGE_BALLS = 3, LARGE_SIDE = 80;
+
+    /** Tile grid as columns x rows; 1x1 is the whole frame letterboxed once. */
+    @Param({"1x1", "2x2", "3x2", "4x3"})
+    public String grid;
+
+    private int[] frame;
+    private float[][] truth; // x1, y1, x2, y2 per ball
+    private ExecutorService executor;
+    private TiledDetector detector;
+    private final Detections out = new Detections(100);
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Recall {
+        public long hits;
+        public long misses;
+    }
+
+    /** Stateless bright-blob finder with the FLAT_WITH_HEADER output layout. */
+    static final class BlobModel implements FakeInferenceEngine.Model {
+        private final ThreadLocal<int[]> labels = ThreadLocal.withInitial(() -> new int[SIZE * SIZE]);
+        private final ThreadLocal<int[]> stack = ThreadLocal.withInitial(() -> new int[SIZE * SIZE]);
+
+        static InferenceEngine engine() {
+            return new FakeInferenceEngine(SIZE, new int[]{1, 1 + 6 * MAX_BLOBS}, DataType.FLOAT32, 0,
+                    Runtime.getRuntime().availableProcessors(), new BlobModel());
+        }
+
+        @Override
+        public void run(ByteBuffer input, ByteBuffer output) {
+            FloatBuffer in = input.duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+            FloatBuffer o = output.duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+            int[] seen = labels.get(), todo = stack.get();
+            Arrays.fill(seen, 0);
+            int found = 0;
+            for (int start = 0; start < SIZE * SIZE && found < MAX_BLOBS; start++) {
+                if (seen[start] != 0 || !bright(in, start)) continue;
+                int x1 = SIZE, y1 = SIZE, x2 = -1, y2 = -1, top = 0;
+                todo[top++] = start;
+                seen[start] = 1;
+                while (top > 0) {
+                    int p = todo[--top], x = p % SIZE, y = p / SIZE;
+                    x1 = Math.min(x1, x); y1 = Math.min(y1, y);
+                    x2 = Math.max(x2, x + 1); y2 = Math.max(y2, y + 1);
+                    if (x > 0) top = push(in, seen, todo, top, p - 1);
+                    if (x < SIZE - 1) top = push(in, seen, todo, top, p + 1);
+                    if (y > 0) top = push(in, seen, todo, top, p - SIZE);
+                    if (y < SIZE - 1) top = push(in, seen, todo, top, p + SIZE);
+                }
+                if (x2 - x1 < MIN_BLOB || y2 - y1 < MIN_BLOB) continue;
+                int at = 1 + 6 * found++;
+                o.put(at, (x1 + x2) / 2f / SIZE).put(at + 1, (y1 + y2) / 2f / SIZE)
+                        .put(at + 2, (float) (x2 - x1) / SIZE).put(at + 3, (float) (y2 - y1) / SIZE)
+                        .put(at + 4, 0.9f).put(at + 5, 0);
+            }
+            o.put(0, found);
+        }
+
+        private static int push(FloatBuffer in, int[] seen, int[] todo, int top, int p) {
+            if (seen[p] == 0 && bright(in, p)) {
+                seen[p] = 1;
+                todo[top++] = p;
+            }
+            return top;
+        }
+
+        private static boolean bright(FloatBuffer in, int p) {
+            return in.get(p * 3) > 0.5f && in.get(p * 3 + 1) > 0.5f && in.get(p * 3 + 2) > 0.5f;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(17);
+        frame = new int[FRAME_W * FRAME_H];
+        Arrays.fill(frame, 0xFF404040);
+        truth = new float[SMALL_BALLS + LARGE_BALLS][];
+        for (int i = 0; i < truth.length; i++) {
+            int side = i < SMALL_BALLS ? SMALL_SIDE : LARGE_SIDE;
+            // a grid of cells keeps the balls apart
+            int cell = FRAME_W / 5, x = (i % 5) * cell + rnd.nextInt(cell - side);
+            int y = (i / 5) * (FRAME_H / 3) + rnd.nextInt(FRAME_H / 3 - side);
+            for (int r = y; r < y + side; r++) Arrays.fill(frame, r * FRAME_W + x, r * FRAME_W + x + side, 0xFFFFFFFF);
+            truth[i] = new float[]{x, y, x + side, y + side};
+        }
+        String[] cr = grid.split("x");
+        int columns = Integer.parseInt(cr[0]), rows = Integer.parseInt(cr[1]);
+        boolean tiled = columns * rows > 1;
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        InferenceEngine engine = BlobModel.engine();
+        detector = new TiledDetector(engine, () -> new Detector(engine, SIZE, true, 0.5f, 0, 0.45f, 100, null),
+                columns, rows, 0.2f, tiled, 100, executor, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int detect(Recall recall) throws Exception {
+        int n = detector.detect(frame, FRAME_W, FRAME_H, out);
+        for (float[] t : truth) {
+            boolean hit = false;
+            for (int i = 0; i < n && !hit; i++) {
+                float cx = (out.x1[i] + out.x2[i]) / 2, cy = (out.y1[i] + out.y2[i]) / 2;
+                hit = cx >= t[0] && cx <= t[2] && cy >= t[1] && cy <= t[3];
+            }
+            if (hit) recall.hits++;
+            else recall.misses++;
+        }
+        return n;
+    }
+}
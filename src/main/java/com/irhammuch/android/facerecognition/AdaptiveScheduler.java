@@ -0,0 +1,113 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Picks the spacing between sampled video frames from what the device can sustain and what
+ * the scene needs. Stages report their latency, the slowest one bounding how often a frame
+ * can be taken without falling behind; a motion level in [0, 1] pulls the interval toward
+ * {@code minIntervalUs} while a ball moves fast and decays over {@code motionHalfLifeNanos},
+ * so static scenes back off toward {@code maxIntervalUs}. End-to-end latency above the
+ * budget stretches the interval further. Time comes from a {@link Clock}, so the policy can
+ * be driven by a simulated clock in tests.
+ */
+public final class AdaptiveScheduler {
+
+    /** Monotonic time source in nanoseconds. */
+    public interface Clock {
+        long nanoTime();
+
+        Clock SYSTEM = System::nanoTime;
+    }
+
+    private static final float EWMA_ALPHA = 0.2f;
+
+    private final Clock clock;
+    private final long minIntervalUs;
+    private final long maxIntervalUs;
+    private final long latencyBudgetNanos;
+    private final float utilization;
+    private final long motionHalfLifeNanos;
+
+    // Smoothed latencies, one writer per slot (each stage thread)
+    private final AtomicLongArray stageNanos;
+    private volatile long latencyNanos;
+
+    // Motion level and when it was last set; updated under the lock, read by the source thread
+    private volatile float motion;
+    private volatile long motionAt;
+
+    /**
+     * @param stages              number of stages reporting through {@link #recordStage}
+     * @param latencyBudgetNanos  target decode-to-render latency per frame
+     * @param utilization         share of real time the slowest stage may be kept busy
+     * @param motionHalfLifeNanos time for a motion reading to lose half its weight
+     */
+    public AdaptiveScheduler(Clock clock, int stages, long minIntervalUs, long maxIntervalUs,
+                             long latencyBudgetNanos, float utilization, long motionHalfLifeNanos) {
+        this.clock = clock;
+        this.stageNanos = new AtomicLongArray(stages);
+        this.minIntervalUs = minIntervalUs;
+        this.maxIntervalUs = maxIntervalUs;
+        this.latencyBudgetNanos = latencyBudgetNanos;
+        this.utilization = utilization;
+        this.motionHalfLifeNanos = motionHalfLifeNanos;
+        this.motionAt = clock.nanoTime();
+    }
+
+    public long now() { return clock.nanoTime(); }
+
+    public void reset() {
+        for (int i = 0; i < stageNanos.length(); i++) stageNanos.set(i, 0);
+        latencyNanos = 0;
+        motion = 0;
+        motionAt = clock.nanoTime();
+    }
+
+    public void recordStage(int stage, long nanos) {
+        stageNanos.set(stage, ewma(stageNanos.get(stage), nanos));
+    }
+
+    public void recordLatency(long nanos) {
+        latencyNanos = ewma(latencyNanos, nanos);
+    }
+
+    // A new reading raises the level at once; it falls only by decay
+    public synchronized void recordMotion(float level) {
+        long t = clock.nanoTime();
+        float decayed = decayedMotion(t);
+        motion = Math.max(decayed, Math.min(1f, Math.max(0f, level)));
+        motionAt = t;
+    }
+
+    private float decayedMotion(long t) {
+        long dt = t - motionAt;
+        if (dt <= 0 || motionHalfLifeNanos <= 0) return motion;
+        return (float) (motion * Math.pow(0.5, (double) dt / motionHalfLifeNanos));
+    }
+
+    private static long ewma(long prev, long sample) {
+        return prev == 0 ? sample : Math.round(prev + EWMA_ALPHA * (sample - prev));
+    }
+
+    public float motion() { return decayedMotion(clock.nanoTime()); }
+
+    // Slowest stage, smoothed; a pipelined run cannot take frames faster than this
+    public long bottleneckNanos() {
+        long max = 0;
+        for (int i = 0; i < stageNanos.length(); i++) max = Math.max(max, stageNanos.get(i));
+        return max;
+    }
+
+    // Stream-time spacing for the next sampled frame
+    public long nextIntervalUs() {
+        long capacityUs = (long) (bottleneckNanos() / 1000 / utilization);
+        long motionUs = Math.round(maxIntervalUs - motion() * (maxIntervalUs - minIntervalUs));
+        long interval = Math.max(capacityUs, motionUs);
+        long latency = latencyNanos;
+        if (latencyBudgetNanos > 0 && latency > latencyBudgetNanos) {
+            interval = Math.round(interval * ((double) latency / latencyBudgetNanos));
+        }
+        return Math.max(minIntervalUs, Math.min(maxIntervalUs, interval));
+    }
+}
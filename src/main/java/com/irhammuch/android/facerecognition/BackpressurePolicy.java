@@ -0,0 +1,11 @@
+package com.irhammuch.android.facerecognition;
+
+/** What a pipeline stage's producer does when the queue in front of the next stage is full. */
+public enum BackpressurePolicy {
+    /** Wait for the consumer; nothing is dropped, the slowest stage paces the source. */
+    BLOCK,
+    /** Evict the oldest queued frame to make room for the new one. */
+    DROP_OLDEST,
+    /** Keep only the newest frame; everything still queued is dropped on each offer. */
+    LATEST_ONLY
+}
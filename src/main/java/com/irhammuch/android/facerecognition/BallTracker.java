@@ -0,0 +1,275 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ByteTrack-style multi-object tracker: each ball gets a stable id and a constant-velocity
+ * {@link KalmanBoxFilter}. Detections are associated by IoU in two passes, high-confidence
+ * boxes first against every live track, then low-confidence boxes against the tracks still
+ * unmatched, so a ball that blurs or is half occluded keeps its id instead of being dropped.
+ * Small fast balls can move more than their own size between detector runs, so the first
+ * pass also accepts a confident box with no overlap if its center is within
+ * {@code PROXIMITY_GATE} box sides of the prediction; overlapping pairs always rank first.
+ *
+ * <p>Between detector runs {@link #predict(long)} moves every track along its velocity, and
+ * {@link #shouldDetect()} asks for the detector again every {@code detectEvery} frames or
+ * as soon as a track's confidence has decayed below {@code minConfidence}. Both calls take
+ * the frame's stream time, so motion is predicted over the real gap between sampled frames
+ * however the sampling interval changes.
+ */
+public final class BallTracker {
+    private static final float FIRST_MATCH_IOU = 0.2f;
+    private static final float SECOND_MATCH_IOU = 0.5f;
+    private static final float PROXIMITY_GATE = 2f;   // in box sides, first pass only
+    private static final int MIN_HITS = 2;            // matches before a new track is reported
+    private static final float CONFIDENCE_DECAY = 0.9f; // per frame without a detection
+
+    public static final class Track {
+        private final int id;
+        private final KalmanBoxFilter filter;
+        private float score;
+        private int cls;
+        private int hits;
+        private int framesSinceUpdate;
+        private boolean lost;
+        private float x1, y1, x2, y2;
+
+        Track(int id, Detections d, int i) {
+            this.id = id;
+            this.filter = new KalmanBoxFilter(d.x1[i], d.y1[i], d.x2[i], d.y2[i]);
+            this.score = d.score[i];
+            this.cls = d.cls[i];
+            this.hits = 1;
+            syncBox();
+        }
+
+        void syncBox() {
+            x1 = filter.x1();
+            y1 = filter.y1();
+            x2 = filter.x2();
+            y2 = filter.y2();
+        }
+
+        public int id() { return id; }
+
+        public boolean isLost() { return lost; }
+
+        public float x1() { return x1; }
+
+        public float y1() { return y1; }
+
+        public float x2() { return x2; }
+
+        public float y2() { return y2; }
+
+        // pixels per second of stream time
+        public float velocityX() { return filter.velocityX(); }
+
+        public float velocityY() { return filter.velocityY(); }
+
+        // Detection score decayed by the frames since this track was last matched
+        public float confidence() {
+            float c = score;
+            for (int i = 0; i < framesSinceUpdate; i++) c *= CONFIDENCE_DECAY;
+            return c;
+        }
+
+        boolean confirmed() { return hits >= MIN_HITS; }
+    }
+
+    private final float highThresh;
+    private final float lowThresh;
+    private final int maxLost;
+    private final int detectEvery;
+    private final float minConfidence;
+
+    private final List<Track> tracks = new ArrayList<>();
+    private int nextId = 1;
+    private int framesSinceDetection;
+    private boolean firstUpdate = true;
+    private long lastTimeUs = Long.MIN_VALUE;
+    private long stepUs;
+
+    // Association scratch, grown as needed
+    private long[] pairs = new long[64];
+    private boolean[] trackMatched = new boolean[16];
+    private boolean[] detMatched = new boolean[64];
+
+    /**
+     * @param highThresh    detections at or above this score take part in the first pass and
+     *                      may start new tracks
+     * @param lowThresh     detections between lowThresh and highThresh only extend existing tracks
+     * @param maxLost       frames a track survives without a match
+     * @param detectEvery   run the detector at least every this many frames
+     * @param minConfidence run the detector early once any track decays below this
+     */
+    public BallTracker(float highThresh, float lowThresh, int maxLost, int detectEvery, float minConfidence) {
+        this.highThresh = highThresh;
+        this.lowThresh = lowThresh;
+        this.maxLost = maxLost;
+        this.detectEvery = Math.max(1, detectEvery);
+        this.minConfidence = minConfidence;
+    }
+
+    public List<Track> tracks() { return tracks; }
+
+    // Forget every track, e.g. when playback restarts
+    public void reset() {
+        tracks.clear();
+        framesSinceDetection = 0;
+        firstUpdate = true;
+        lastTimeUs = Long.MIN_VALUE;
+        stepUs = 0;
+    }
+
+    // Stream time between the last two frames given to predict or update
+    public long stepUs() { return stepUs; }
+
+    // True when the next frame should go through the detector rather than prediction only
+    public boolean shouldDetect() {
+        if (framesSinceDetection + 1 >= detectEvery) return true;
+        boolean any = false;
+        for (int t = 0; t < tracks.size(); t++) {
+            Track track = tracks.get(t);
+            if (track.lost || !track.confirmed()) continue;
+            if (track.confidence() < minConfidence) return true;
+            any = true;
+        }
+        return !any;
+    }
+
+    // Frame at timeUs without detections: advance every track along its velocity
+    public void predict(long timeUs) {
+        framesSinceDetection++;
+        advance(timeUs);
+        removeExpired();
+    }
+
+    // Frame at timeUs with detections: predict, associate in two passes, start and retire tracks
+    public void update(Detections dets, long timeUs) {
+        framesSinceDetection = 0;
+        advance(timeUs);
+        final int nt = tracks.size(), nd = dets.size();
+        if (trackMatched.length < nt) trackMatched = new boolean[Math.max(nt, 2 * trackMatched.length)];
+        if (detMatched.length < nd) detMatched = new boolean[Math.max(nd, 2 * detMatched.length)];
+        Arrays.fill(trackMatched, 0, nt, false);
+        Arrays.fill(detMatched, 0, nd, false);
+
+        // pass 1: confident detections against every track, lost ones included
+        associate(dets, highThresh, Float.MAX_VALUE, false, FIRST_MATCH_IOU, PROXIMITY_GATE);
+        // pass 2: weak detections against tracks that were live and are still unmatched
+        associate(dets, lowThresh, highThresh, true, SECOND_MATCH_IOU, 0);
+
+        for (int t = 0; t < nt; t++) {
+            if (!trackMatched[t]) tracks.get(t).lost = true;
+        }
+        for (int d = 0; d < nd; d++) {
+            if (detMatched[d] || dets.score[d] < highThresh) continue;
+            Track track = new Track(nextId++, dets, d);
+            // tracks seen on the very first frame are trusted immediately, as in ByteTrack
+            if (firstUpdate) track.hits = MIN_HITS;
+            tracks.add(track);
+        }
+        firstUpdate = false;
+        removeExpired();
+    }
+
+    // Moves every track to timeUs; a first frame or a step back in time predicts no motion
+    private void advance(long timeUs) {
+        stepUs = lastTimeUs == Long.MIN_VALUE ? 0 : Math.max(0, timeUs - lastTimeUs);
+        lastTimeUs = timeUs;
+        for (int t = 0; t < tracks.size(); t++) {
+            Track track = tracks.get(t);
+            track.filter.predict(stepUs);
+            track.syncBox();
+            track.framesSinceUpdate++;
+        }
+    }
+
+    // Greedy assignment by descending affinity among detections with score in
+    // [minScore, maxScore): 1 + IoU for overlapping pairs, 1 - distance/gate for near ones
+    private void associate(Detections dets, float minScore, float maxScore, boolean liveOnly,
+                           float minIou, float gate) {
+        final int nt = tracks.size(), nd = dets.size();
+        int count = 0;
+        for (int t = 0; t < nt; t++) {
+            if (trackMatched[t]) continue;
+            Track track = tracks.get(t);
+            if (liveOnly && track.lost) continue;
+            for (int d = 0; d < nd; d++) {
+                if (detMatched[d]) continue;
+                float s = dets.score[d];
+                if (s < minScore || s >= maxScore) continue;
+                float affinity = affinity(track, dets, d, minIou, gate);
+                if (affinity <= 0) continue;
+                if (count == pairs.length) pairs = Arrays.copyOf(pairs, 2 * count);
+                // highest affinity sorts first; it is positive so its bits order like the float
+                pairs[count++] = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(affinity)) << 32)
+                        | ((long) t << 16) | d;
+            }
+        }
+        Arrays.sort(pairs, 0, count);
+        for (int k = 0; k < count; k++) {
+            int t = (int) (pairs[k] >>> 16) & 0xFFFF;
+            int d = (int) pairs[k] & 0xFFFF;
+            if (trackMatched[t] || detMatched[d]) continue;
+            trackMatched[t] = true;
+            detMatched[d] = true;
+            Track track = tracks.get(t);
+            track.filter.update(dets.x1[d], dets.y1[d], dets.x2[d], dets.y2[d]);
+            track.syncBox();
+            track.score = dets.score[d];
+            track.cls = dets.cls[d];
+            track.hits++;
+            track.framesSinceUpdate = 0;
+            track.lost = false;
+        }
+    }
+
+    private void removeExpired() {
+        for (int t = tracks.size() - 1; t >= 0; t--) {
+            Track track = tracks.get(t);
+            if (track.framesSinceUpdate > maxLost || (track.lost && !track.confirmed())) {
+                tracks.remove(t);
+            }
+        }
+    }
+
+    private static float affinity(Track t, Detections d, int j, float minIou, float gate) {
+        float iou = iou(t, d, j);
+        if (iou >= minIou) return 1 + iou;
+        if (gate <= 0) return 0;
+        float dx = (t.x1 + t.x2 - d.x1[j] - d.x2[j]) * 0.5f;
+        float dy = (t.y1 + t.y2 - d.y1[j] - d.y2[j]) * 0.5f;
+        float reach = gate * Math.max(t.x2 - t.x1, t.y2 - t.y1);
+        float dist = (float) Math.sqrt(dx * dx + dy * dy);
+        return dist < reach ? 1 - dist / reach : 0;
+    }
+
+    private static float iou(Track t, Detections d, int j) {
+        float ix = Math.min(t.x2, d.x2[j]) - Math.max(t.x1, d.x1[j]);
+        float iy = Math.min(t.y2, d.y2[j]) - Math.max(t.y1, d.y1[j]);
+        if (ix <= 0 || iy <= 0) return 0;
+        float inter = ix * iy;
+        float union = (t.x2 - t.x1) * (t.y2 - t.y1) + d.area(j) - inter;
+        return union > 0 ? inter / union : 0;
+    }
+
+    /**
+     * Writes the confirmed, live tracks into {@code out} (cleared first), scored by their
+     * decayed confidence; {@code ids}, if given, receives the matching track ids.
+     */
+    public int write(Detections out, int[] ids) {
+        out.clear();
+        for (int t = 0; t < tracks.size(); t++) {
+            Track track = tracks.get(t);
+            if (track.lost || !track.confirmed()) continue;
+            int i = out.size();
+            if (!out.add(track.x1, track.y1, track.x2, track.y2, track.confidence(), track.cls)) break;
+            if (ids != null && i < ids.length) ids[i] = track.id;
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,230 @@
+package com.irhammuch.android.facerecognition;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Frames of a recorded archive for {@link BatchRunner}: every {@code .ppm} (binary P6, one
+ * image per file) and every raw frame file ({@code .rgba}, {@code .yuv} as I420, laid out as
+ * {@link RawFrameSource} reads them) in a directory, sorted by name. Frames are addressed by
+ * a global index and read with positional reads, so any number of threads can read at once
+ * with their own buffers. An image file is opened for each read, which keeps the descriptor
+ * count flat over long sequences; a raw file holds many frames, so its channel is opened on
+ * first use and shared until {@link #close()}. Image sequences can be produced with
+ * {@code ffmpeg -i clip.mp4 frames/%06d.ppm}.
+ */
+public final class BatchInput implements Closeable {
+
+    /** One readable frame: a file plus, for raw files, the frame's position in it. */
+    public static final class Frame {
+        public final int file;
+        public final int index; // frame number within the file
+        final long offset;
+        final int width, height;
+
+        Frame(int file, int index, long offset, int width, int height) {
+            this.file = file;
+            this.index = index;
+            this.offset = offset;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private enum Kind { PPM, RGBA, I420 }
+
+    private final File[] files;
+    private final Kind[] kinds;
+    private final List<Frame> frames = new ArrayList<>();
+    private final AtomicReferenceArray<FileChannel> channels; // raw files only
+    private volatile boolean closed;
+
+    /**
+     * @param rawWidth  frame width of raw files; ignored if the directory holds only images
+     * @param rawHeight frame height of raw files
+     */
+    public BatchInput(File dir, int rawWidth, int rawHeight) throws IOException {
+        File[] listed = dir.listFiles(f -> f.isFile() && kindOf(f) != null);
+        if (listed == null) throw new IOException("Not a directory: " + dir);
+        Arrays.sort(listed);
+        files = listed;
+        kinds = new Kind[listed.length];
+        channels = new AtomicReferenceArray<>(listed.length);
+        for (int i = 0; i < listed.length; i++) {
+            Kind kind = kinds[i] = kindOf(listed[i]);
+            if (kind == Kind.PPM) {
+                int[] header = readPpmHeader(listed[i]);
+                frames.add(new Frame(i, 0, header[2], header[0], header[1]));
+                continue;
+            }
+            if (rawWidth <= 0 || rawHeight <= 0) {
+                throw new IllegalArgumentException("Raw file " + listed[i] + " needs a frame size");
+            }
+            long frameBytes = rawFrameBytes(kind, rawWidth, rawHeight);
+            long count = listed[i].length() / frameBytes;
+            for (int f = 0; f < count; f++) {
+                frames.add(new Frame(i, f, f * frameBytes, rawWidth, rawHeight));
+            }
+        }
+    }
+
+    private static Kind kindOf(File f) {
+        String name = f.getName().toLowerCase(Locale.US);
+        if (name.endsWith(".ppm")) return Kind.PPM;
+        if (name.endsWith(".rgba")) return Kind.RGBA;
+        if (name.endsWith(".yuv")) return Kind.I420;
+        return null;
+    }
+
+    private static long rawFrameBytes(Kind kind, int w, int h) {
+        return kind == Kind.I420 ? (long) w * h + 2L * ((w + 1) / 2) * ((h + 1) / 2) : (long) w * h * 4;
+    }
+
+    public int size() { return frames.size(); }
+
+    public Frame frame(int i) { return frames.get(i); }
+
+    public int fileCount() { return files.length; }
+
+    public String fileName(int file) { return files[file].getName(); }
+
+    /**
+     * Reads frame {@code i} and returns its ARGB pixels, row-major from index 0. The array
+     * belongs to {@code scratch}, may be longer than the frame and is overwritten by the
+     * next read through the same scratch.
+     */
+    public int[] read(int i, Scratch scratch) throws IOException {
+        Frame frame = frames.get(i);
+        Kind kind = kinds[frame.file];
+        int pixels = frame.width * frame.height;
+        int bytes = kind == Kind.PPM ? pixels * 3 : (int) rawFrameBytes(kind, frame.width, frame.height);
+        ByteBuffer buf = scratch.buffer(bytes);
+        if (closed) throw new IOException("Input closed");
+        if (kind == Kind.PPM) {
+            try (FileChannel ch = new RandomAccessFile(files[frame.file], "r").getChannel()) {
+                readFully(ch, buf, frame.offset);
+            }
+        } else {
+            readFully(rawChannel(frame.file), buf, frame.offset);
+        }
+        buf.flip();
+        int[] argb = scratch.pixels(pixels);
+        switch (kind) {
+            case PPM:
+                for (int p = 0, o = 0; p < pixels; p++, o += 3) {
+                    argb[p] = 0xFF000000 | (buf.get(o) & 0xFF) << 16 | (buf.get(o + 1) & 0xFF) << 8
+                            | (buf.get(o + 2) & 0xFF);
+                }
+                break;
+            case RGBA:
+                for (int p = 0, o = 0; p < pixels; p++, o += 4) {
+                    argb[p] = (buf.get(o + 3) & 0xFF) << 24 | (buf.get(o) & 0xFF) << 16
+                            | (buf.get(o + 1) & 0xFF) << 8 | (buf.get(o + 2) & 0xFF);
+                }
+                break;
+            case I420: {
+                int w = frame.width, h = frame.height, cw = (w + 1) / 2, cSize = cw * ((h + 1) / 2);
+                Yuv.toArgb(slice(buf, 0, pixels), w, slice(buf, pixels, cSize),
+                        slice(buf, pixels + cSize, cSize), cw, 1, w, h, argb);
+                break;
+            }
+        }
+        return argb;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, offset + buf.position()) < 0) throw new EOFException();
+        }
+    }
+
+    // positional reads on a FileChannel are safe from any number of threads
+    private FileChannel rawChannel(int file) throws IOException {
+        FileChannel ch = channels.get(file);
+        if (ch != null) return ch;
+        synchronized (channels) {
+            if (closed) throw new IOException("Input closed");
+            ch = channels.get(file);
+            if (ch == null) {
+                ch = new RandomAccessFile(files[file], "r").getChannel();
+                channels.set(file, ch);
+            }
+            return ch;
+        }
+    }
+
+    /** Closes the raw files left open; reads after this fail. */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        synchronized (channels) {
+            closed = true;
+            for (int i = 0; i < channels.length(); i++) {
+                FileChannel ch = channels.getAndSet(i, null);
+                if (ch == null) continue;
+                try {
+                    ch.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /** Per-thread read buffers. */
+    public static final class Scratch {
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(0);
+        private int[] pixels = new int[0];
+
+        ByteBuffer buffer(int bytes) {
+            if (buffer.capacity() < bytes) buffer = ByteBuffer.allocateDirect(bytes);
+            buffer.clear().limit(bytes);
+            return buffer;
+        }
+
+        int[] pixels(int count) {
+            if (pixels.length < count) pixels = new int[count];
+            return pixels;
+        }
+    }
+
+    // width, height, offset of the pixel data; only maxval 255 is supported
+    static int[] readPpmHeader(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.read() != 'P' || in.read() != '6') throw new IOException("Not a binary PPM: " + file);
+            int w = ppmInt(in), h = ppmInt(in), max = ppmInt(in);
+            if (max != 255) throw new IOException("Unsupported PPM maxval " + max + ": " + file);
+            // exactly one whitespace byte separates the header from the pixels
+            return new int[]{w, h, (int) in.getFilePointer()};
+        }
+    }
+
+    private static int ppmInt(RandomAccessFile in) throws IOException {
+        int c = in.read();
+        while (c == '#' || Character.isWhitespace(c)) {
+            if (c == '#') while (c != '\n' && c != -1) c = in.read();
+            c = in.read();
+        }
+        int v = 0;
+        for (; c >= '0' && c <= '9'; c = in.read()) v = v * 10 + (c - '0');
+        if (c == -1) throw new EOFException();
+        return v;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+        ByteBuffer dup = buf.duplicate();
+        dup.position(offset).limit(offset + length);
+        return dup.slice();
+    }
+}
@@ -0,0 +1,230 @@
+package com.irhammuch.android.facerecognition;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Headless detection over a recorded archive, on the same preprocess / {@link Detector}
+ * core as the app but without any Android classes, so it runs on a plain JVM with the
+ * TFLite Java library. Frames are split over a {@link ForkJoinPool}; each worker thread
+ * borrows a context (preprocessor, detector, read buffers) for a run of frames, reads and
+ * preprocesses them in one fused pass and waits on the shared engine, whose instances run in parallel.
+ * Detections are streamed to a {@link DetectionWriter} as frames finish.
+ */
+public final class BatchRunner {
+    private static final int FRAMES_PER_TASK = 4; // leaf size of the fork-join split
+
+    private final InferenceEngine engine;
+    private final int inputSize;
+    private final boolean normalizedCoords;
+    private final float confThresh;
+    private final float iouThresh;
+    private final int maxDetections;
+    private final int parallelism;
+    private final PipelineMetrics metrics = new PipelineMetrics(Long.MAX_VALUE);
+    private final ConcurrentLinkedQueue<Context> contexts = new ConcurrentLinkedQueue<>();
+    private int tileColumns, tileRows; // 0: whole frames only
+    private float tileOverlap;
+
+    /** Everything a worker needs for one frame at a time. */
+    private final class Context {
+        final FramePreprocessor preprocessor = Detector.preprocessor(engine, inputSize);
+        final Detector detector = new Detector(engine, inputSize, normalizedCoords, confThresh, 0,
+                iouThresh, maxDetections, metrics);
+        final Detections boxes = new Detections(maxDetections);
+        final BatchInput.Scratch scratch = new BatchInput.Scratch();
+        // tiles run in turn on the worker; frames already keep the engine's instances busy
+        final TiledDetector tiled = tileColumns == 0 ? null : new TiledDetector(engine,
+                () -> new Detector(engine, inputSize, normalizedCoords, confThresh, 0, iouThresh,
+                        maxDetections, metrics),
+                tileColumns, tileRows, tileOverlap, true, maxDetections, null, metrics);
+    }
+
+    /** Frame count and wall time of a run. */
+    public static final class Result {
+        public final int frames;
+        public final long nanos;
+
+        Result(int frames, long nanos) {
+            this.frames = frames;
+            this.nanos = nanos;
+        }
+
+        public double framesPerSecond() { return nanos == 0 ? 0 : frames * 1e9 / nanos; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d frames in %.2f s, %.1f fps", frames, nanos / 1e9,
+                    framesPerSecond());
+        }
+    }
+
+    /** @param parallelism fork-join workers; about the engine's instance count plus one */
+    public BatchRunner(InferenceEngine engine, boolean normalizedCoords, float confThresh,
+                       float iouThresh, int maxDetections, int parallelism) {
+        this.engine = engine;
+        this.inputSize = engine.inputShape()[1];
+        this.normalizedCoords = normalizedCoords;
+        this.confThresh = confThresh;
+        this.iouThresh = iouThresh;
+        this.maxDetections = maxDetections;
+        this.parallelism = parallelism;
+    }
+
+    public PipelineMetrics metrics() { return metrics; }
+
+    // Sliced inference over a columns x rows grid plus a global pass; set before run()
+    public void setTiling(int columns, int rows, float overlap) {
+        tileColumns = columns;
+        tileRows = rows;
+        tileOverlap = overlap;
+        contexts.clear();
+    }
+
+    public Result run(BatchInput input, DetectionWriter out) throws IOException {
+        metrics.reset(System.nanoTime());
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long t0 = System.nanoTime();
+        try {
+            pool.invoke(new Split(input, out, 0, input.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        return new Result(input.size(), System.nanoTime() - t0);
+    }
+
+    private final class Split extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BatchInput input;
+        private final DetectionWriter out;
+        private final int from, to;
+
+        Split(BatchInput input, DetectionWriter out, int from, int to) {
+            this.input = input;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FRAMES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Split(input, out, from, mid), new Split(input, out, mid, to));
+                return;
+            }
+            Context ctx = contexts.poll();
+            if (ctx == null) ctx = new Context();
+            try {
+                for (int i = from; i < to; i++) process(input, i, ctx, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (Exception e) {
+                throw new UncheckedIOException(new IOException("Frame failed", e));
+            } finally {
+                contexts.offer(ctx);
+            }
+        }
+    }
+
+    private void process(BatchInput input, int i, Context ctx, DetectionWriter out) throws Exception {
+        BatchInput.Frame frame = input.frame(i);
+        long t0 = System.nanoTime();
+        int[] argb = input.read(i, ctx.scratch);
+        metrics.record(PipelineMetrics.Stage.DECODE, System.nanoTime() - t0);
+        if (ctx.tiled != null) {
+            ctx.tiled.detect(argb, frame.width, frame.height, ctx.boxes);
+        } else {
+            long t1 = System.nanoTime();
+            ctx.preprocessor.letterboxNormalize(argb, frame.width, frame.height);
+            metrics.record(PipelineMetrics.Stage.LETTERBOX, System.nanoTime() - t1);
+            ctx.detector.detect(ctx.preprocessor, ctx.boxes);
+        }
+        out.write(frame.file, frame.index, ctx.boxes);
+        metrics.increment(PipelineMetrics.Counter.FRAMES);
+    }
+
+    private static final String USAGE = "usage: BatchRunner --model <file.tflite> --input <dir>"
+            + " --output <file> [--format csv|jsonl|binary] [--size WxH] [--instances N]"
+            + " [--conf 0.5] [--iou 0.45] [--xnnpack] [--tiles CxR] [--overlap 0.2]";
+
+    /**
+     * Command-line entry point. Raw files in the input directory need {@code --size}; the
+     * frames/s line and the stage histograms go to stdout.
+     */
+    public static void main(String[] args) throws Exception {
+        String model = null, inputDir = null, output = null;
+        DetectionWriter.Format format = DetectionWriter.Format.CSV;
+        int width = 0, height = 0;
+        int instances = Runtime.getRuntime().availableProcessors();
+        float conf = 0.5f, iou = 0.45f;
+        boolean xnnpack = false;
+        int tileColumns = 0, tileRows = 0;
+        float overlap = 0.2f;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model": model = args[++i]; break;
+                case "--input": inputDir = args[++i]; break;
+                case "--output": output = args[++i]; break;
+                case "--format": format = DetectionWriter.Format.valueOf(args[++i].toUpperCase(Locale.US)); break;
+                case "--size": {
+                    String[] wh = args[++i].split("x");
+                    width = Integer.parseInt(wh[0]);
+                    height = Integer.parseInt(wh[1]);
+                    break;
+                }
+                case "--instances": instances = Integer.parseInt(args[++i]); break;
+                case "--conf": conf = Float.parseFloat(args[++i]); break;
+                case "--iou": iou = Float.parseFloat(args[++i]); break;
+                case "--xnnpack": xnnpack = true; break;
+                case "--tiles": {
+                    String[] cr = args[++i].split("x");
+                    tileColumns = Integer.parseInt(cr[0]);
+                    tileRows = Integer.parseInt(cr[1]);
+                    break;
+                }
+                case "--overlap": overlap = Float.parseFloat(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i] + "\n" + USAGE);
+            }
+        }
+        if (model == null || inputDir == null || output == null) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel ch = new RandomAccessFile(model, "r").getChannel()) {
+            buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        // one single-threaded interpreter per core: whole frames in parallel scale better
+        // than intra-op threads on one frame
+        try (BatchInput input = new BatchInput(new File(inputDir), width, height);
+             InferenceEngine engine = new TfliteInferenceEngine(buffer, instances, 1, xnnpack, 1);
+             DetectionWriter out = DetectionWriter.open(format, new FileOutputStream(output), names(input))) {
+            System.out.println("Engine: " + engine + ", " + input.size() + " frames");
+            BatchRunner runner = new BatchRunner(engine, true, conf, iou, 100, instances + 1);
+            if (tileColumns > 0) runner.setTiling(tileColumns, tileRows, overlap);
+            Result result = runner.run(input, out);
+            System.out.println(result);
+            System.out.println(runner.metrics().format());
+        }
+    }
+
+    private static String[] names(BatchInput input) {
+        String[] names = new String[input.fileCount()];
+        for (int i = 0; i < names.length; i++) names[i] = input.fileName(i);
+        return names;
+    }
+}
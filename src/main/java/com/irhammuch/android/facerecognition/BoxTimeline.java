@@ -0,0 +1,122 @@
+package com.irhammuch.android.facerecognition;
+
+/**
+ * Boxes for frames ahead of playback, held until the playback position reaches their frame
+ * time. The producer (the inference thread) appends whole frames of boxes in stream order;
+ * the consumer (the UI thread) asks for the frame to show at the current position, which
+ * moves it to the latest frame due and drops the ones it overtook. Frames are preallocated
+ * and swapped between the ring and the shown slot, so nothing is allocated per frame and
+ * neither side waits: a full ring drops the new frame instead.
+ *
+ * <p>One producer thread and one consumer thread.
+ */
+public final class BoxTimeline {
+    /** One frame of boxes in source-frame pixels. */
+    public static final class Frame {
+        final Detections boxes;
+        final int[] ids;
+        int width, height;
+        long timeUs;
+
+        Frame(int maxBoxes) {
+            boxes = new Detections(maxBoxes);
+            ids = new int[maxBoxes];
+        }
+
+        public Detections boxes() { return boxes; }
+
+        public int id(int i) { return ids[i]; }
+
+        public int width() { return width; }
+
+        public int height() { return height; }
+
+        public long timeUs() { return timeUs; }
+    }
+
+    private final Frame[] ring;
+    private final int maxBoxes;
+    private volatile long head; // next frame to show; consumer only writes
+    private volatile long tail; // next free slot; producer only writes
+    private Frame shown;        // consumer only
+    // clear(): frames before flushTo are dropped once the consumer sees clears change
+    private volatile long flushTo;
+    private volatile int clears;
+    private int seenClears;     // consumer only
+    private long dropped;       // producer only
+
+    public BoxTimeline(int capacity, int maxBoxes) {
+        this.maxBoxes = maxBoxes;
+        ring = new Frame[Math.max(1, capacity)];
+        for (int i = 0; i < ring.length; i++) ring[i] = new Frame(maxBoxes);
+        shown = new Frame(maxBoxes);
+    }
+
+    /**
+     * Appends the first {@code count} boxes of the given arrays for the frame at
+     * {@code timeUs}; {@code ids} may be null. Returns false, dropping the frame, when the
+     * ring is full. Producer thread.
+     */
+    public boolean offer(long timeUs, int frameWidth, int frameHeight, float[] x1, float[] y1,
+                         float[] x2, float[] y2, float[] scores, int[] classes, int[] ids, int count) {
+        long t = tail;
+        if (t - head == ring.length) {
+            dropped++;
+            return false;
+        }
+        Frame f = ring[(int) (t % ring.length)];
+        Detections d = f.boxes;
+        d.clear();
+        int n = Math.min(count, maxBoxes);
+        for (int i = 0; i < n; i++) {
+            d.add(x1[i], y1[i], x2[i], y2[i], scores[i], classes[i]);
+            f.ids[i] = ids != null ? ids[i] : -1;
+        }
+        f.width = frameWidth;
+        f.height = frameHeight;
+        f.timeUs = timeUs;
+        tail = t + 1; // publishes the frame
+        return true;
+    }
+
+    // Drops every frame offered so far, and the shown one, on the consumer's next call. Producer thread.
+    public void clear() {
+        flushTo = tail;
+        clears = clears + 1; // single writer
+    }
+
+    // Frames dropped because the ring was full. Producer thread.
+    public long dropped() { return dropped; }
+
+    /**
+     * The frame to show at playback position {@code positionUs}: the latest one due, or the
+     * last shown when none is. {@code Long.MAX_VALUE} shows the newest frame. Consumer thread.
+     */
+    public Frame current(long positionUs) {
+        int c = clears;
+        if (c != seenClears) {
+            seenClears = c;
+            long f = flushTo;
+            if (f > head) head = f;
+            shown.boxes.clear();
+            shown.width = shown.height = 0;
+        }
+        long h = head;
+        long t = tail;
+        while (h < t) {
+            int i = (int) (h % ring.length);
+            Frame f = ring[i];
+            if (f.timeUs > positionUs) break;
+            ring[i] = shown;
+            shown = f;
+            head = ++h; // hands the old shown frame's slot back to the producer
+        }
+        return shown;
+    }
+
+    // Frame time of the next frame waiting to be shown, or Long.MAX_VALUE. Consumer thread.
+    public long nextTimeUs() {
+        long h = head;
+        return h < tail ? ring[(int) (h % ring.length)].timeUs : Long.MAX_VALUE;
+    }
+}
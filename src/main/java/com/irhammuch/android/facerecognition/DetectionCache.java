@@ -0,0 +1,314 @@
+package com.irhammuch.android.facerecognition;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Detector results persisted across runs, so frames seen before need neither pixel
+ * conversion nor inference. One {@link Store} file per video content and model version,
+ * named {@code <video>-<version>.dcache}, holding one record per frame, sized to its box
+ * count, in a memory-mapped file with an in-memory hash index from frame timestamp to record.
+ *
+ * <p>Records are only appended and each carries a CRC over its contents, so after a crash
+ * the store reopens with every complete record and drops a torn one at the tail. Files are
+ * evicted least recently used first (by modification time, touched on open and close) when
+ * the directory grows past its byte budget.
+ */
+public final class DetectionCache {
+    private static final String SUFFIX = ".dcache";
+    private static final int MAGIC = 0x44434143; // "DCAC"
+    private static final int VERSION = 2;       // 1 padded every record to maxDetections boxes
+    private static final int HEADER_BYTES = 16;  // magic, version, maxDetections, reserved
+    private static final int RECORD_HEADER = 16; // timeUs, count, crc
+    private static final int BOX_BYTES = 24;     // x1, y1, x2, y2, score, cls
+    private static final int GROW_BYTES = 4 << 10; // initial mapping beyond the header
+    private static final int HASH_CHUNK = 1 << 20; // bytes hashed at each end of a video
+
+    private final File dir;
+    private final long budgetBytes;
+    private final int maxDetections;
+    private final Set<File> open = new HashSet<>();
+
+    public DetectionCache(File dir, long budgetBytes, int maxDetections) {
+        this.dir = dir;
+        this.budgetBytes = budgetBytes;
+        this.maxDetections = maxDetections;
+    }
+
+    /**
+     * Opens (or creates) the store for a video and model version, evicting other stores if
+     * the budget is exceeded. Close it when done.
+     */
+    public synchronized Store open(String videoKey, String modelVersion) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        File file = new File(dir, videoKey + "-" + modelVersion + SUFFIX);
+        if (!open.add(file)) throw new IOException("Already open: " + file);
+        try {
+            // before mapping: the new store's preallocated tail is not data
+            evict();
+            return new Store(file);
+        } catch (IOException | RuntimeException e) {
+            open.remove(file);
+            throw e;
+        }
+    }
+
+    // Delete least recently used closed stores until the directory fits the budget
+    private synchronized void evict() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= budgetBytes) return;
+        long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(modified[a], modified[b]));
+        for (int i = 0; i < order.length && total > budgetBytes; i++) {
+            File f = files[order[i]];
+            if (open.contains(f)) continue;
+            long length = f.length();
+            if (f.delete()) total -= length;
+        }
+    }
+
+    private synchronized void closed(File file) {
+        open.remove(file);
+        evict();
+    }
+
+    /**
+     * Key for a video's content: SHA-256 over its length and the first and last megabyte,
+     * which tells clips apart without reading all of them.
+     */
+    public static String contentKey(File video) throws IOException {
+        MessageDigest md = sha256();
+        try (FileChannel ch = new RandomAccessFile(video, "r").getChannel()) {
+            long length = ch.size();
+            ByteBuffer buf = ByteBuffer.allocate(HASH_CHUNK);
+            buf.putLong(length).flip();
+            md.update(buf);
+            digestRange(ch, 0, Math.min(length, HASH_CHUNK), buf, md);
+            if (length > HASH_CHUNK) {
+                long start = Math.max(HASH_CHUNK, length - HASH_CHUNK);
+                digestRange(ch, start, length - start, buf, md);
+            }
+        }
+        return hex(md.digest(), 16);
+    }
+
+    /** Key for everything that shapes the detections: model, input size, thresholds. */
+    public static String versionKey(Object... parts) {
+        MessageDigest md = sha256();
+        for (Object p : parts) {
+            md.update(String.valueOf(p).getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+        return hex(md.digest(), 8);
+    }
+
+    private static void digestRange(FileChannel ch, long pos, long length, ByteBuffer buf,
+                                    MessageDigest md) throws IOException {
+        buf.clear().limit((int) length);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) break;
+        }
+        buf.flip();
+        md.update(buf);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every Java platform has SHA-256
+        }
+    }
+
+    private static String hex(byte[] bytes, int n) {
+        StringBuilder sb = new StringBuilder(2 * n);
+        for (int i = 0; i < n; i++) sb.append(String.format("%02x", bytes[i] & 0xFF));
+        return sb.toString();
+    }
+
+    /**
+     * Results for one video and model version. Little-endian layout: a 16-byte header
+     * ({@code "DCAC"}, version, max detections per record), then records of timestamp (us),
+     * box count and CRC32 of the record without its CRC, followed by that many boxes of x1,
+     * y1, x2, y2, score and class; a frame with one ball takes 40 bytes. All methods are
+     * thread-safe; the decode thread looks frames up while the inference thread appends.
+     */
+    public final class Store implements Closeable {
+        private final File file;
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private MappedByteBuffer map;
+        private int count;
+        private int end; // offset just past the last record
+        // open addressing from timestamp to record offset; 0 marks an empty slot
+        private long[] keys = new long[64];
+        private int[] slots = new int[64];
+
+        private Store(File file) throws IOException {
+            this.file = file;
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            try {
+                long length = channel.size();
+                if (length >= HEADER_BYTES && !validHeader()) {
+                    length = 0; // other format or version: start over
+                    channel.truncate(0);
+                }
+                int stored = (int) Math.max(length, HEADER_BYTES);
+                remap(stored + GROW_BYTES);
+                map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, maxDetections);
+                // reindex complete records; the first torn or empty one ends the log
+                end = HEADER_BYTES;
+                while (valid(end, stored)) {
+                    index(map.getLong(end), end);
+                    count++;
+                    end += recordBytes(map.getInt(end + 8));
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            file.setLastModified(System.currentTimeMillis());
+        }
+
+        public synchronized int size() { return count; }
+
+        public synchronized boolean contains(long timeUs) { return find(timeUs) >= 0; }
+
+        // Detections stored for the frame at timeUs into out; false when there are none
+        public synchronized boolean get(long timeUs, Detections out) {
+            int at = find(timeUs);
+            if (at < 0) return false;
+            int n = map.getInt(at + 8);
+            out.clear();
+            for (int i = 0, b = at + RECORD_HEADER; i < n; i++, b += BOX_BYTES) {
+                out.add(map.getFloat(b), map.getFloat(b + 4), map.getFloat(b + 8),
+                        map.getFloat(b + 12), map.getFloat(b + 16), map.getInt(b + 20));
+            }
+            return true;
+        }
+
+        // Append the detections for the frame at timeUs; a frame already stored is kept
+        public synchronized void put(long timeUs, Detections d) throws IOException {
+            if (find(timeUs) >= 0) return;
+            int n = Math.min(d.size(), maxDetections);
+            int at = end, bytes = recordBytes(n);
+            if (at + bytes > map.capacity()) remap(Math.max(2 * map.capacity(), at + bytes));
+            map.putLong(at, timeUs).putInt(at + 8, n);
+            for (int i = 0, b = at + RECORD_HEADER; i < n; i++, b += BOX_BYTES) {
+                map.putFloat(b, d.x1[i]).putFloat(b + 4, d.y1[i]).putFloat(b + 8, d.x2[i])
+                        .putFloat(b + 12, d.y2[i]).putFloat(b + 16, d.score[i]).putInt(b + 20, d.cls[i]);
+            }
+            // the CRC goes in last: a record cut short by a crash fails its check
+            map.putInt(at + 12, checksum(at, n));
+            index(timeUs, at);
+            count++;
+            end = at + bytes;
+        }
+
+        // Trims the file to its records, so budgets count real bytes, and marks it used
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                map.force();
+                channel.truncate(end);
+            } finally {
+                channel.close();
+                file.setLastModified(System.currentTimeMillis());
+                closed(file);
+            }
+        }
+
+        private boolean validHeader() throws IOException {
+            ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (h.hasRemaining()) {
+                if (channel.read(h, h.position()) < 0) return false;
+            }
+            return h.getInt(0) == MAGIC && h.getInt(4) == VERSION && h.getInt(8) == maxDetections;
+        }
+
+        // Whether a complete record with a matching CRC starts at `at`, within `length` bytes
+        private boolean valid(int at, int length) {
+            if (at + RECORD_HEADER > length) return false;
+            int n = map.getInt(at + 8);
+            return n >= 0 && n <= maxDetections && at + recordBytes(n) <= length
+                    && map.getInt(at + 12) == checksum(at, n);
+        }
+
+        private int checksum(int at, int n) {
+            ByteBuffer r = map.duplicate();
+            crc.reset();
+            r.limit(at + 12).position(at);
+            crc.update(r);
+            r.limit(at + recordBytes(n)).position(at + RECORD_HEADER);
+            crc.update(r);
+            return (int) crc.getValue();
+        }
+
+        // Maps `bytes` of the file; growing the mapping extends the file
+        private void remap(int bytes) throws IOException {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private int find(long timeUs) {
+            int mask = keys.length - 1;
+            for (int i = hash(timeUs) & mask; slots[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == timeUs) return slots[i];
+            }
+            return -1;
+        }
+
+        // Records start after the header, so an offset is never 0
+        private void index(long timeUs, int at) {
+            if (2 * (count + 1) > keys.length) rehash(keys.length * 2);
+            int mask = keys.length - 1;
+            int i = hash(timeUs) & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            keys[i] = timeUs;
+            slots[i] = at;
+        }
+
+        private void rehash(int size) {
+            long[] oldKeys = keys;
+            int[] oldSlots = slots;
+            keys = new long[size];
+            slots = new int[size];
+            int mask = size - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldSlots[j] == 0) continue;
+                int i = hash(oldKeys[j]) & mask;
+                while (slots[i] != 0) i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                slots[i] = oldSlots[j];
+            }
+        }
+
+        private int recordBytes(int boxes) { return RECORD_HEADER + boxes * BOX_BYTES; }
+
+        private int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
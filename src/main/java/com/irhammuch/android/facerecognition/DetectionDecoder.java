@@ -0,0 +1,419 @@
+package com.irhammuch.android.facerecognition;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Android-free post-processing for the detector output tensor: decode candidates above
+ * the confidence threshold and map kept boxes back to the source frame.
+ * The tensor layout is fixed from the output shape when the decoder is created, so
+ * nothing about the format is guessed per frame.
+ */
+public final class DetectionDecoder {
+
+    public enum Layout {
+        /**
+         * [1, n]: leading detection count, then (n - 1) / 6 records of [cx, cy, w, h, conf, cls];
+         * a trailing partial record is ignored, so [1, 300] holds 49 records.
+         */
+        FLAT_WITH_HEADER,
+        /** [1, 4 + nc, n]: raw YOLOv8 head, channels-first, rows cx, cy, w, h, class scores. */
+        YOLOV8,
+        /** [1, n, 6]: end-to-end (NMS-free) export, rows of [x1, y1, x2, y2, score, cls]. */
+        END_TO_END
+    }
+
+    private static final int FLAT_ELEMENTS = 6; // x, y, w, h, confidence, class_id
+
+    private final Layout layout;
+    private final int records;
+    private final int channels;
+    private final int inputSize;
+    private final float coordScale;
+    private final float confThresh;
+    private final int topK;
+
+    // Scratch for the in-place path, allocated on first use and reused
+    private int[] survivors;
+    private float[] survivorScores;
+    private float[] bestScore;
+    private int[] bestClass;
+    private long[] rankKeys;
+
+    public DetectionDecoder(int[] outShape, int inputSize, boolean normalizedCoords, float confThresh) {
+        this(outShape, inputSize, normalizedCoords, confThresh, 0);
+    }
+
+    /**
+     * @param topK keep at most this many of the highest-scoring candidates from
+     *             {@link #decode(FloatBuffer, Detections)}, 0 for no limit
+     */
+    public DetectionDecoder(int[] outShape, int inputSize, boolean normalizedCoords, float confThresh,
+                            int topK) {
+        this.layout = layoutFor(outShape);
+        this.topK = topK;
+        this.inputSize = inputSize;
+        this.coordScale = normalizedCoords ? inputSize : 1f;
+        this.confThresh = confThresh;
+        switch (layout) {
+            case FLAT_WITH_HEADER:
+                records = (outShape[1] - 1) / FLAT_ELEMENTS;
+                channels = FLAT_ELEMENTS;
+                break;
+            case YOLOV8:
+                records = outShape[2];
+                channels = outShape[1];
+                break;
+            default:
+                records = outShape[1];
+                channels = outShape[2];
+                break;
+        }
+    }
+
+    // Pick the decode layout from the interpreter's output tensor shape. A flat output always
+    // carries the count header: the length alone cannot tell a headerless export apart.
+    public static Layout layoutFor(int[] shape) {
+        if (shape.length == 2 && shape[0] == 1) {
+            if (shape[1] > FLAT_ELEMENTS) return Layout.FLAT_WITH_HEADER;
+        } else if (shape.length == 3 && shape[0] == 1) {
+            if (shape[2] == FLAT_ELEMENTS) return Layout.END_TO_END;
+            if (shape[1] > 4 && shape[1] < shape[2]) return Layout.YOLOV8;
+        }
+        throw new IllegalArgumentException("Unsupported output shape: " + Arrays.toString(shape));
+    }
+
+    public Layout layout() { return layout; }
+
+    // Upper bound on candidates per frame, used to size Detections stores
+    public int maxCandidates() { return records; }
+
+    // Decode candidates with confidence >= threshold into dst (cleared first), in input pixels
+    public int decode(float[] out, Detections dst) {
+        dst.clear();
+        switch (layout) {
+            case FLAT_WITH_HEADER: {
+                int n = Math.min(records, Math.max(0, (int) out[0]));
+                decodeFlat(out, 1, n, dst);
+                break;
+            }
+            case YOLOV8:
+                decodeYolo(out, dst);
+                break;
+            case END_TO_END:
+                decodeEndToEnd(out, dst);
+                break;
+        }
+        return dst.size();
+    }
+
+    private void decodeFlat(float[] out, int base, int n, Detections dst) {
+        final float s = coordScale;
+        for (int i = 0, o = base; i < n; i++, o += FLAT_ELEMENTS) {
+            float conf = out[o + 4];
+            if (!(conf >= confThresh)) continue;
+            float cx = out[o] * s, cy = out[o + 1] * s;
+            float hw = out[o + 2] * s * 0.5f, hh = out[o + 3] * s * 0.5f;
+            addIfValid(dst, cx - hw, cy - hh, cx + hw, cy + hh, conf, (int) out[o + 5]);
+        }
+    }
+
+    private void decodeYolo(float[] out, Detections dst) {
+        final int n = records;
+        final float s = coordScale;
+        for (int i = 0; i < n; i++) {
+            float best = out[4 * n + i];
+            int bestCls = 0;
+            for (int c = 5, o = 5 * n + i; c < channels; c++, o += n) {
+                if (out[o] > best) {
+                    best = out[o];
+                    bestCls = c - 4;
+                }
+            }
+            if (!(best >= confThresh)) continue;
+            float cx = out[i] * s, cy = out[n + i] * s;
+            float hw = out[2 * n + i] * s * 0.5f, hh = out[3 * n + i] * s * 0.5f;
+            addIfValid(dst, cx - hw, cy - hh, cx + hw, cy + hh, best, bestCls);
+        }
+    }
+
+    private void decodeEndToEnd(float[] out, Detections dst) {
+        final float s = coordScale;
+        for (int i = 0, o = 0; i < records; i++, o += channels) {
+            float conf = out[o + 4];
+            if (!(conf >= confThresh)) continue;
+            addIfValid(dst, out[o] * s, out[o + 1] * s, out[o + 2] * s, out[o + 3] * s,
+                    conf, (int) out[o + 5]);
+        }
+    }
+
+    /**
+     * Decode straight from the interpreter's output buffer, without copying it. Only the
+     * confidence values are scanned for every record; coordinates and classes are read for
+     * survivors only, after the optional top-K cut.
+     */
+    public int decode(FloatBuffer out, Detections dst) {
+        dst.clear();
+        ensureScratch();
+        int m;
+        int base = 0;
+        switch (layout) {
+            case FLAT_WITH_HEADER:
+                base = 1;
+                m = scanStrided(out, base + 4, Math.min(records, Math.max(0, (int) out.get(0))),
+                        FLAT_ELEMENTS);
+                break;
+            case YOLOV8:
+                m = scanRows(out);
+                break;
+            default:
+                m = scanStrided(out, 4, records, channels);
+                break;
+        }
+        m = keepTopK(m);
+
+        final float s = coordScale;
+        final int n = records;
+        for (int k = 0; k < m; k++) {
+            int i = survivors[k];
+            float conf = survivorScores[k];
+            switch (layout) {
+                case YOLOV8: {
+                    float cx = out.get(i) * s, cy = out.get(n + i) * s;
+                    float hw = out.get(2 * n + i) * s * 0.5f, hh = out.get(3 * n + i) * s * 0.5f;
+                    addIfValid(dst, cx - hw, cy - hh, cx + hw, cy + hh, conf,
+                            channels > 5 ? bestClass[i] : 0);
+                    break;
+                }
+                case END_TO_END: {
+                    int o = i * channels;
+                    addIfValid(dst, out.get(o) * s, out.get(o + 1) * s, out.get(o + 2) * s,
+                            out.get(o + 3) * s, conf, (int) out.get(o + 5));
+                    break;
+                }
+                default: {
+                    int o = base + i * FLAT_ELEMENTS;
+                    float cx = out.get(o) * s, cy = out.get(o + 1) * s;
+                    float hw = out.get(o + 2) * s * 0.5f, hh = out.get(o + 3) * s * 0.5f;
+                    addIfValid(dst, cx - hw, cy - hh, cx + hw, cy + hh, conf, (int) out.get(o + 5));
+                    break;
+                }
+            }
+        }
+        return dst.size();
+    }
+
+    private void ensureScratch() {
+        if (survivors != null) return;
+        survivors = new int[records];
+        survivorScores = new float[records];
+        if (layout == Layout.YOLOV8 && channels > 5) {
+            bestScore = new float[records];
+            bestClass = new int[records];
+        }
+        if (topK > 0) rankKeys = new long[records];
+    }
+
+    // Records laid out back to back: read every stride-th value starting at the confidence
+    private int scanStrided(FloatBuffer out, int first, int n, int stride) {
+        final float thresh = confThresh;
+        int m = 0;
+        for (int i = 0, o = first; i < n; i++, o += stride) {
+            float conf = out.get(o);
+            if (conf >= thresh) {
+                survivors[m] = i;
+                survivorScores[m++] = conf;
+            }
+        }
+        return m;
+    }
+
+    // Channels-first YOLOv8 head: score rows are contiguous, so the max over classes is a
+    // row-at-a-time pass with no per-anchor inner loop
+    private int scanRows(FloatBuffer out) {
+        final int n = records;
+        final float thresh = confThresh;
+        int m = 0;
+        if (channels == 5) {
+            for (int i = 0, o = 4 * n; i < n; i++, o++) {
+                float conf = out.get(o);
+                if (conf >= thresh) {
+                    survivors[m] = i;
+                    survivorScores[m++] = conf;
+                }
+            }
+            return m;
+        }
+        final float[] best = bestScore;
+        final int[] cls = bestClass;
+        for (int i = 0, o = 4 * n; i < n; i++, o++) {
+            best[i] = out.get(o);
+            cls[i] = 0;
+        }
+        for (int c = 1; c < channels - 4; c++) {
+            for (int i = 0, o = (4 + c) * n; i < n; i++, o++) {
+                float v = out.get(o);
+                if (v > best[i]) {
+                    best[i] = v;
+                    cls[i] = c;
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (best[i] >= thresh) {
+                survivors[m] = i;
+                survivorScores[m++] = best[i];
+            }
+        }
+        return m;
+    }
+
+    // Keep the topK highest scores; scores here are >= confThresh, so their bits sort like
+    // the floats themselves
+    private int keepTopK(int m) {
+        if (topK <= 0 || m <= topK) return m;
+        final long[] keys = rankKeys;
+        for (int k = 0; k < m; k++) {
+            keys[k] = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(survivorScores[k])) << 32) | k;
+        }
+        Arrays.sort(keys, 0, m);
+        // repack the winners as (record, score bits) so survivors can be rewritten in place
+        for (int k = 0; k < topK; k++) {
+            int from = (int) keys[k];
+            keys[k] = ((long) survivors[from] << 32) | Float.floatToIntBits(survivorScores[from]);
+        }
+        for (int k = 0; k < topK; k++) {
+            survivors[k] = (int) (keys[k] >>> 32);
+            survivorScores[k] = Float.intBitsToFloat((int) keys[k]);
+        }
+        return topK;
+    }
+
+    /**
+     * Decode a quantized (uint8 or int8) output tensor. Scores are compared against the
+     * threshold in the quantized domain, the optional top-K cut runs on the passing
+     * candidates as in {@link #decode(FloatBuffer, Detections)}, and only the winners are
+     * dequantized, with {@code real = (q - zeroPoint) * scale}.
+     */
+    public int decode(byte[] out, float scale, int zeroPoint, boolean signed, Detections dst) {
+        dst.clear();
+        ensureScratch();
+        final int mask = signed ? -1 : 0xFF;
+        final int qThresh = (int) Math.ceil(confThresh / scale + zeroPoint);
+        int m;
+        int base = 0;
+        switch (layout) {
+            case FLAT_WITH_HEADER: {
+                base = 1;
+                int n = Math.min(records, Math.max(0, (int) (((out[0] & mask) - zeroPoint) * scale)));
+                m = scanStrided(out, base + 4, n, FLAT_ELEMENTS, mask, qThresh, scale, zeroPoint);
+                break;
+            }
+            case YOLOV8:
+                m = scanAnchors(out, mask, qThresh, scale, zeroPoint);
+                break;
+            default:
+                m = scanStrided(out, 4, records, channels, mask, qThresh, scale, zeroPoint);
+                break;
+        }
+        m = keepTopK(m);
+
+        // s = coordScale * scale, so a coordinate is (q - zp) * s
+        final float s = coordScale * scale;
+        final int zp = zeroPoint;
+        final int n = records;
+        for (int k = 0; k < m; k++) {
+            int i = survivors[k];
+            float conf = survivorScores[k];
+            switch (layout) {
+                case YOLOV8: {
+                    float cx = ((out[i] & mask) - zp) * s, cy = ((out[n + i] & mask) - zp) * s;
+                    float hw = ((out[2 * n + i] & mask) - zp) * s * 0.5f;
+                    float hh = ((out[3 * n + i] & mask) - zp) * s * 0.5f;
+                    addIfValid(dst, cx - hw, cy - hh, cx + hw, cy + hh, conf,
+                            channels > 5 ? bestClass[i] : 0);
+                    break;
+                }
+                case END_TO_END: {
+                    int o = i * channels;
+                    addIfValid(dst, ((out[o] & mask) - zp) * s, ((out[o + 1] & mask) - zp) * s,
+                            ((out[o + 2] & mask) - zp) * s, ((out[o + 3] & mask) - zp) * s,
+                            conf, Math.round(((out[o + 5] & mask) - zp) * scale));
+                    break;
+                }
+                default: {
+                    int o = base + i * FLAT_ELEMENTS;
+                    float cx = ((out[o] & mask) - zp) * s, cy = ((out[o + 1] & mask) - zp) * s;
+                    float hw = ((out[o + 2] & mask) - zp) * s * 0.5f;
+                    float hh = ((out[o + 3] & mask) - zp) * s * 0.5f;
+                    addIfValid(dst, cx - hw, cy - hh, cx + hw, cy + hh, conf,
+                            Math.round(((out[o + 5] & mask) - zp) * scale));
+                    break;
+                }
+            }
+        }
+        return dst.size();
+    }
+
+    // Quantized records back to back: compare every stride-th value against qThresh
+    private int scanStrided(byte[] out, int first, int n, int stride, int mask, int qThresh,
+                            float scale, int zp) {
+        int m = 0;
+        for (int i = 0, o = first; i < n; i++, o += stride) {
+            int conf = out[o] & mask;
+            if (conf >= qThresh) {
+                survivors[m] = i;
+                survivorScores[m++] = (conf - zp) * scale;
+            }
+        }
+        return m;
+    }
+
+    // Quantized YOLOv8 head: best class per anchor, compared in the quantized domain
+    private int scanAnchors(byte[] out, int mask, int qThresh, float scale, int zp) {
+        final int n = records;
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            int best = out[4 * n + i] & mask;
+            int bestCls = 0;
+            for (int c = 5, o = 5 * n + i; c < channels; c++, o += n) {
+                int v = out[o] & mask;
+                if (v > best) {
+                    best = v;
+                    bestCls = c - 4;
+                }
+            }
+            if (best < qThresh) continue;
+            if (channels > 5) bestClass[i] = bestCls;
+            survivors[m] = i;
+            survivorScores[m++] = (best - zp) * scale;
+        }
+        return m;
+    }
+
+    // Skip empty, NaN or fully out-of-input boxes
+    private void addIfValid(Detections dst, float x1, float y1, float x2, float y2, float conf, int cls) {
+        if (!(x1 < x2) || !(y1 < y2)) return;
+        if (x2 <= 0 || y2 <= 0 || x1 >= inputSize || y1 >= inputSize) return;
+        dst.add(x1, y1, x2, y2, conf, cls);
+    }
+
+    // Scale coords from the model input back to the original image (through the crop
+    // offset when the input was a region of it), clamped to the frame bounds
+    public static void scaleCoords(Detections d, Letterbox lb) {
+        final float ratio = lb.ratio();
+        final float padW = lb.padW(), padH = lb.padH();
+        final float offX = lb.offsetX(), offY = lb.offsetY();
+        final float ow = lb.frameWidth(), oh = lb.frameHeight();
+        for (int i = 0; i < d.size(); i++) {
+            d.x1[i] = clamp((d.x1[i] - padW) / ratio + offX, ow);
+            d.y1[i] = clamp((d.y1[i] - padH) / ratio + offY, oh);
+            d.x2[i] = clamp((d.x2[i] - padW) / ratio + offX, ow);
+            d.y2[i] = clamp((d.y2[i] - padH) / ratio + offY, oh);
+        }
+    }
+
+    private static float clamp(float v, float max) {
+        return Math.max(0, Math.min(v, max));
+    }
+}
@@ -0,0 +1,168 @@
+package com.irhammuch.android.facerecognition;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams per-frame detections of a batch run to a results file. Records are written as
+ * frames finish, so with several workers they arrive out of order; each one carries its
+ * source file and frame number. {@link #write} is synchronized and may be called from any
+ * thread.
+ *
+ * <ul>
+ * <li>{@link Format#CSV}: header line, then {@code file,frame,x1,y1,x2,y2,score,class} per
+ * detection; frames without detections produce no line.</li>
+ * <li>{@link Format#JSONL}: one object per frame,
+ * {@code {"file":..,"frame":..,"boxes":[[x1,y1,x2,y2,score,class],..]}}.</li>
+ * <li>{@link Format#BINARY}: big-endian, as written by {@link DataOutputStream}: magic
+ * {@code "BDET"}, version, file count and each file name (UTF), then per frame the file
+ * index, frame number, detection count and 4 floats + float score + short class each.</li>
+ * </ul>
+ * Coordinates are in source-frame pixels, rounded to 0.1 px in the text formats.
+ */
+public abstract class DetectionWriter implements Closeable {
+    static final int MAGIC = 0x42444554; // "BDET"
+    static final int VERSION = 1;
+
+    public enum Format { CSV, JSONL, BINARY }
+
+    /** @param fileNames source names, indexed by the file argument of {@link #write} */
+    public static DetectionWriter open(Format format, OutputStream os, String[] fileNames)
+            throws IOException {
+        switch (format) {
+            case CSV: return new Csv(os, fileNames);
+            case JSONL: return new JsonLines(os, fileNames);
+            default: return new Binary(os, fileNames);
+        }
+    }
+
+    public abstract void write(int file, int frame, Detections boxes) throws IOException;
+
+    private static final class Csv extends DetectionWriter {
+        private final Writer out;
+        private final String[] names;
+        private final StringBuilder line = new StringBuilder(128);
+
+        Csv(OutputStream os, String[] names) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 1 << 16);
+            this.names = names;
+            out.write("file,frame,x1,y1,x2,y2,score,class\n");
+        }
+
+        @Override
+        public synchronized void write(int file, int frame, Detections d) throws IOException {
+            for (int i = 0; i < d.size(); i++) {
+                line.setLength(0);
+                line.append(names[file]).append(',').append(frame);
+                appendFixed(line.append(','), d.x1[i], 10);
+                appendFixed(line.append(','), d.y1[i], 10);
+                appendFixed(line.append(','), d.x2[i], 10);
+                appendFixed(line.append(','), d.y2[i], 10);
+                appendFixed(line.append(','), d.score[i], 1000);
+                line.append(',').append(d.cls[i]).append('\n');
+                out.append(line);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException { out.close(); }
+    }
+
+    private static final class JsonLines extends DetectionWriter {
+        private final Writer out;
+        private final String[] quotedNames;
+        private final StringBuilder line = new StringBuilder(256);
+
+        JsonLines(OutputStream os, String[] names) {
+            this.out = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 1 << 16);
+            this.quotedNames = new String[names.length];
+            for (int i = 0; i < names.length; i++) quotedNames[i] = quote(names[i]);
+        }
+
+        @Override
+        public synchronized void write(int file, int frame, Detections d) throws IOException {
+            line.setLength(0);
+            line.append("{\"file\":").append(quotedNames[file]).append(",\"frame\":").append(frame)
+                    .append(",\"boxes\":[");
+            for (int i = 0; i < d.size(); i++) {
+                if (i > 0) line.append(',');
+                appendFixed(line.append('['), d.x1[i], 10);
+                appendFixed(line.append(','), d.y1[i], 10);
+                appendFixed(line.append(','), d.x2[i], 10);
+                appendFixed(line.append(','), d.y2[i], 10);
+                appendFixed(line.append(','), d.score[i], 1000);
+                line.append(',').append(d.cls[i]).append(']');
+            }
+            line.append("]}\n");
+            out.append(line);
+        }
+
+        @Override
+        public synchronized void close() throws IOException { out.close(); }
+
+        private static String quote(String s) {
+            StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') sb.append('\\').append(c);
+                else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                else sb.append(c);
+            }
+            return sb.append('"').toString();
+        }
+    }
+
+    private static final class Binary extends DetectionWriter {
+        private final DataOutputStream out;
+
+        Binary(OutputStream os, String[] names) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.length);
+            for (String name : names) out.writeUTF(name);
+        }
+
+        @Override
+        public synchronized void write(int file, int frame, Detections d) throws IOException {
+            out.writeInt(file);
+            out.writeInt(frame);
+            out.writeShort(d.size());
+            for (int i = 0; i < d.size(); i++) {
+                out.writeFloat(d.x1[i]);
+                out.writeFloat(d.y1[i]);
+                out.writeFloat(d.x2[i]);
+                out.writeFloat(d.y2[i]);
+                out.writeFloat(d.score[i]);
+                out.writeShort(d.cls[i]);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException { out.close(); }
+    }
+
+    // v with log10(scale) decimals, trailing zeros dropped; no String per value
+    static void appendFixed(StringBuilder sb, float v, int scale) {
+        long q = Math.round((double) v * scale);
+        if (q < 0) {
+            sb.append('-');
+            q = -q;
+        }
+        sb.append(q / scale);
+        long frac = q % scale;
+        if (frac == 0) return;
+        sb.append('.');
+        for (int div = scale / 10; div > 0 && frac > 0; div /= 10) {
+            sb.append((char) ('0' + frac / div));
+            frac %= div;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.irhammuch.android.facerecognition;
+
+/**
+ * Fixed-capacity struct-of-arrays store for detection boxes in [x1,y1,x2,y2] form.
+ * Reused across frames; {@link #clear()} resets the count without touching the arrays.
+ */
+public final class Detections {
+    public final float[] x1, y1, x2, y2;
+    public final float[] score;
+    public final int[] cls;
+    private int count;
+
+    public Detections(int capacity) {
+        x1 = new float[capacity];
+        y1 = new float[capacity];
+        x2 = new float[capacity];
+        y2 = new float[capacity];
+        score = new float[capacity];
+        cls = new int[capacity];
+    }
+
+    public int size() { return count; }
+
+    public int capacity() { return score.length; }
+
+    public boolean isEmpty() { return count == 0; }
+
+    public void clear() { count = 0; }
+
+    // Append a box; returns false when the store is full
+    public boolean add(float bx1, float by1, float bx2, float by2, float s, int c) {
+        if (count == score.length) return false;
+        int i = count++;
+        x1[i] = bx1;
+        y1[i] = by1;
+        x2[i] = bx2;
+        y2[i] = by2;
+        score[i] = s;
+        cls[i] = c;
+        return true;
+    }
+
+    // Append entry i of another store
+    public boolean add(Detections src, int i) {
+        return add(src.x1[i], src.y1[i], src.x2[i], src.y2[i], src.score[i], src.cls[i]);
+    }
+
+    public float area(int i) {
+        return (x2[i] - x1[i]) * (y2[i] - y1[i]);
+    }
+}
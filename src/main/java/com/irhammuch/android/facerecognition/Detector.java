@@ -0,0 +1,107 @@
+package com.irhammuch.android.facerecognition;
+
+import org.tensorflow.lite.DataType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Prepared input tensor to frame-space boxes: runs the engine, decodes the output (float
+ * outputs in place, quantized ones in the integer domain), applies NMS and maps the kept
+ * boxes back through the input's letterbox. Holds its own output buffer and scratch, so it
+ * is confined to one thread; several detectors may share one engine.
+ */
+public final class Detector {
+    private final InferenceEngine engine;
+    private final ByteBuffer outBuf;
+    private final FloatBuffer outFloats; // float outputs, read in place by the decoder
+    private final byte[] outBytes;       // quantized outputs, dequantized per candidate
+    private final boolean quantized;
+    private final boolean signed;
+    private final DetectionDecoder decoder;
+    private final NonMaxSuppression nms;
+    private final Detections candidates;
+    private final PipelineMetrics metrics;
+
+    /**
+     * @param inputSize        model input side, for the decoder and NMS coordinate space
+     * @param normalizedCoords the model emits 0-1 boxes
+     * @param topK             best candidates handed to NMS, 0 for all
+     * @param metrics          receives infer/decode/NMS timings and detection counts; may be null
+     */
+    public Detector(InferenceEngine engine, int inputSize, boolean normalizedCoords, float confThresh,
+                    int topK, float iouThresh, int maxDetections, PipelineMetrics metrics) {
+        int[] outputShape = engine.outputShape();
+        if (outputShape.length < 1 || engine.outputBytes() <= 0) {
+            throw new IllegalStateException("Invalid output shape: " + Arrays.toString(outputShape));
+        }
+        this.engine = engine;
+        this.metrics = metrics;
+        outBuf = ByteBuffer.allocateDirect(engine.outputBytes()).order(ByteOrder.nativeOrder());
+        quantized = engine.outputType() != DataType.FLOAT32;
+        signed = engine.outputType() == DataType.INT8;
+        outBytes = quantized ? new byte[engine.outputBytes()] : null;
+        outFloats = quantized ? null : outBuf.asFloatBuffer();
+        decoder = new DetectionDecoder(outputShape, inputSize, normalizedCoords, confThresh, topK);
+        candidates = new Detections(decoder.maxCandidates());
+        nms = new NonMaxSuppression(iouThresh, maxDetections, inputSize, false);
+    }
+
+    // Element type the preprocessor must write for this engine's input
+    public static FramePreprocessor.InputFormat inputFormat(InferenceEngine engine) {
+        DataType type = engine.inputType();
+        switch (type) {
+            case FLOAT32: return FramePreprocessor.InputFormat.FLOAT32;
+            case UINT8:   return FramePreprocessor.InputFormat.UINT8;
+            case INT8:    return FramePreprocessor.InputFormat.INT8;
+            default: throw new IllegalStateException("Unsupported input type: " + type);
+        }
+    }
+
+    // Input tensor holder in the engine's input type and quantization
+    public static FramePreprocessor preprocessor(InferenceEngine engine, int inputSize) {
+        return new FramePreprocessor(inputSize, inputFormat(engine), engine.inputScale(),
+                engine.inputZeroPoint());
+    }
+
+    public DetectionDecoder decoder() { return decoder; }
+
+    // Raw float output of the last infer() for debugging and dumps; null for quantized models
+    public FloatBuffer floatOutput() { return outFloats; }
+
+    public int detect(FramePreprocessor in, Detections out) throws Exception {
+        infer(in);
+        return postprocess(in.letterbox(), out);
+    }
+
+    public void infer(FramePreprocessor in) throws Exception {
+        long t0 = System.nanoTime();
+        engine.run(in.inputBuffer(), outBuf);
+        if (metrics != null) metrics.record(PipelineMetrics.Stage.INFER, System.nanoTime() - t0);
+    }
+
+    // Decode the last output, NMS into out and scale back through the input's letterbox
+    public int postprocess(Letterbox letterbox, Detections out) {
+        long t0 = System.nanoTime();
+        outBuf.rewind();
+        if (quantized) {
+            outBuf.get(outBytes);
+            decoder.decode(outBytes, engine.outputScale(), engine.outputZeroPoint(), signed, candidates);
+        } else {
+            // Scores first, boxes for survivors only, read from the output buffer in place
+            decoder.decode(outFloats, candidates);
+        }
+        long t1 = System.nanoTime();
+        nms.run(candidates, out);
+        // Back through this frame's letterbox and crop offset
+        DetectionDecoder.scaleCoords(out, letterbox);
+        if (metrics != null) {
+            metrics.record(PipelineMetrics.Stage.DECODE_OUTPUT, t1 - t0);
+            metrics.record(PipelineMetrics.Stage.NMS, System.nanoTime() - t1);
+            metrics.add(PipelineMetrics.Counter.DETECTIONS, out.size());
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,362 @@
+package com.irhammuch.android.facerecognition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Appearance embeddings of tracked objects for re-identification, answered by cosine
+ * distance ({@code 1 - cos}, 0 for identical directions, up to 2). Embeddings are
+ * L2-normalized on the way in and stored row-major in one growing {@code float[]}, so a
+ * query is a dot product per row over contiguous memory; the inner loop keeps four
+ * independent accumulators so the JIT can vectorize it and the adds do not serialize.
+ *
+ * <p>Past a few thousand entries a full scan costs more than the rest of a frame;
+ * {@link #buildCoarseIndex} then partitions the gallery by k-means into inverted lists and
+ * queries only scan the {@link #setProbes probed} lists nearest to the query. Entries
+ * registered afterwards join their nearest list. The coarse index is not saved; rebuild it
+ * after {@link #load}.
+ *
+ * <p>Not thread-safe: register and query from one thread, as the tracker does.
+ */
+public final class EmbeddingIndex implements SimilarityClassifier {
+    private static final int MAGIC = 0x454D4258; // "EMBX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;  // magic, version, dim, count
+
+    private final int dim;
+    private float[] vectors;
+    private String[] ids;
+    private String[] titles;
+    private int size;
+
+    // Coarse index, null until built: centroids row-major, one list of rows per centroid
+    private float[] centroids;
+    private int[][] lists;
+    private int[] listSizes;
+    private int probes = 1;
+
+    // Query scratch, reused across calls
+    private final float[] query;
+    private float[] bestDist = new float[0];
+    private int[] bestRow = new int[0];
+    private float[] probeDist = new float[0];
+    private int[] probeList = new int[0];
+
+    public EmbeddingIndex(int dim, int initialCapacity) {
+        if (dim <= 0) throw new IllegalArgumentException("dim must be positive: " + dim);
+        this.dim = dim;
+        int capacity = Math.max(1, initialCapacity);
+        this.vectors = new float[capacity * dim];
+        this.ids = new String[capacity];
+        this.titles = new String[capacity];
+        this.query = new float[dim];
+    }
+
+    public int dim() { return dim; }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public void register(String id, String title, float[] embedding) {
+        checkDim(embedding);
+        if (size == ids.length) grow();
+        int row = size++;
+        normalizeInto(embedding, vectors, row * dim);
+        ids[row] = id;
+        titles[row] = title;
+        if (centroids != null) addToList(nearestCentroid(vectors, row * dim), row);
+    }
+
+    @Override
+    public List<Recognition> recognize(float[] embedding, int k) {
+        int n = search(embedding, k);
+        List<Recognition> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int row = bestRow[i];
+            out.add(new Recognition(ids[row], titles[row], bestDist[i]));
+        }
+        return out;
+    }
+
+    /**
+     * Allocation-free form of {@link #recognize}: fills {@code rows} and {@code distances}
+     * with up to their length nearest entries, closest first, and returns how many.
+     */
+    public int nearest(float[] embedding, int[] rows, float[] distances) {
+        int n = search(embedding, Math.min(rows.length, distances.length));
+        System.arraycopy(bestRow, 0, rows, 0, n);
+        System.arraycopy(bestDist, 0, distances, 0, n);
+        return n;
+    }
+
+    public String id(int row) { return ids[row]; }
+
+    public String title(int row) { return titles[row]; }
+
+    /**
+     * Partitions the current entries into {@code listCount} inverted lists by k-means with
+     * {@code iterations} Lloyd rounds, seeded from {@code seed}.
+     */
+    public void buildCoarseIndex(int listCount, int iterations, long seed) {
+        if (size == 0) throw new IllegalStateException("Empty index");
+        int k = Math.min(listCount, size);
+        float[] c = new float[k * dim];
+        // seed with distinct random entries
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Random rnd = new Random(seed);
+        for (int i = 0; i < k; i++) {
+            int j = i + rnd.nextInt(size - i);
+            int t = order[i]; order[i] = order[j]; order[j] = t;
+            System.arraycopy(vectors, order[i] * dim, c, i * dim, dim);
+        }
+        centroids = c;
+        int[] assignment = new int[size];
+        float[] sums = new float[k * dim];
+        int[] counts = new int[k];
+        for (int it = 0; it < iterations; it++) {
+            Arrays.fill(sums, 0f);
+            Arrays.fill(counts, 0);
+            for (int row = 0; row < size; row++) {
+                int a = nearestCentroid(vectors, row * dim);
+                assignment[row] = a;
+                counts[a]++;
+                for (int d = 0, s = a * dim, v = row * dim; d < dim; d++) sums[s + d] += vectors[v + d];
+            }
+            // spherical k-means: centroids are re-normalized means; empty lists keep theirs
+            for (int a = 0; a < k; a++) {
+                if (counts[a] > 0) normalizeInto(sums, a * dim, c, a * dim, dim);
+            }
+        }
+        lists = new int[k][];
+        listSizes = new int[k];
+        for (int a = 0; a < k; a++) lists[a] = new int[Math.max(4, size / k)];
+        for (int row = 0; row < size; row++) addToList(nearestCentroid(vectors, row * dim), row);
+        probes = Math.min(probes, k);
+    }
+
+    public boolean hasCoarseIndex() { return centroids != null; }
+
+    // Lists scanned per query once the coarse index is built; more trade speed for recall
+    public void setProbes(int probes) {
+        if (probes <= 0) throw new IllegalArgumentException("probes must be positive: " + probes);
+        this.probes = lists != null ? Math.min(probes, lists.length) : probes;
+    }
+
+    public void dropCoarseIndex() {
+        centroids = null;
+        lists = null;
+        listSizes = null;
+    }
+
+    /**
+     * Writes the index as little-endian {@code "EMBX"}, version, dim, count, the normalized
+     * matrix, then per entry a UTF-8 id and title, each prefixed by its byte length ({@code -1}
+     * for null). The matrix sits right after the 16-byte header, so it is 4-byte aligned in a
+     * mapping of the file.
+     */
+    public void save(File file) throws IOException {
+        byte[][] idBytes = new byte[size][], titleBytes = new byte[size][];
+        long length = HEADER_BYTES + (long) size * dim * 4;
+        for (int i = 0; i < size; i++) {
+            idBytes[i] = utf8(ids[i]);
+            titleBytes[i] = utf8(titles[i]);
+            length += 8 + (idBytes[i] != null ? idBytes[i].length : 0)
+                    + (titleBytes[i] != null ? titleBytes[i].length : 0);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel ch = raf.getChannel()) {
+            raf.setLength(length);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.putInt(MAGIC).putInt(VERSION).putInt(dim).putInt(size);
+            map.asFloatBuffer().put(vectors, 0, size * dim);
+            map.position(HEADER_BYTES + size * dim * 4);
+            for (int i = 0; i < size; i++) {
+                putString(map, idBytes[i]);
+                putString(map, titleBytes[i]);
+            }
+            map.force();
+        }
+    }
+
+    public static EmbeddingIndex load(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel ch = raf.getChannel()) {
+            long length = ch.size();
+            if (length < HEADER_BYTES) throw new IOException("Not an embedding index: " + file);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt() != MAGIC) throw new IOException("Not an embedding index: " + file);
+            int version = map.getInt();
+            if (version != VERSION) throw new IOException("Unsupported index version " + version);
+            int dim = map.getInt(), count = map.getInt();
+            if (dim <= 0 || count < 0 || HEADER_BYTES + (long) count * dim * 4 > length) {
+                throw new IOException("Corrupt embedding index: " + file);
+            }
+            EmbeddingIndex index = new EmbeddingIndex(dim, count);
+            map.asFloatBuffer().get(index.vectors, 0, count * dim);
+            map.position(HEADER_BYTES + count * dim * 4);
+            try {
+                for (int i = 0; i < count; i++) {
+                    index.ids[i] = getString(map);
+                    index.titles[i] = getString(map);
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt embedding index: " + file, e);
+            }
+            index.size = count;
+            return index;
+        }
+    }
+
+    // Top-k into bestRow/bestDist, closest first; returns the count
+    private int search(float[] embedding, int k) {
+        checkDim(embedding);
+        k = Math.min(k, size);
+        if (k <= 0) return 0;
+        if (bestRow.length < k) {
+            bestRow = new int[k];
+            bestDist = new float[k];
+        }
+        normalizeInto(embedding, query, 0);
+        int found = 0;
+        if (centroids == null) {
+            for (int row = 0; row < size; row++) found = offer(row, k, found);
+            return found;
+        }
+        int p = selectProbes();
+        for (int i = 0; i < p; i++) {
+            int[] list = lists[probeList[i]];
+            for (int j = 0, n = listSizes[probeList[i]]; j < n; j++) found = offer(list[j], k, found);
+        }
+        return found;
+    }
+
+    // Insert row into the sorted top-k if it is closer than the current k-th
+    private int offer(int row, int k, int found) {
+        float dist = 1f - dot(query, 0, vectors, row * dim, dim);
+        if (found == k && dist >= bestDist[k - 1]) return found;
+        int i = found < k ? found++ : k - 1;
+        while (i > 0 && bestDist[i - 1] > dist) {
+            bestDist[i] = bestDist[i - 1];
+            bestRow[i] = bestRow[i - 1];
+            i--;
+        }
+        bestDist[i] = dist;
+        bestRow[i] = row;
+        return found;
+    }
+
+    // The probes lists whose centroids are closest to the query, into probeList
+    private int selectProbes() {
+        int k = lists.length, p = Math.min(probes, k);
+        if (probeList.length < p) {
+            probeList = new int[p];
+            probeDist = new float[p];
+        }
+        int found = 0;
+        for (int a = 0; a < k; a++) {
+            float dist = 1f - dot(query, 0, centroids, a * dim, dim);
+            if (found == p && dist >= probeDist[p - 1]) continue;
+            int i = found < p ? found++ : p - 1;
+            while (i > 0 && probeDist[i - 1] > dist) {
+                probeDist[i] = probeDist[i - 1];
+                probeList[i] = probeList[i - 1];
+                i--;
+            }
+            probeDist[i] = dist;
+            probeList[i] = a;
+        }
+        return found;
+    }
+
+    private int nearestCentroid(float[] v, int offset) {
+        int best = 0;
+        float bestDot = Float.NEGATIVE_INFINITY;
+        for (int a = 0, k = centroids.length / dim; a < k; a++) {
+            float d = dot(v, offset, centroids, a * dim, dim);
+            if (d > bestDot) {
+                bestDot = d;
+                best = a;
+            }
+        }
+        return best;
+    }
+
+    private void addToList(int list, int row) {
+        if (listSizes[list] == lists[list].length) {
+            lists[list] = Arrays.copyOf(lists[list], lists[list].length * 2);
+        }
+        lists[list][listSizes[list]++] = row;
+    }
+
+    // Four independent partial sums: no loop-carried dependency on a single accumulator
+    static float dot(float[] a, int ao, float[] b, int bo, int n) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += a[ao + i] * b[bo + i];
+            s1 += a[ao + i + 1] * b[bo + i + 1];
+            s2 += a[ao + i + 2] * b[bo + i + 2];
+            s3 += a[ao + i + 3] * b[bo + i + 3];
+        }
+        for (; i < n; i++) s0 += a[ao + i] * b[bo + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private void normalizeInto(float[] src, float[] dst, int offset) {
+        normalizeInto(src, 0, dst, offset, dim);
+    }
+
+    // Zero vectors are stored as-is; they sit at distance 1 from everything
+    private static void normalizeInto(float[] src, int so, float[] dst, int offset, int n) {
+        float norm = (float) Math.sqrt(dot(src, so, src, so, n));
+        float inv = norm > 0 ? 1f / norm : 0f;
+        for (int i = 0; i < n; i++) dst[offset + i] = src[so + i] * inv;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        vectors = Arrays.copyOf(vectors, capacity * dim);
+        ids = Arrays.copyOf(ids, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+    }
+
+    private void checkDim(float[] embedding) {
+        if (embedding.length != dim) {
+            throw new IllegalArgumentException("Expected " + dim + " values, got " + embedding.length);
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s != null ? s.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static void putString(ByteBuffer buf, byte[] bytes) {
+        if (bytes == null) {
+            buf.putInt(-1);
+            return;
+        }
+        buf.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int n = buf.getInt();
+        if (n < 0) return null;
+        byte[] bytes = new byte[n];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
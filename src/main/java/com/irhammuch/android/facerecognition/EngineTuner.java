@@ -0,0 +1,148 @@
+package com.irhammuch.android.facerecognition;
+
+import android.util.Log;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Picks the CPU configuration for a model at startup. The tensor types decide whether
+ * XNNPACK can be used at all; every remaining candidate (XNNPACK on/off × thread count)
+ * is then timed over a few warm-up inferences and the fastest one wins. Candidates whose
+ * interpreter fails to build or run are skipped, so the plain CPU path is always left.
+ */
+public final class EngineTuner {
+    private static final String TAG = "EngineTuner";
+
+    /** The chosen configuration and its median warm-up latency. */
+    public static final class Config {
+        public final boolean useXnnpack;
+        public final int numThreads;
+        public final long medianNanos;
+
+        Config(boolean useXnnpack, int numThreads, long medianNanos) {
+            this.useXnnpack = useXnnpack;
+            this.numThreads = numThreads;
+            this.medianNanos = medianNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "XNNPACK " + (useXnnpack ? "on" : "off") + ", " + numThreads + " thread(s), "
+                    + (medianNanos / 1000) + " us";
+        }
+    }
+
+    private final int warmupRuns;
+    private final int timedRuns;
+
+    public EngineTuner(int warmupRuns, int timedRuns) {
+        this.warmupRuns = warmupRuns;
+        this.timedRuns = Math.max(1, timedRuns);
+    }
+
+    // XNNPACK handles float and 8-bit graphs; INT64 tensors (argmax/NMS tails) force the
+    // reference kernels
+    static boolean supportsXnnpack(DataType type) {
+        switch (type) {
+            case FLOAT32:
+            case UINT8:
+            case INT8:
+            case INT32:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // 1, 2, 4 ... up to the core count, plus the core count itself
+    static int[] threadCandidates(int cores) {
+        List<Integer> list = new ArrayList<>();
+        for (int t = 1; t < cores; t <<= 1) list.add(t);
+        list.add(Math.max(1, cores));
+        int[] out = new int[list.size()];
+        for (int i = 0; i < out.length; i++) out[i] = list.get(i);
+        return out;
+    }
+
+    // Inspect the graph's input/output tensor types with XNNPACK off
+    public static boolean xnnpackCompatible(ByteBuffer model) {
+        Interpreter probe = new Interpreter(model, new Interpreter.Options().setUseXNNPACK(false));
+        try {
+            for (int i = 0; i < probe.getInputTensorCount(); i++) {
+                DataType type = probe.getInputTensor(i).dataType();
+                if (!supportsXnnpack(type)) {
+                    Log.d(TAG, "Input " + i + " is " + type + ", XNNPACK unavailable");
+                    return false;
+                }
+            }
+            for (int i = 0; i < probe.getOutputTensorCount(); i++) {
+                DataType type = probe.getOutputTensor(i).dataType();
+                if (!supportsXnnpack(type)) {
+                    Log.d(TAG, "Output " + i + " is " + type + ", XNNPACK unavailable");
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            probe.close();
+        }
+    }
+
+    public Config tune(ByteBuffer model) {
+        boolean xnnpack = xnnpackCompatible(model);
+        int[] threads = threadCandidates(Runtime.getRuntime().availableProcessors());
+        Config best = null;
+        for (boolean useXnnpack : xnnpack ? new boolean[]{true, false} : new boolean[]{false}) {
+            for (int t : threads) {
+                Config c = time(model, useXnnpack, t);
+                if (c == null) continue;
+                Log.d(TAG, "Candidate: " + c);
+                if (best == null || c.medianNanos < best.medianNanos) best = c;
+            }
+        }
+        if (best == null) best = new Config(false, 1, -1);
+        Log.d(TAG, "Selected: " + best);
+        return best;
+    }
+
+    // Builds the engine with the tuned configuration
+    public TfliteInferenceEngine build(ByteBuffer model, int instances, int maxBatch) {
+        Config c = tune(model);
+        return new TfliteInferenceEngine(model, instances, c.numThreads, c.useXnnpack, maxBatch);
+    }
+
+    private Config time(ByteBuffer model, boolean useXnnpack, int numThreads) {
+        Interpreter interpreter = null;
+        try {
+            interpreter = new Interpreter(model, new Interpreter.Options()
+                    .setUseXNNPACK(useXnnpack).setNumThreads(numThreads));
+            ByteBuffer in = ByteBuffer.allocateDirect(interpreter.getInputTensor(0).numBytes())
+                    .order(ByteOrder.nativeOrder());
+            ByteBuffer out = ByteBuffer.allocateDirect(interpreter.getOutputTensor(0).numBytes())
+                    .order(ByteOrder.nativeOrder());
+            for (int i = 0; i < warmupRuns; i++) {
+                interpreter.run(in.rewind(), out.rewind());
+            }
+            long[] samples = new long[timedRuns];
+            for (int i = 0; i < timedRuns; i++) {
+                long t0 = System.nanoTime();
+                interpreter.run(in.rewind(), out.rewind());
+                samples[i] = System.nanoTime() - t0;
+            }
+            Arrays.sort(samples);
+            return new Config(useXnnpack, numThreads, samples[samples.length / 2]);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Skipping XNNPACK " + useXnnpack + " / " + numThreads + " thread(s)", e);
+            return null;
+        } finally {
+            if (interpreter != null) interpreter.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.irhammuch.android.facerecognition;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Two frame-sized bitmaps that the render thread draws into in turn while the UI thread
+ * shows the other one. A new frame is only started once the UI thread has picked up the
+ * previous one, so a bitmap is never written while on screen; frames that arrive before
+ * that are not drawn at all. Bitmaps and their canvases are allocated once per frame size,
+ * so steady-state rendering allocates no pixel memory.
+ */
+public final class FrameBitmaps {
+    private final Bitmap[] bitmaps = new Bitmap[2];
+    private final Canvas[] canvases = new Canvas[2];
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    private int width, height;
+    private int current;
+    private volatile Bitmap published;
+
+    /**
+     * Render thread: the bitmap to draw the next frame into, or null while the previous one
+     * is still waiting for the UI thread.
+     */
+    public Bitmap begin(int w, int h) {
+        if (inFlight.get()) return null;
+        if (w != width || h != height) {
+            // only the displayed bitmap is still referenced by the view; drop ours to GC
+            for (int i = 0; i < bitmaps.length; i++) {
+                bitmaps[i] = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+                canvases[i] = new Canvas(bitmaps[i]);
+            }
+            width = w;
+            height = h;
+        }
+        current ^= 1;
+        return bitmaps[current];
+    }
+
+    // Canvas over the bitmap returned by the last begin()
+    public Canvas canvas() { return canvases[current]; }
+
+    // Render thread: the frame is complete; post take() to the UI thread next
+    public void publish() {
+        published = bitmaps[current];
+        inFlight.set(true);
+    }
+
+    // UI thread: the bitmap to show; the other one becomes free for the next frame
+    public Bitmap take() {
+        Bitmap b = published;
+        inFlight.set(false);
+        return b;
+    }
+}
@@ -0,0 +1,285 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi-stage frame pipeline: a source thread plus one thread per stage, connected by
+ * bounded {@link RingBuffer}s. Each queue has its own {@link BackpressurePolicy}, so a
+ * slow stage either paces the ones before it or sheds frames instead of building latency.
+ *
+ * <p>Items flow through every stage in order and are handed back through the
+ * {@link Listener} once they complete or are dropped, so callers can recycle pooled
+ * frame objects. Plain Java, so scheduling can be tested on the JVM with fake stages.
+ */
+public final class FramePipeline<T> {
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** Produces frames; returning null ends the stream. */
+    public interface Source<T> {
+        T next() throws Exception;
+    }
+
+    public interface Stage<T> {
+        void process(T item) throws Exception;
+    }
+
+    public interface Listener<T> {
+        /** The item went through every stage. */
+        void onCompleted(T item);
+
+        /** The item was evicted by backpressure, failed a stage or was left over at stop. */
+        void onDropped(T item);
+
+        default void onError(String stage, T item, Exception e) {}
+
+        /** All threads are done, either at end of stream or after {@link #stop()}. */
+        default void onFinished() {}
+    }
+
+    private final class Node {
+        final String name;
+        final Stage<T> stage;
+        final RingBuffer<T> inbox;
+        final BackpressurePolicy policy;
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        volatile boolean upstreamDone;
+        Thread thread;
+
+        Node(String name, Stage<T> stage, int capacity, BackpressurePolicy policy) {
+            this.name = name;
+            this.stage = stage;
+            this.inbox = new RingBuffer<>(capacity);
+            this.policy = policy;
+        }
+    }
+
+    private final String name;
+    private final Source<T> source;
+    private final List<Node> nodes;
+    private final Listener<T> listener;
+    private Thread sourceThread;
+    private volatile boolean running;
+    private final AtomicLong produced = new AtomicLong();
+
+    private FramePipeline(Builder<T> b) {
+        this.name = b.name;
+        this.source = b.source;
+        this.nodes = new ArrayList<>(b.nodes.size());
+        for (Builder.StageSpec<T> s : b.nodes) {
+            nodes.add(new Node(s.name, s.stage, s.capacity, s.policy));
+        }
+        this.listener = b.listener;
+    }
+
+    public static final class Builder<T> {
+        private static final class StageSpec<T> {
+            final String name;
+            final int capacity;
+            final BackpressurePolicy policy;
+            final Stage<T> stage;
+
+            StageSpec(String name, int capacity, BackpressurePolicy policy, Stage<T> stage) {
+                this.name = name;
+                this.capacity = capacity;
+                this.policy = policy;
+                this.stage = stage;
+            }
+        }
+
+        private final String name;
+        private final Source<T> source;
+        private final List<StageSpec<T>> nodes = new ArrayList<>();
+        private Listener<T> listener;
+
+        public Builder(String name, Source<T> source) {
+            this.name = name;
+            this.source = source;
+        }
+
+        /** Appends a stage fed by a queue of {@code capacity} frames. */
+        public Builder<T> stage(String stageName, int capacity, BackpressurePolicy policy, Stage<T> stage) {
+            nodes.add(new StageSpec<>(stageName, capacity, policy, stage));
+            return this;
+        }
+
+        public Builder<T> listener(Listener<T> l) {
+            this.listener = l;
+            return this;
+        }
+
+        public FramePipeline<T> build() {
+            if (nodes.isEmpty()) throw new IllegalStateException("Pipeline needs at least one stage");
+            if (listener == null) throw new IllegalStateException("Pipeline needs a listener");
+            return new FramePipeline<>(this);
+        }
+    }
+
+    public synchronized void start() {
+        if (sourceThread != null) throw new IllegalStateException("Pipeline already started");
+        running = true;
+        for (int i = 0; i < nodes.size(); i++) {
+            final int index = i;
+            Node node = nodes.get(i);
+            node.thread = new Thread(() -> runStage(index), name + "-" + node.name);
+            node.thread.start();
+        }
+        sourceThread = new Thread(this::runSource, name + "-source");
+        sourceThread.start();
+    }
+
+    // Ask every thread to finish; queued frames are handed to onDropped
+    public void stop() {
+        running = false;
+        LockSupport.unpark(sourceThread);
+        for (Node n : nodes) LockSupport.unpark(n.thread);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(sourceThread);
+        for (Node n : nodes) threads.add(n.thread);
+        for (Thread t : threads) {
+            if (t == null) continue;
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0) return false;
+            t.join(left);
+            if (t.isAlive()) return false;
+        }
+        return true;
+    }
+
+    public long produced() { return produced.get(); }
+
+    public int stageCount() { return nodes.size(); }
+
+    public String stageName(int stage) { return nodes.get(stage).name; }
+
+    public long processed(int stage) { return nodes.get(stage).processed.get(); }
+
+    // Frames dropped from the queue in front of the stage
+    public long dropped(int stage) { return nodes.get(stage).dropped.get(); }
+
+    private void runSource() {
+        try {
+            while (running) {
+                T item;
+                try {
+                    item = source.next();
+                } catch (Exception e) {
+                    listener.onError("source", null, e);
+                    break;
+                }
+                if (item == null) break;
+                produced.incrementAndGet();
+                emit(nodes.get(0), item);
+            }
+        } finally {
+            finishUpstream(nodes.get(0));
+        }
+    }
+
+    private void runStage(int index) {
+        Node node = nodes.get(index);
+        Node next = index + 1 < nodes.size() ? nodes.get(index + 1) : null;
+        try {
+            while (running) {
+                T item = node.inbox.poll();
+                if (item == null) {
+                    if (node.upstreamDone && node.inbox.isEmpty()) break;
+                    LockSupport.parkNanos(PARK_NANOS);
+                    continue;
+                }
+                // room was freed for a blocked producer
+                if (node.policy == BackpressurePolicy.BLOCK) unparkProducer(index);
+                try {
+                    node.stage.process(item);
+                } catch (Exception e) {
+                    listener.onError(node.name, item, e);
+                    listener.onDropped(item);
+                    continue;
+                }
+                node.processed.incrementAndGet();
+                if (next != null) {
+                    emit(next, item);
+                } else {
+                    listener.onCompleted(item);
+                }
+            }
+            // when stopped early, wait for the producer's last emit before handing frames back
+            while (!node.upstreamDone) LockSupport.parkNanos(PARK_NANOS);
+            drain(node);
+        } finally {
+            if (next != null) {
+                finishUpstream(next);
+            } else {
+                running = false;
+                listener.onFinished();
+            }
+        }
+    }
+
+    private void emit(Node node, T item) {
+        switch (node.policy) {
+            case BLOCK:
+                while (!node.inbox.offer(item)) {
+                    if (!running) {
+                        listener.onDropped(item);
+                        return;
+                    }
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+                break;
+            case LATEST_ONLY:
+                evictAll(node);
+                offerEvicting(node, item);
+                break;
+            case DROP_OLDEST:
+                offerEvicting(node, item);
+                break;
+        }
+        LockSupport.unpark(node.thread);
+    }
+
+    private void offerEvicting(Node node, T item) {
+        while (!node.inbox.offer(item)) {
+            T old = node.inbox.poll();
+            if (old != null) {
+                node.dropped.incrementAndGet();
+                listener.onDropped(old);
+            }
+        }
+    }
+
+    private void evictAll(Node node) {
+        T old;
+        while ((old = node.inbox.poll()) != null) {
+            node.dropped.incrementAndGet();
+            listener.onDropped(old);
+        }
+    }
+
+    // Hand over anything still queued when stopping early
+    private void drain(Node node) {
+        T old;
+        while ((old = node.inbox.poll()) != null) listener.onDropped(old);
+    }
+
+    private void finishUpstream(Node node) {
+        node.upstreamDone = true;
+        LockSupport.unpark(node.thread);
+    }
+
+    private void unparkProducer(int index) {
+        LockSupport.unpark(index == 0 ? sourceThread : nodes.get(index - 1).thread);
+    }
+}
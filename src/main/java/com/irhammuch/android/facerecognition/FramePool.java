@@ -0,0 +1,36 @@
+package com.irhammuch.android.facerecognition;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/** Fixed set of {@link VideoFrame} buffers shared by a {@link FrameSource} and its consumers. */
+final class FramePool {
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final RingBuffer<VideoFrame> free;
+    private volatile boolean closed;
+
+    FramePool(int width, int height, int size) {
+        free = new RingBuffer<>(size);
+        for (int i = 0; i < size; i++) free.offer(new VideoFrame(width, height));
+    }
+
+    // Wait for a free buffer; fails once the pool is closed
+    VideoFrame acquire() throws InterruptedIOException {
+        VideoFrame frame;
+        while ((frame = free.poll()) == null) {
+            if (closed) throw new InterruptedIOException("Frame source closed");
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return frame;
+    }
+
+    void release(VideoFrame frame) {
+        free.offer(frame);
+    }
+
+    void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,339 @@
+package com.irhammuch.android.facerecognition;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Owns the model input tensor and the pixel scratch buffers for a whole session.
+ * All buffers are sized once for {@code inputSize × inputSize}, so steady-state frames
+ * allocate nothing: callers fill {@link #pixels()} with the letterboxed ARGB frame and
+ * {@link #normalize()} writes RGB floats in [0,1] into the input tensor. Quantized models
+ * get each channel quantized with the input tensor's scale and zero point through a
+ * 256-entry table, so there is no float math per pixel.
+ *
+ * <p>{@link #letterboxNormalize} fuses both steps: it samples the source with per-column
+ * and per-row index/weight tables cached per crop size and writes each output row straight
+ * into the tensor, with the same arithmetic (and so the same values) as the two-step path.
+ * Padding is written only when the geometry changes. The rows can be split into bands and
+ * run on several threads through {@link #prepare} and {@link #runBand}.
+ */
+public final class FramePreprocessor {
+
+    /** Element type of the model input tensor. */
+    public enum InputFormat {
+        /** 4-byte floats in [0,1]. */
+        FLOAT32(4),
+        /** Unsigned bytes; without given parameters scale 1/255, zero point 0 (raw pixels). */
+        UINT8(1),
+        /** Signed bytes; without given parameters scale 1/255, zero point -128. */
+        INT8(1);
+
+        final int bytesPerChannel;
+
+        InputFormat(int bytesPerChannel) {
+            this.bytesPerChannel = bytesPerChannel;
+        }
+    }
+
+    // ARGB channel value -> normalized float, avoids a divide per channel
+    private static final float[] NORM = new float[256];
+    static {
+        for (int i = 0; i < NORM.length; i++) NORM[i] = i / 255f;
+    }
+
+    private final int inputSize;
+    private final InputFormat format;
+    private final Letterbox letterbox;
+    private final ByteBuffer inputBuffer;
+    private final FloatBuffer inputFloats;
+    private final int[] pixels;
+    private final float[] rowFloats;
+    private final byte[] rowBytes;
+    private final byte[] quant; // channel value -> quantized input byte; null for float input
+
+    // Fused path: sampling tables for the current crop size, crop-relative
+    private int tableW = -1, tableH = -1;
+    private int[] colX0, colX1, rowY0, rowY1;
+    private float[] colWx, rowWy;
+    // Source of the frame being fused, set by prepare()
+    private int[] fusedSrc;
+    private int fusedStride, fusedCropX, fusedCropY;
+    // Per-band output views and row scratch, so bands can run concurrently
+    private Band[] bands = new Band[0];
+
+    private final class Band {
+        final FloatBuffer floats = inputFloats != null ? inputFloats.duplicate() : null;
+        final ByteBuffer bytes = inputBuffer.duplicate();
+        final float[] rowF = inputFloats != null ? new float[inputSize * 3] : null;
+        final byte[] rowB = inputFloats != null ? null : new byte[inputSize * 3];
+    }
+
+    public FramePreprocessor(int inputSize) {
+        this(inputSize, InputFormat.FLOAT32);
+    }
+
+    public FramePreprocessor(int inputSize, InputFormat format) {
+        this(inputSize, format, 0f, 0);
+    }
+
+    /**
+     * @param scale     input quantization scale of a UINT8 / INT8 model; 0 for the format's
+     *                  default parameters
+     * @param zeroPoint input quantization zero point, used with a non-zero scale
+     */
+    public FramePreprocessor(int inputSize, InputFormat format, float scale, int zeroPoint) {
+        this.inputSize = inputSize;
+        this.format = format;
+        this.letterbox = new Letterbox(inputSize);
+        this.inputBuffer = ByteBuffer.allocateDirect(inputSize * inputSize * 3 * format.bytesPerChannel)
+                .order(ByteOrder.nativeOrder());
+        boolean floats = format == InputFormat.FLOAT32;
+        this.inputFloats = floats ? inputBuffer.asFloatBuffer() : null;
+        this.pixels = new int[inputSize * inputSize];
+        this.rowFloats = floats ? new float[inputSize * 3] : null;
+        this.rowBytes = floats ? null : new byte[inputSize * 3];
+        this.quant = floats ? null : quantTable(format, scale, zeroPoint);
+    }
+
+    // q = round(v / 255 / scale) + zeroPoint for every channel value v, clamped to the type
+    private static byte[] quantTable(InputFormat format, float scale, int zeroPoint) {
+        boolean signed = format == InputFormat.INT8;
+        if (scale <= 0) {
+            scale = 1 / 255f;
+            zeroPoint = signed ? -128 : 0;
+        }
+        int lo = signed ? -128 : 0, hi = signed ? 127 : 255;
+        byte[] table = new byte[256];
+        for (int v = 0; v < table.length; v++) {
+            int q = Math.round(v / 255f / scale) + zeroPoint;
+            table[v] = (byte) Math.max(lo, Math.min(hi, q));
+        }
+        return table;
+    }
+
+    public int inputSize() { return inputSize; }
+
+    public InputFormat format() { return format; }
+
+    public Letterbox letterbox() { return letterbox; }
+
+    // Letterboxed ARGB pixels, inputSize × inputSize, row-major
+    public int[] pixels() { return pixels; }
+
+    // Input tensor, rewound and ready for Interpreter.run
+    public ByteBuffer inputBuffer() { return inputBuffer; }
+
+    // Bilinear resize + pad of a packed ARGB frame into pixels()
+    public void letterboxFrom(int[] src, int srcW, int srcH) {
+        letterboxFrom(src, srcW, srcH, 0, 0, srcW, srcH);
+    }
+
+    // Same for the region (cropX, cropY, cropW, cropH) of the frame
+    public void letterboxFrom(int[] src, int srcW, int srcH, int cropX, int cropY, int cropW, int cropH) {
+        if (letterbox.update(srcW, srcH, cropX, cropY, cropW, cropH)) {
+            // padding only needs clearing when the geometry changes
+            Arrays.fill(pixels, 0xFF000000);
+        }
+        final int padW = letterbox.padW(), padH = letterbox.padH();
+        final int rw = letterbox.scaledW(), rh = letterbox.scaledH();
+        final float sx = (float) cropW / rw, sy = (float) cropH / rh;
+        for (int y = 0; y < rh; y++) {
+            float fy = Math.max(0f, (y + 0.5f) * sy - 0.5f);
+            int y0 = Math.min((int) fy, cropH - 1), y1 = Math.min(y0 + 1, cropH - 1);
+            float wy = fy - y0;
+            int r0 = (y0 + cropY) * srcW + cropX, r1 = (y1 + cropY) * srcW + cropX;
+            int row = (y + padH) * inputSize + padW;
+            for (int x = 0; x < rw; x++) {
+                float fx = Math.max(0f, (x + 0.5f) * sx - 0.5f);
+                int x0 = Math.min((int) fx, cropW - 1), x1 = Math.min(x0 + 1, cropW - 1);
+                float wx = fx - x0;
+                pixels[row + x] = bilinear(src[r0 + x0], src[r0 + x1], src[r1 + x0], src[r1 + x1], wx, wy);
+            }
+        }
+    }
+
+    private static int bilinear(int p00, int p01, int p10, int p11, float wx, float wy) {
+        int r = lerp2((p00 >> 16) & 0xFF, (p01 >> 16) & 0xFF, (p10 >> 16) & 0xFF, (p11 >> 16) & 0xFF, wx, wy);
+        int g = lerp2((p00 >> 8) & 0xFF, (p01 >> 8) & 0xFF, (p10 >> 8) & 0xFF, (p11 >> 8) & 0xFF, wx, wy);
+        int b = lerp2(p00 & 0xFF, p01 & 0xFF, p10 & 0xFF, p11 & 0xFF, wx, wy);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int lerp2(int a, int b, int c, int d, float wx, float wy) {
+        float top = a + (b - a) * wx;
+        float bottom = c + (d - c) * wx;
+        return Math.round(top + (bottom - top) * wy);
+    }
+
+    // Write pixels() into the input tensor in the model's format, one bulk put per row
+    public ByteBuffer normalize() {
+        tableW = tableH = -1; // the fused path has to rewrite its padding after this
+        if (format != InputFormat.FLOAT32) return packBytes();
+        final int[] pix = pixels;
+        final float[] row = rowFloats;
+        final int size = inputSize;
+        inputFloats.clear();
+        for (int y = 0, p = 0; y < size; y++) {
+            for (int x = 0, o = 0; x < size; x++, p++, o += 3) {
+                int v = pix[p];
+                row[o]     = NORM[(v >> 16) & 0xFF];
+                row[o + 1] = NORM[(v >> 8) & 0xFF];
+                row[o + 2] = NORM[v & 0xFF];
+            }
+            inputFloats.put(row, 0, row.length);
+        }
+        inputBuffer.rewind();
+        return inputBuffer;
+    }
+
+    // Quantized input: each RGB byte through the quantization table
+    private ByteBuffer packBytes() {
+        final int[] pix = pixels;
+        final byte[] row = rowBytes;
+        final byte[] q = quant;
+        final int size = inputSize;
+        inputBuffer.clear();
+        for (int y = 0, p = 0; y < size; y++) {
+            for (int x = 0, o = 0; x < size; x++, p++, o += 3) {
+                int v = pix[p];
+                row[o]     = q[(v >> 16) & 0xFF];
+                row[o + 1] = q[(v >> 8) & 0xFF];
+                row[o + 2] = q[v & 0xFF];
+            }
+            inputBuffer.put(row, 0, row.length);
+        }
+        inputBuffer.rewind();
+        return inputBuffer;
+    }
+
+    // Fused letterbox + normalize of a whole frame on the calling thread
+    public ByteBuffer letterboxNormalize(int[] src, int srcW, int srcH) {
+        return letterboxNormalize(src, srcW, srcH, 0, 0, srcW, srcH);
+    }
+
+    // Same for the region (cropX, cropY, cropW, cropH) of the frame
+    public ByteBuffer letterboxNormalize(int[] src, int srcW, int srcH,
+                                         int cropX, int cropY, int cropW, int cropH) {
+        prepare(src, srcW, srcH, cropX, cropY, cropW, cropH);
+        runBand(0, 1);
+        inputBuffer.rewind();
+        return inputBuffer;
+    }
+
+    /**
+     * Sets up a fused pass over {@code src}: updates the letterbox, rebuilds the sampling
+     * tables and rewrites the padding if the crop size changed. Follow with
+     * {@link #runBand} for every band, from any threads, before using the tensor.
+     */
+    public void prepare(int[] src, int srcW, int srcH, int cropX, int cropY, int cropW, int cropH) {
+        letterbox.update(srcW, srcH, cropX, cropY, cropW, cropH);
+        if (cropW != tableW || cropH != tableH) {
+            buildTables(cropW, cropH);
+            fillPadding();
+        }
+        fusedSrc = src;
+        fusedStride = srcW;
+        fusedCropX = cropX;
+        fusedCropY = cropY;
+    }
+
+    // Bilinear source positions exactly as letterboxFrom computes them
+    private void buildTables(int cropW, int cropH) {
+        final int rw = letterbox.scaledW(), rh = letterbox.scaledH();
+        final float sx = (float) cropW / rw, sy = (float) cropH / rh;
+        if (colX0 == null || colX0.length < inputSize) {
+            colX0 = new int[inputSize];
+            colX1 = new int[inputSize];
+            colWx = new float[inputSize];
+            rowY0 = new int[inputSize];
+            rowY1 = new int[inputSize];
+            rowWy = new float[inputSize];
+        }
+        for (int x = 0; x < rw; x++) {
+            float fx = Math.max(0f, (x + 0.5f) * sx - 0.5f);
+            colX0[x] = Math.min((int) fx, cropW - 1);
+            colX1[x] = Math.min(colX0[x] + 1, cropW - 1);
+            colWx[x] = fx - colX0[x];
+        }
+        for (int y = 0; y < rh; y++) {
+            float fy = Math.max(0f, (y + 0.5f) * sy - 0.5f);
+            rowY0[y] = Math.min((int) fy, cropH - 1);
+            rowY1[y] = Math.min(rowY0[y] + 1, cropH - 1);
+            rowWy[y] = fy - rowY0[y];
+        }
+        tableW = cropW;
+        tableH = cropH;
+    }
+
+    // Whole tensor to black in the model's format; content rows are overwritten per frame
+    private void fillPadding() {
+        inputBuffer.clear();
+        if (format == InputFormat.FLOAT32) {
+            Arrays.fill(rowFloats, 0f);
+            inputFloats.clear();
+            for (int y = 0; y < inputSize; y++) inputFloats.put(rowFloats);
+        } else {
+            Arrays.fill(rowBytes, quant[0]);
+            for (int y = 0; y < inputSize; y++) inputBuffer.put(rowBytes);
+        }
+        inputBuffer.rewind();
+    }
+
+    private synchronized Band band(int band, int count) {
+        if (bands.length < count) {
+            Band[] grown = Arrays.copyOf(bands, count);
+            for (int i = bands.length; i < count; i++) grown[i] = new Band();
+            bands = grown;
+        }
+        return bands[band];
+    }
+
+    /**
+     * Samples and writes the content rows of band {@code band} out of {@code count} equal
+     * bands. Different bands touch disjoint parts of the tensor and may run concurrently;
+     * calls for the same band must not overlap.
+     */
+    public void runBand(int band, int count) {
+        Band b = band(band, count);
+        final int rh = letterbox.scaledH(), rw = letterbox.scaledW();
+        final int padW = letterbox.padW(), padH = letterbox.padH();
+        final int from = (int) ((long) rh * band / count), to = (int) ((long) rh * (band + 1) / count);
+        final int[] src = fusedSrc;
+        final int stride = fusedStride, cx = fusedCropX, cy = fusedCropY;
+        final int[] x0s = colX0, x1s = colX1;
+        final float[] wxs = colWx;
+        final byte[] q = quant;
+        for (int y = from; y < to; y++) {
+            final int r0 = (rowY0[y] + cy) * stride + cx, r1 = (rowY1[y] + cy) * stride + cx;
+            final float wy = rowWy[y];
+            final int out = ((y + padH) * inputSize + padW) * 3;
+            if (b.rowF != null) {
+                final float[] row = b.rowF;
+                for (int x = 0, o = 0; x < rw; x++, o += 3) {
+                    int p00 = src[r0 + x0s[x]], p01 = src[r0 + x1s[x]];
+                    int p10 = src[r1 + x0s[x]], p11 = src[r1 + x1s[x]];
+                    float wx = wxs[x];
+                    row[o]     = NORM[lerp2((p00 >> 16) & 0xFF, (p01 >> 16) & 0xFF, (p10 >> 16) & 0xFF, (p11 >> 16) & 0xFF, wx, wy)];
+                    row[o + 1] = NORM[lerp2((p00 >> 8) & 0xFF, (p01 >> 8) & 0xFF, (p10 >> 8) & 0xFF, (p11 >> 8) & 0xFF, wx, wy)];
+                    row[o + 2] = NORM[lerp2(p00 & 0xFF, p01 & 0xFF, p10 & 0xFF, p11 & 0xFF, wx, wy)];
+                }
+                b.floats.position(out);
+                b.floats.put(row, 0, rw * 3);
+            } else {
+                final byte[] row = b.rowB;
+                for (int x = 0, o = 0; x < rw; x++, o += 3) {
+                    int p00 = src[r0 + x0s[x]], p01 = src[r0 + x1s[x]];
+                    int p10 = src[r1 + x0s[x]], p11 = src[r1 + x1s[x]];
+                    float wx = wxs[x];
+                    row[o]     = q[lerp2((p00 >> 16) & 0xFF, (p01 >> 16) & 0xFF, (p10 >> 16) & 0xFF, (p11 >> 16) & 0xFF, wx, wy)];
+                    row[o + 1] = q[lerp2((p00 >> 8) & 0xFF, (p01 >> 8) & 0xFF, (p10 >> 8) & 0xFF, (p11 >> 8) & 0xFF, wx, wy)];
+                    row[o + 2] = q[lerp2(p00 & 0xFF, p01 & 0xFF, p10 & 0xFF, p11 & 0xFF, wx, wy)];
+                }
+                b.bytes.position(out);
+                b.bytes.put(row, 0, rw * 3);
+            }
+        }
+    }
+}
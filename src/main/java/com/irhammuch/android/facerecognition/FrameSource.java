@@ -0,0 +1,44 @@
+package com.irhammuch.android.facerecognition;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.LongPredicate;
+
+/**
+ * Sequential stream of decoded frames. Implementations decode forward without seeking and
+ * fill buffers from a fixed pool, so a session allocates no per-frame pixel memory.
+ */
+public interface FrameSource extends Closeable {
+    int width();
+
+    int height();
+
+    /**
+     * Next sampled frame, or null at the end of the stream. Blocks while every pooled
+     * buffer is still held by the caller.
+     */
+    VideoFrame next() throws IOException;
+
+    /**
+     * Changes the spacing between emitted frames, in stream time, starting after the frame
+     * most recently returned; 0 emits every frame. Safe to call from another thread.
+     */
+    void setSampleIntervalUs(long intervalUs);
+
+    /**
+     * Frames whose timestamp the filter rejects are still returned in order, but without
+     * converting their pixels ({@link VideoFrame#hasPixels} false), for callers that already
+     * hold results for them. Null converts every frame. Safe to call from another thread.
+     */
+    void setPixelFilter(LongPredicate wantsPixels);
+
+    /**
+     * Makes a {@link #next()} that waits for a free buffer, and every later call, fail
+     * instead of blocking, so a stopping consumer can wind down its decode thread. Safe to
+     * call from another thread; the source still has to be closed once that thread is done.
+     */
+    void cancel();
+
+    /** Hands a frame returned by {@link #next()} back to the pool. */
+    void release(VideoFrame frame);
+}
@@ -0,0 +1,42 @@
+package com.irhammuch.android.facerecognition;
+
+/**
+ * One frame travelling through the {@link FramePipeline}. Tasks are pooled and recycled
+ * once rendered or dropped, together with the pooled {@link VideoFrame} they carry.
+ */
+final class FrameTask {
+    int index;
+    long timeUs;
+    long startNanos; // scheduler clock when decoded, for end-to-end latency
+    VideoFrame video;
+    // Input tensor slot, held from preprocess until inference has consumed it; stays null
+    // on frames the tracker predicts without running the detector
+    FramePreprocessor input;
+    // Set by the motion gate: nothing moved since the last frame that was processed
+    boolean unchanged;
+    // Detections come from the DetectionCache; the source skipped this frame's pixels
+    boolean cached;
+    // Cascade: the presence model rejected the frame (absent) or passed it on (gated)
+    boolean absent;
+    boolean gated;
+    // Full-frame search left to the TiledDetector, which letterboxes its own tiles
+    boolean tiled;
+    final Detections boxes;
+    final int[] trackIds;
+
+    FrameTask(int maxDetections) {
+        boxes = new Detections(maxDetections);
+        trackIds = new int[maxDetections];
+    }
+
+    void reset() {
+        video = null;
+        input = null;
+        unchanged = false;
+        tiled = false;
+        cached = false;
+        absent = false;
+        gated = false;
+        boxes.clear();
+    }
+}
@@ -4,98 +4,158 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Rect;
-import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.View;
 
 import androidx.annotation.Nullable;
 
+import java.util.function.LongSupplier;
 
+/**
+ * Draws tracked boxes over the video. The producer (normally the inference thread) hands
+ * over a whole frame of boxes in one {@link #update} call, stamped with its frame time. The
+ * pipeline decodes ahead of playback, so frames wait in a {@link BoxTimeline} until the
+ * playback clock reaches them; neither side ever waits or sees a half-written frame. An
+ * update only schedules a redraw, never a layout pass. Paints are configured once, labels
+ * are formatted into a reused char array, and nothing is allocated per frame.
+ *
+ * <p>Boxes are in source-frame pixels and are mapped onto the view as the video is shown,
+ * scaled to fit and centered.
+ */
 public class GraphicOverlay extends View {
-    private static final String TAG = "MainActivity";
-    private final Paint rectPaint = new Paint();
-    private float scaleX = 1.0f;
-    private float scaleY = 1.0f;
-    private final Paint textPaint = new Paint();
-    private String name = null;
-    private RectF rectF = null;
+    /** Boxes drawn per frame; more are ignored. */
+    public static final int MAX_BOXES = 128;
+    private static final float STROKE = 8f;
+    private static final float CORNER_RADIUS = 10f;
+    private static final float TEXT_SIZE = 30f;
+    private static final float LABEL_HEIGHT = 40f;
+    private static final float LABEL_PADDING = 15f;
+    private static final int QUEUED_FRAMES = 32; // frames held ahead of playback
+    private static final long VSYNC_US = 16_000;
+
+    private final BoxTimeline timeline = new BoxTimeline(QUEUED_FRAMES, MAX_BOXES);
+    private volatile LongSupplier playbackUs; // null: each update shows at once
+
+    private final Paint rectPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
     private final Paint labelPaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private char[][] labels = new char[0][];
+    private final char[] text = new char[64];
 
     public GraphicOverlay(Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
+        rectPaint.setColor(Color.RED);
+        rectPaint.setStyle(Paint.Style.STROKE);
+        rectPaint.setStrokeWidth(STROKE);
+        labelPaint.setColor(Color.BLUE);
+        labelPaint.setStyle(Paint.Style.FILL);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(TEXT_SIZE);
+        textPaint.setTypeface(Typeface.DEFAULT_BOLD);
     }
 
-    @Override
-    public void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
+    // Class names by class index, drawn with the track id and score; set once
+    public void setLabels(String[] names) {
+        char[][] l = new char[names.length][];
+        for (int i = 0; i < names.length; i++) l[i] = names[i].toCharArray();
+        labels = l;
+    }
 
-        if(name != null && !name.trim().isEmpty() && rectF != null && !name.equals("unknown")) {
-            labelPaint.setColor(Color.BLUE);
-            labelPaint.setStyle(Paint.Style.FILL);
-            canvas.drawRect(
-                    rectF.left,
-                    rectF.bottom - 40.0f,
-                    (float) (rectF.left + (rectF.right - rectF.left) * 0.75),
-                    rectF.bottom,
-                    labelPaint
-            );
-            textPaint.setColor(Color.WHITE);
-            textPaint.setTextSize(30.0f);
-            textPaint.setTypeface(Typeface.DEFAULT_BOLD);
-            canvas.drawText(name, rectF.left + 15.0f , rectF.bottom - 15.0f, textPaint);
-            rectPaint.setColor(Color.BLUE);
-        } else {
-            rectPaint.setColor(Color.RED);
-        }
+    // Playback position in microseconds, read on the UI thread; each frame's boxes appear
+    // once it reaches their frame time. Null shows every update as soon as it arrives.
+    public void setPlaybackClock(@Nullable LongSupplier positionUs) {
+        playbackUs = positionUs;
+        postInvalidateOnAnimation();
+    }
 
-        if(rectF != null) {
-            rectPaint.setStrokeWidth(8.0f);
-            rectPaint.setStyle(Paint.Style.STROKE);
-            float cornerRadius = 10.0f;
-            canvas.drawRoundRect(rectF, cornerRadius, cornerRadius, rectPaint);
+    /**
+     * Queues the first {@code count} entries of the given arrays as the boxes of the frame at
+     * {@code timeUs}. {@code ids} may be null. Callable from any one producer thread; when
+     * playback is too far behind, the frame is dropped.
+     */
+    public void update(long timeUs, int frameWidth, int frameHeight, float[] x1, float[] y1, float[] x2,
+                       float[] y2, float[] scores, int[] classes, int[] ids, int count) {
+        if (timeline.offer(timeUs, frameWidth, frameHeight, x1, y1, x2, y2, scores, classes, ids, count)) {
+            postInvalidateOnAnimation();
         }
     }
 
-    public void draw(Rect rect, float scaleX, float scaleY, String name) {
-        RectF adjustedRect = adjustBoundingRect(rect);
-        this.rectF = adjustedRect;
-        this.scaleX = scaleX;
-        this.scaleY = scaleY;
-        this.name = name;
-        postInvalidate();
-        requestLayout();
-        logInfo(rect, scaleX, scaleY, adjustedRect);
+    public void update(Detections boxes, int[] ids, long timeUs, int frameWidth, int frameHeight) {
+        update(timeUs, frameWidth, frameHeight, boxes.x1, boxes.y1, boxes.x2, boxes.y2, boxes.score,
+                boxes.cls, ids, boxes.size());
     }
 
-    private float translateX(float x){
-        return  x * scaleX;
+    // Removes the boxes on screen and every queued frame; same thread as update
+    public void clear() {
+        timeline.clear();
+        postInvalidateOnAnimation();
     }
 
-    private float translateY(float y) {
-        return y * scaleY;
-    }
+    @Override
+    public void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        LongSupplier clock = playbackUs;
+        long now = clock != null ? clock.getAsLong() : Long.MAX_VALUE;
+        BoxTimeline.Frame f = timeline.current(now);
+        // come back when the next queued frame is due
+        long next = timeline.nextTimeUs();
+        if (next != Long.MAX_VALUE) {
+            long waitUs = next - now;
+            if (waitUs <= VSYNC_US) postInvalidateOnAnimation();
+            else postInvalidateDelayed(waitUs / 1000);
+        }
+        Detections d = f.boxes();
+        if (d.isEmpty() || f.width() <= 0 || f.height() <= 0) return;
+
+        // fit-center, as the video view scales the frame
+        float scale = Math.min((float) getWidth() / f.width(), (float) getHeight() / f.height());
+        float ox = (getWidth() - f.width() * scale) / 2, oy = (getHeight() - f.height() * scale) / 2;
+        char[][] names = labels;
+        for (int i = 0; i < d.size(); i++) {
+            float left = ox + d.x1[i] * scale, top = oy + d.y1[i] * scale;
+            float right = ox + d.x2[i] * scale, bottom = oy + d.y2[i] * scale;
+            canvas.drawRoundRect(left, top, right, bottom, CORNER_RADIUS, CORNER_RADIUS, rectPaint);
 
-    private RectF adjustBoundingRect(Rect rect) {
-        if(rect != null) {
-            float padding = 10.0f;
-            return new RectF(
-                    translateX((float) rect.left) - padding,
-                    translateY((float) rect.top) - padding,
-                    translateX((float) rect.right) + padding,
-                    translateY((float)rect.bottom) + padding
-            );
+            int len = formatLabel(names, d.cls[i], f.id(i), d.score[i]);
+            float textWidth = textPaint.measureText(text, 0, len);
+            canvas.drawRect(left, bottom - LABEL_HEIGHT, left + textWidth + 2 * LABEL_PADDING, bottom,
+                    labelPaint);
+            canvas.drawText(text, 0, len, left + LABEL_PADDING, bottom - LABEL_PADDING, textPaint);
         }
-        return null;
     }
 
-    private void logInfo(Rect rect, float scaleX, float scaleY, RectF rectF) {
-        Log.i(TAG, "Boundingbox : " +  rect);
-        Log.i(TAG, "RectF : " +  rectF);
-        Log.i(TAG, "scaleX : "  + scaleX);
-        Log.i(TAG, "scaleY : "  + scaleY);
+    // "<label> #<id> <score%>" into text, parts left out when unknown; returns the length
+    private int formatLabel(char[][] names, int cls, int id, float score) {
+        int n = 0;
+        if (cls >= 0 && cls < names.length) {
+            char[] name = names[cls];
+            int len = Math.min(name.length, text.length - 16);
+            System.arraycopy(name, 0, text, 0, len);
+            n = len;
+            text[n++] = ' ';
+        }
+        if (id >= 0) {
+            text[n++] = '#';
+            n = appendInt(id, n);
+            text[n++] = ' ';
+        }
+        n = appendInt(Math.round(Math.max(0, Math.min(1, score)) * 100), n);
+        text[n++] = '%';
+        return n;
     }
 
+    private int appendInt(int v, int at) {
+        int end = at;
+        int t = v;
+        do {
+            end++;
+            t /= 10;
+        } while (t > 0);
+        for (int p = end - 1; p >= at; p--) {
+            text[p] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        return end;
+    }
 }
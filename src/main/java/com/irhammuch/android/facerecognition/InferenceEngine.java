@@ -0,0 +1,78 @@
+package com.irhammuch.android.facerecognition;
+
+import org.tensorflow.lite.DataType;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the detector on prepared input tensors. Implementations may hold several model
+ * instances and spread queued work across them; callers only see tensors in and out.
+ */
+public interface InferenceEngine extends Closeable {
+    /** Input shape for a batch of one, e.g. [1, 640, 640, 3]. */
+    int[] inputShape();
+
+    /** Output shape for a batch of one, e.g. [1, 5, 8400]. */
+    int[] outputShape();
+
+    /** Output tensor size in bytes for a batch of one. */
+    int outputBytes();
+
+    /** Element type of the input tensor; UINT8/INT8 for full-integer models. */
+    DataType inputType();
+
+    /** Element type of the output tensor. */
+    DataType outputType();
+
+    /** Input quantization scale, 0 for float inputs. */
+    float inputScale();
+
+    /** Input quantization zero point. */
+    int inputZeroPoint();
+
+    /** Output quantization scale, 0 for float outputs. */
+    float outputScale();
+
+    /** Output quantization zero point. */
+    int outputZeroPoint();
+
+    /** Number of model instances work is spread over. */
+    int instances();
+
+    /** Largest batch accepted by {@link #submitBatch}; 1 when the model has a fixed batch. */
+    int maxBatch();
+
+    /** Runs one frame and waits for the result. */
+    void run(ByteBuffer input, ByteBuffer output) throws Exception;
+
+    /** Queues one frame on the next free instance. */
+    Future<?> submit(ByteBuffer input, ByteBuffer output);
+
+    /**
+     * Queues {@code batch} frames packed back to back in {@code input}; outputs are packed
+     * the same way.
+     */
+    Future<?> submitBatch(ByteBuffer input, int batch, ByteBuffer output);
+
+    /**
+     * Runs {@code runs} inferences on zeroed tensors on every instance, so tensor allocation
+     * and kernel preparation are paid before the first real frame. Returns the longest first
+     * run, i.e. what the first frame would otherwise have waited.
+     */
+    long warmUp(int runs) throws Exception;
+
+    /**
+     * Resizes every instance's input to {@code width} x {@code height} and reallocates its
+     * tensors; input and output shapes and byte sizes change with it. Returns false, leaving
+     * the engine as it was, when the model cannot take that size. No run may be in flight.
+     */
+    boolean resizeInput(int width, int height);
+
+    /** Rebuilds every instance with the given CPU thread count. */
+    void setNumThreads(int numThreads);
+
+    @Override
+    void close();
+}
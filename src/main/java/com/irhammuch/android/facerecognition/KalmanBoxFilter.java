@@ -0,0 +1,174 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.Arrays;
+
+/**
+ * Constant-velocity Kalman filter over a box, state {@code [cx, cy, w, h, vx, vy, vw, vh]}
+ * with the box itself as the measurement and velocities in pixels per second of stream
+ * time. Process and measurement noise scale with the box size, as in SORT/ByteTrack, so
+ * small far-away balls and large close ones behave alike; process noise also grows with the
+ * time step, so a prediction across a long gap between samples is trusted less.
+ * All matrices are preallocated; predict and update allocate nothing.
+ */
+public final class KalmanBoxFilter {
+    private static final int N = 8, M = 4;
+    private static final double POSITION_WEIGHT = 1.0 / 20;
+    // ByteTrack uses 1/160; balls change speed far more than pedestrians do
+    private static final double VELOCITY_WEIGHT = 1.0 / 20;
+    // the weights are per step of this length (one 30 fps frame, as in SORT)
+    private static final double REFERENCE_STEP_S = 1.0 / 30;
+
+    private final double[] x = new double[N];
+    private final double[] p = new double[N * N];
+    // scratch
+    private final double[] tmp = new double[N * N];
+    private final double[] s = new double[M * M];
+    private final double[] sInv = new double[M * M];
+    private final double[] k = new double[N * M];
+    private final double[] innovation = new double[M];
+    private final double[] inv = new double[M * 2 * M];
+
+    public KalmanBoxFilter(float x1, float y1, float x2, float y2) {
+        reset(x1, y1, x2, y2);
+    }
+
+    public void reset(float x1, float y1, float x2, float y2) {
+        double w = x2 - x1, h = y2 - y1;
+        x[0] = x1 + w / 2;
+        x[1] = y1 + h / 2;
+        x[2] = w;
+        x[3] = h;
+        x[4] = x[5] = x[6] = x[7] = 0;
+        Arrays.fill(p, 0);
+        // unknown velocity starts with a much wider spread than the measured box
+        addDiagonal(p, N, 2 * POSITION_WEIGHT * w, 2 * POSITION_WEIGHT * h, 0);
+        addDiagonal(p, N, 10 * VELOCITY_WEIGHT / REFERENCE_STEP_S * w,
+                10 * VELOCITY_WEIGHT / REFERENCE_STEP_S * h, M);
+    }
+
+    // x = F x, P = F P F^T + Q, with F adding each velocity times dt to its position and Q
+    // growing linearly with dt
+    public void predict(long dtUs) {
+        final double dt = Math.max(0, dtUs) / 1e6;
+        for (int i = 0; i < M; i++) x[i] += x[i + M] * dt;
+        if (x[2] < 1) x[2] = 1;
+        if (x[3] < 1) x[3] = 1;
+
+        // tmp = F P: rows 0..3 gain dt times the matching velocity row
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < N; c++) {
+                tmp[r * N + c] = p[r * N + c] + (r < M ? dt * p[(r + M) * N + c] : 0);
+            }
+        }
+        // P = tmp F^T: columns 0..3 gain dt times the matching velocity column
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < N; c++) {
+                p[r * N + c] = tmp[r * N + c] + (c < M ? dt * tmp[r * N + c + M] : 0);
+            }
+        }
+        double w = x[2], h = x[3];
+        double steps = Math.sqrt(dt / REFERENCE_STEP_S); // std grows with sqrt(dt)
+        addDiagonal(p, N, steps * POSITION_WEIGHT * w, steps * POSITION_WEIGHT * h, 0);
+        addDiagonal(p, N, steps * VELOCITY_WEIGHT / REFERENCE_STEP_S * w,
+                steps * VELOCITY_WEIGHT / REFERENCE_STEP_S * h, M);
+    }
+
+    // Standard update with H = [I 0]: S = P[0:4,0:4] + R, K = P[:,0:4] S^-1
+    public void update(float x1, float y1, float x2, float y2) {
+        double w = x2 - x1, h = y2 - y1;
+        innovation[0] = x1 + w / 2 - x[0];
+        innovation[1] = y1 + h / 2 - x[1];
+        innovation[2] = w - x[2];
+        innovation[3] = h - x[3];
+
+        for (int r = 0; r < M; r++) {
+            for (int c = 0; c < M; c++) s[r * M + c] = p[r * N + c];
+        }
+        addDiagonal(s, M, POSITION_WEIGHT * x[2], POSITION_WEIGHT * x[3], 0);
+        if (!invert4(s, sInv)) return;
+
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < M; c++) {
+                double acc = 0;
+                for (int j = 0; j < M; j++) acc += p[r * N + j] * sInv[j * M + c];
+                k[r * M + c] = acc;
+            }
+        }
+        for (int r = 0; r < N; r++) {
+            double acc = 0;
+            for (int j = 0; j < M; j++) acc += k[r * M + j] * innovation[j];
+            x[r] += acc;
+        }
+        // P = P - K (H P), H P being the first four rows of P
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < N; c++) {
+                double acc = 0;
+                for (int j = 0; j < M; j++) acc += k[r * M + j] * p[j * N + c];
+                tmp[r * N + c] = p[r * N + c] - acc;
+            }
+        }
+        System.arraycopy(tmp, 0, p, 0, p.length);
+    }
+
+    // Adds (std^2) to the diagonal of the 4 entries starting at offset, std from w/h alternately
+    private static void addDiagonal(double[] m, int n, double stdW, double stdH, int offset) {
+        m[offset * n + offset] += stdW * stdW;
+        m[(offset + 1) * n + offset + 1] += stdH * stdH;
+        m[(offset + 2) * n + offset + 2] += stdW * stdW;
+        m[(offset + 3) * n + offset + 3] += stdH * stdH;
+    }
+
+    // Gauss-Jordan with partial pivoting on [S | I]
+    private boolean invert4(double[] src, double[] dst) {
+        final int w = 2 * M;
+        for (int r = 0; r < M; r++) {
+            for (int c = 0; c < M; c++) {
+                inv[r * w + c] = src[r * M + c];
+                inv[r * w + M + c] = r == c ? 1 : 0;
+            }
+        }
+        for (int col = 0; col < M; col++) {
+            int pivot = col;
+            for (int r = col + 1; r < M; r++) {
+                if (Math.abs(inv[r * w + col]) > Math.abs(inv[pivot * w + col])) pivot = r;
+            }
+            double pv = inv[pivot * w + col];
+            if (Math.abs(pv) < 1e-12) return false;
+            if (pivot != col) {
+                for (int c = 0; c < w; c++) {
+                    double t = inv[col * w + c];
+                    inv[col * w + c] = inv[pivot * w + c];
+                    inv[pivot * w + c] = t;
+                }
+            }
+            for (int c = 0; c < w; c++) inv[col * w + c] /= pv;
+            for (int r = 0; r < M; r++) {
+                if (r == col) continue;
+                double f = inv[r * w + col];
+                if (f == 0) continue;
+                for (int c = 0; c < w; c++) inv[r * w + c] -= f * inv[col * w + c];
+            }
+        }
+        for (int r = 0; r < M; r++) {
+            for (int c = 0; c < M; c++) dst[r * M + c] = inv[r * w + M + c];
+        }
+        return true;
+    }
+
+    public float centerX() { return (float) x[0]; }
+
+    public float centerY() { return (float) x[1]; }
+
+    // pixels per second
+    public float velocityX() { return (float) x[4]; }
+
+    public float velocityY() { return (float) x[5]; }
+
+    public float x1() { return (float) (x[0] - x[2] / 2); }
+
+    public float y1() { return (float) (x[1] - x[3] / 2); }
+
+    public float x2() { return (float) (x[0] + x[2] / 2); }
+
+    public float y2() { return (float) (x[1] + x[3] / 2); }
+}
@@ -0,0 +1,100 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HdrHistogram-style log-linear buckets: values below
+ * {@code 2^(SUB_BITS+1)} nanoseconds get a bucket each, and every power of two above that is
+ * split into {@code 2^SUB_BITS} equal buckets, so any recorded value is reported within
+ * about 3% of its true size. {@link #record} is a few atomic adds and allocates nothing; any
+ * number of threads may record while another reads a {@link Snapshot}.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /** Values are clamped here, about 18 minutes. */
+    public static final long MAX_NANOS = 1L << 40;
+    private static final int BUCKETS = index(MAX_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long v = Math.max(0, Math.min(nanos, MAX_NANOS));
+        counts.incrementAndGet(index(v));
+        total.incrementAndGet();
+        sum.addAndGet(v);
+        long m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v)) { }
+    }
+
+    public long count() { return total.get(); }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // Bucket of v: exact below 2^(SUB_BITS+1), then SUB_COUNT buckets per power of two
+    static int index(long v) {
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        if (shift <= 0) return (int) v;
+        return (shift << SUB_BITS) + (int) (v >>> shift);
+    }
+
+    // Largest value that lands in bucket i
+    static long highestEquivalent(int i) {
+        int shift = (i >> SUB_BITS) - 1;
+        if (shift <= 0) return i;
+        long lowest = (long) (i - (shift << SUB_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Copies the counters. Taken while other threads record, it may be off by the few
+     * values in flight, which does not matter for reporting.
+     */
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += c[i] = counts.get(i);
+        return new Snapshot(c, n, sum.get(), max.get());
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() { return count; }
+
+        public long max() { return max; }
+
+        public long mean() { return count == 0 ? 0 : sum / count; }
+
+        // Value at quantile q in [0, 1], as the top of its bucket and never above the max seen
+        public long percentile(double q) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(highestEquivalent(i), max);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.irhammuch.android.facerecognition;
+
+/**
+ * Resize ratio and padding used to fit a source frame, or a crop of it, into the square
+ * model input. Recomputed only when the source dimensions change; the crop offset only
+ * shifts boxes on the way back.
+ */
+public final class Letterbox {
+    private final int inputSize;
+
+    private int srcWidth = -1;
+    private int srcHeight = -1;
+    private float ratio;
+    private int padW, padH;
+    private int scaledW, scaledH;
+    private int offsetX, offsetY;
+    private int frameWidth = -1, frameHeight = -1;
+
+    public Letterbox(int inputSize) {
+        this.inputSize = inputSize;
+    }
+
+    // Compute resize ratio & pad for original dims; returns true if the geometry changed
+    public boolean update(int origW, int origH) {
+        return update(origW, origH, 0, 0, origW, origH);
+    }
+
+    // Same for the crop (cropX, cropY, origW, origH) of a frameW x frameH frame; returns true
+    // if the resize geometry changed, not when the crop merely moved
+    public boolean update(int frameW, int frameH, int cropX, int cropY, int origW, int origH) {
+        frameWidth = frameW;
+        frameHeight = frameH;
+        offsetX = cropX;
+        offsetY = cropY;
+        if (origW == srcWidth && origH == srcHeight) return false;
+        srcWidth = origW;
+        srcHeight = origH;
+        ratio = Math.min((float) inputSize / origW, (float) inputSize / origH);
+        scaledW = Math.round(origW * ratio);
+        scaledH = Math.round(origH * ratio);
+        padW = (inputSize - scaledW) / 2;
+        padH = (inputSize - scaledH) / 2;
+        return true;
+    }
+
+    public int inputSize() { return inputSize; }
+    public int srcWidth() { return srcWidth; }
+    public int srcHeight() { return srcHeight; }
+    public float ratio() { return ratio; }
+    public int padW() { return padW; }
+    public int padH() { return padH; }
+    public int scaledW() { return scaledW; }
+    public int scaledH() { return scaledH; }
+    public int offsetX() { return offsetX; }
+    public int offsetY() { return offsetY; }
+    public int frameWidth() { return frameWidth; }
+    public int frameHeight() { return frameHeight; }
+}
@@ -1,13 +1,12 @@
 package com.irhammuch.android.facerecognition;
 
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
 import android.util.Log;
 import android.widget.ImageView;
 import android.widget.MediaController;
@@ -17,57 +16,209 @@ import android.widget.VideoView;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
-import org.tensorflow.lite.DataType;
-import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.support.common.FileUtil;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
-import java.util.ArrayList;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
 
-    // TFLite interpreter
-    private Interpreter tflite;
+    // TFLite interpreters behind one engine; built on a startup thread
+    private volatile InferenceEngine engine;
 
     // UI
     private ImageView resultView;
     private VideoView videoView;
-    private Handler handler = new Handler();
-
-    // Video frame processing
-    private MediaMetadataRetriever retriever;
-    private int currentFramePosition = 0;
-    private final int frameInterval = 100; // ms
-    private boolean isProcessing = false;
-    private boolean boxDetected = false;
+    private GraphicOverlay overlay; // tracked boxes over the playing video
+    private static final String[] CLASS_LABELS = {"ball"};
+
+    // Rendering: frames are drawn into two reused bitmaps; the UI thread shows one while the
+    // render thread fills the other (see FrameBitmaps)
+    private static final float BOX_STROKE = 5f;
+    private final FrameBitmaps frameBitmaps = new FrameBitmaps();
+    private final Paint boxPaint = new Paint();
+    private final Runnable showFrame = () -> resultView.setImageBitmap(frameBitmaps.take());
+
+    // Video frame processing: decode -> preprocess -> infer -> render on separate threads
+    private String videoPath;
+    private volatile FrameSource frameSource;
+    private volatile FramePipeline<FrameTask> pipeline;
+    private int currentFramePosition = 0; // decode thread only
+    private volatile boolean isProcessing = false;
+    private volatile boolean boxDetected = false;
+
+    // Backpressure in front of each stage
+    private static final BackpressurePolicy PREPROCESS_POLICY = BackpressurePolicy.BLOCK;
+    private static final BackpressurePolicy INFER_POLICY      = BackpressurePolicy.BLOCK;
+    private static final BackpressurePolicy RENDER_POLICY     = BackpressurePolicy.LATEST_ONLY;
+    private static final int QUEUE_CAPACITY = 2;
+
+    // Adaptive sampling over the whole clip: frame spacing follows how fast the slowest stage
+    // runs and how fast the ball moves (see AdaptiveScheduler)
+    private static final long MIN_INTERVAL_US     = 33_000;  // ~30 fps while a ball moves fast
+    private static final long MAX_INTERVAL_US     = 500_000; // 2 fps in static scenes
+    private static final long INITIAL_INTERVAL_US = 100_000;
+    private static final long LATENCY_BUDGET_MS   = 250;     // decode to render
+    private static final float STAGE_UTILIZATION  = 0.8f;
+    private static final long MOTION_HALF_LIFE_MS = 1500;
+    private static final float FAST_BALL_WIDTHS_PER_S = 0.5f; // ball speed for full rate
+    private static final int STAGE_DECODE = 0, STAGE_PREPROCESS = 1, STAGE_INFER = 2, STAGE_RENDER = 3;
+    private final AdaptiveScheduler scheduler = new AdaptiveScheduler(AdaptiveScheduler.Clock.SYSTEM,
+            4, MIN_INTERVAL_US, MAX_INTERVAL_US, TimeUnit.MILLISECONDS.toNanos(LATENCY_BUDGET_MS),
+            STAGE_UTILIZATION, TimeUnit.MILLISECONDS.toNanos(MOTION_HALF_LIFE_MS));
+
+    // Motion gate: frames whose sampled luma barely changed reuse the previous boxes
+    private static final int GATE_SAMPLE_STEP = 8;
+    private static final int GATE_BLOCK       = 32;
+    private static final int GATE_BLOCK_DELTA = 6;   // mean luma levels
+    private static final int GATE_MIN_CHANGED = 1;   // blocks
+    private static final long GATE_MAX_SKIP_US = 1_000_000; // stream time results may be reused
+    private static final float GATE_FULL_MOTION = 0.25f; // changed share that counts as max motion
+    private final MotionGate motionGate = new MotionGate(GATE_SAMPLE_STEP, GATE_BLOCK,
+            GATE_BLOCK_DELTA, GATE_MIN_CHANGED, GATE_MAX_SKIP_US); // preprocess thread only
+    // A ball can be smaller than the gate's sample step, so frames skip the gate while one is
+    // tracked; set by the inference thread
+    private volatile boolean ballTracked = false;
 
     // Assets
-    private static final String WEIGHT_PATH    = "best_stg1_float32.tflite";
+    private static final ModelVariant MODEL_VARIANT = ModelVariant.FLOAT32;
     private static final String VIDEO_FILENAME = "ball_video.mp4";
 
     // Limits
-    private static final int MAX_FRAMES    = 200;
     private static final float CONF_THRESH = 0.5f;
     private static final float IOU_THRESH  = 0.45f;
-    private static final int DET_SIZE      = 640;  // model input size
-
-    // Pre-post compute
-    private float ratio;
-    private int padW, padH;
-
-    // For flat output format
-    private static final int BOX_ELEMENTS = 6; // Each box has x, y, w, h, confidence, class_id
+    private static final int DET_SIZE      = 640;  // the model's own input size
+    private static final int MAX_DETECTIONS = 100;
+    private static final int TOP_K = 300;  // best candidates handed to NMS
+
+    // Tracking: the detector runs every DETECT_EVERY frames, or sooner when a track fades;
+    // frames in between are predicted by the tracker. Boxes down to TRACK_LOW_THRESH are
+    // decoded so the tracker can extend tracks through blur.
+    private static final int DETECT_EVERY = 3;
+    private static final float TRACK_LOW_THRESH = 0.1f;
+    private static final int TRACK_MAX_LOST = 30;
+    private static final float TRACK_MIN_CONFIDENCE = 0.3f;
+    private static final boolean COORDS_NORMALIZED = true; // TFLite exports emit 0-1 boxes
+
+    // Detector cascade: a small presence model screens full-frame searches and the detector
+    // only runs when it reports a ball, on a native-resolution window around the heatmap
+    // peak when the model has one. Tracked-window searches skip the screen.
+    private static final boolean CASCADE = false;
+    private static final String PRESENCE_ASSET = "ball_presence_192.tflite";
+    private static final float PRESENCE_THRESH = 0.3f;
+    private static final boolean PRESENCE_SEED_CROP = true;
+    private volatile InferenceEngine presenceEngine;
+    private PresenceGate presenceGate; // preprocess thread only, once built
+
+    // Sliced inference for high-resolution clips: full-frame searches run as a grid of
+    // overlapping tiles plus one global pass, in parallel over the interpreter pool. ROI
+    // windows are already at native resolution and stay single-pass.
+    private static final boolean TILED = false;
+    private static final int TILE_COLUMNS = 3;
+    private static final int TILE_ROWS    = 2;
+    private static final float TILE_OVERLAP = 0.2f; // share of a tile seen by its neighbour
+    private TiledDetector tiledDetector;  // null unless TILED
+    private ExecutorService tileExecutor;
+
+    // Detector input resolution, set at launch with the input_size extra (adb shell am start
+    // -n <package>/.MainActivity --ei input_size 416): one of INPUT_SIZES, or INPUT_SIZE_AUTO
+    // to step between them so a detector pass fits the frame budget. The engine's input
+    // tensors are resized to it, and slots, detectors and ROI windows follow inputSize.
+    private static final String EXTRA_INPUT_SIZE = "input_size";
+    private static final int INPUT_SIZE_AUTO = 0;
+    private static final int[] INPUT_SIZES = {320, 416, 512, 640};
+    private static final float RESOLUTION_HEADROOM = 0.6f; // budget share the next size up must fit
+    private static final int RESOLUTION_WINDOW = 15;       // detector passes per decision
+    private int requestedInputSize = DET_SIZE;
+    private ResolutionPolicy resolutionPolicy;  // inference thread, once loaded
+    private volatile int inputSize = DET_SIZE;  // changed by the inference thread between runs
+
+    // Inference engine sizing. Live playback infers one frame at a time, so one instance is
+    // enough, or one per tile when tiling; offline runs can raise INTERPRETERS to keep
+    // several cores busy.
+    private static final int INTERPRETERS = TILED ? TILE_COLUMNS * TILE_ROWS + 1 : 1;
+    private static final int MAX_BATCH = 4; // only used if the model has a dynamic batch
+    // Startup micro-benchmark per XNNPACK/thread-count candidate
+    private static final int TUNE_WARMUP_RUNS = 2;
+    private static final int TUNE_TIMED_RUNS  = 3;
+    // Throwaway runs on the chosen engine, so the first frame does not pay for tensor
+    // allocation and kernel preparation
+    private static final int WARMUP_RUNS = 2;
+
+    // Startup: model load + warm-up and video staging run in parallel off the UI thread; the
+    // player is prepared as soon as the video is staged and processing starts once both the
+    // player and the model are ready. Phase timings are logged with the first rendered frame.
+    private final ExecutorService startup = Executors.newFixedThreadPool(2);
+    private final StartupTrace startupTrace = new StartupTrace(AdaptiveScheduler.Clock.SYSTEM);
+    private volatile boolean modelReady = false;
+    private volatile boolean firstFrameShown = false;
+    private volatile boolean destroyed = false;
+    private static final int COPY_BUFFER = 64 * 1024; // for compressed assets only
+
+    // Metrics: stage histograms and counters, dumped every METRICS_REPORT_S and at the end of
+    // a run. Per-frame debug logging is compiled out unless VERBOSE_FRAMES is set, and even
+    // then only runs when the tag is loggable at VERBOSE (adb shell setprop log.tag.<TAG> V).
+    private static final long METRICS_REPORT_S = 5;
+    private static final boolean VERBOSE_FRAMES = false;
+    private final PipelineMetrics metrics = new PipelineMetrics(TimeUnit.SECONDS.toNanos(METRICS_REPORT_S));
+    private boolean verboseFrames; // sampled when a run starts
+
+    // Detector results kept on disk per clip and model build: frames processed in an earlier
+    // run, or before the last onPause, skip pixel conversion and inference when seen again
+    private static final boolean CACHE_ENABLED = true;
+    private static final long CACHE_BUDGET_BYTES = 64L << 20;
+    private static final String CACHE_DIR = "detections";
+    private volatile DetectionCache.Store cacheStore;
+
+    // Record raw output tensors as JVM benchmark fixtures (see TensorDump)
+    private static final boolean DUMP_OUTPUT_TENSORS = false;
+    private static final int MAX_TENSOR_DUMPS = 20;
+    private int tensorDumps = 0;
+
+    // Pre-post compute, reused across frames. Input tensors are pooled: one held by the
+    // preprocess thread, QUEUE_CAPACITY waiting, one being consumed by the interpreter.
+    private static final int INPUT_SLOTS = QUEUE_CAPACITY + 2;
+    private static final int TASK_POOL   = 3 * QUEUE_CAPACITY + 4;
+    private final RingBuffer<FramePreprocessor> inputSlots = new RingBuffer<>(INPUT_SLOTS);
+    private final RingBuffer<FrameTask> taskPool = new RingBuffer<>(TASK_POOL);
+    // Decoded frame buffers; the decoder waits when all of them are in flight
+    private static final int FRAME_POOL = 4;
+
+    // Inference and post-processing, layout fixed from the output shape at load time
+    private Detector detector;
+    private Detections detected;
+
+    // Tracker state lives on the inference thread; the preprocess thread only reads the hint
+    private final BallTracker tracker = new BallTracker(CONF_THRESH, TRACK_LOW_THRESH,
+            TRACK_MAX_LOST, DETECT_EVERY, TRACK_MIN_CONFIDENCE);
+    private volatile boolean detectHint = true;
+
+    // Region of interest: once a ball is tracked, the detector sees a window around it at
+    // native resolution instead of the whole frame shrunk to the input size
+    private static final boolean ROI_ENABLED = true;
+    private static final float ROI_MARGIN = 2f;         // box sides of context around a ball
+    private static final int ROI_FULL_FRAME_EVERY = 10; // windowed runs between full searches
+    private static final int ROI_LEAD_STEPS = DETECT_EVERY; // sample steps a window plans ahead
+    private final RoiPlanner roiPlanner =
+            new RoiPlanner(DET_SIZE, ROI_MARGIN, ROI_FULL_FRAME_EVERY);
+    private volatile long roiHint = RoiPlanner.FULL_FRAME;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -76,35 +227,153 @@ public class MainActivity extends AppCompatActivity {
 
         resultView = findViewById(R.id.imageView);
         videoView  = findViewById(R.id.videoView);
+        overlay    = findViewById(R.id.graphicOverlay);
+        overlay.setLabels(CLASS_LABELS);
+        // the pipeline runs ahead of playback: show each frame's boxes when the video gets there
+        overlay.setPlaybackClock(() -> TimeUnit.MILLISECONDS.toMicros(videoView.getCurrentPosition()));
+        boxPaint.setColor(Color.RED);
+        boxPaint.setStyle(Paint.Style.STROKE);
+        boxPaint.setStrokeWidth(BOX_STROKE);
+
+        for (int i = 0; i < TASK_POOL; i++) taskPool.offer(new FrameTask(MAX_DETECTIONS));
+        requestedInputSize = getIntent().getIntExtra(EXTRA_INPUT_SIZE, DET_SIZE);
+
+        // load TFLite, pick the fastest CPU configuration and warm it up
+        startup.execute(() -> {
+            try {
+                loadModel();
+            } catch (Exception e) {
+                startupFailed("Error loading model", e);
+                return;
+            }
+            runOnUiThread(() -> {
+                modelReady = true;
+                if (videoPath != null) startVideoProcessing();
+            });
+        });
+        // stage the clip where the player and decoder can open it, then prepare the player
+        startup.execute(() -> {
+            String path = copyVideoFromAssets();
+            startupTrace.mark("video staged");
+            if (CACHE_ENABLED && path != null) {
+                openDetectionCache(path);
+                startupTrace.mark("cache opened");
+            }
+            runOnUiThread(() -> setupVideoPlayer(path));
+        });
+        startup.shutdown(); // threads exit once both jobs are done
+    }
+
+    private void startupFailed(String what, Exception e) {
+        Log.e(TAG, what, e);
+        runOnUiThread(() -> Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_LONG).show());
+    }
 
+    // Load model from assets (startup thread)
+    private void loadModel() throws IOException {
+        MappedByteBuffer modelBuffer = FileUtil.loadMappedFile(this, MODEL_VARIANT.asset);
+        startupTrace.mark("model mapped");
+        // XNNPACK only if no tensor is INT64; thread count from a short warm-up benchmark
+        InferenceEngine built = new EngineTuner(TUNE_WARMUP_RUNS, TUNE_TIMED_RUNS)
+                .build(modelBuffer, INTERPRETERS, MAX_BATCH);
+        startupTrace.mark("engine tuned");
+        // resize first, so the warm-up prepares the shape frames will use
+        ResolutionPolicy policy = resolutionPolicy(built);
+        long firstRun;
         try {
-            loadModel();         // load TFLite (with XNNPACK disabled)
-            setupVideoPlayer();  // prepare video + start processing
+            firstRun = built.warmUp(WARMUP_RUNS);
         } catch (Exception e) {
-            Log.e(TAG, "Error in onCreate", e);
-            Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            built.close();
+            throw new IOException("Warm-up failed", e);
+        }
+        startupTrace.mark("warm-up");
+        if (destroyed) {
+            built.close();
+            return;
+        }
+        engine = built;
+        resolutionPolicy = policy;
+        Log.d(TAG, String.format(Locale.US, "Model loaded successfully: %s, first run %.1f ms, input %s",
+                engine, firstRun / 1e6, policy));
+
+        // Input tensors in the model's own element type and quantization: bytes for
+        // full-integer models
+        FramePreprocessor.InputFormat format = Detector.inputFormat(engine);
+        for (int i = 0; i < INPUT_SLOTS; i++) {
+            inputSlots.offer(Detector.preprocessor(engine, policy.current()));
+        }
+        Log.d(TAG, MODEL_VARIANT + ": input " + format + ", output " + engine.outputType());
+
+        if (TILED) tileExecutor = Executors.newFixedThreadPool(INTERPRETERS);
+        applyInputSize(policy.current());
+        detected = new Detections(MAX_DETECTIONS);
+        Log.d(TAG, "Output layout: " + detector.decoder().layout());
+        if (CASCADE) {
+            MappedByteBuffer presenceBuffer = FileUtil.loadMappedFile(this, PRESENCE_ASSET);
+            presenceEngine = new EngineTuner(TUNE_WARMUP_RUNS, TUNE_TIMED_RUNS).build(presenceBuffer, 1, 1);
+            try {
+                presenceEngine.warmUp(WARMUP_RUNS);
+            } catch (Exception e) {
+                throw new IOException("Presence model warm-up failed", e);
+            }
+            presenceGate = new PresenceGate(presenceEngine, PRESENCE_THRESH);
+            Log.d(TAG, "Cascade: " + presenceGate + " on " + presenceEngine);
         }
     }
 
-    // Load model from assets
-    private void loadModel() throws IOException {
-        MappedByteBuffer modelBuffer = FileUtil.loadMappedFile(this, WEIGHT_PATH);
-        Interpreter.Options options = new Interpreter.Options();
-        // disable XNNPACK to support INT64 tensors
-        options.setUseXNNPACK(false);
-        tflite = new Interpreter(modelBuffer, options);
-        Log.d(TAG, "Model loaded successfully (XNNPACK disabled)");
-
-        // Debug - Print model input and output shapes
-        int[] inputShape = tflite.getInputTensor(0).shape();
-        int[] outputShape = tflite.getOutputTensor(0).shape();
-        Log.d(TAG, "Model input shape: " + Arrays.toString(inputShape));
-        Log.d(TAG, "Model output shape: " + Arrays.toString(outputShape));
+    // Input size policy for the launch setting, with the engine resized to its first size. A
+    // graph that cannot take that size stays at the model's own (startup thread).
+    private ResolutionPolicy resolutionPolicy(InferenceEngine engine) {
+        int modelSize = engine.inputShape()[1];
+        ResolutionPolicy policy;
+        if (requestedInputSize == INPUT_SIZE_AUTO) {
+            long budget = (long) (TimeUnit.MICROSECONDS.toNanos(MIN_INTERVAL_US) * STAGE_UTILIZATION);
+            policy = new ResolutionPolicy(INPUT_SIZES, DET_SIZE, budget, RESOLUTION_HEADROOM, RESOLUTION_WINDOW);
+        } else if (Arrays.binarySearch(INPUT_SIZES, requestedInputSize) >= 0) {
+            policy = ResolutionPolicy.fixed(requestedInputSize);
+        } else {
+            Log.w(TAG, "Unsupported input size " + requestedInputSize + ", using " + modelSize);
+            return ResolutionPolicy.fixed(modelSize);
+        }
+        int size = policy.current();
+        if (size != modelSize && !engine.resizeInput(size, size)) {
+            Log.w(TAG, "Model input is fixed at " + modelSize + ", ignoring input size " + size);
+            return ResolutionPolicy.fixed(modelSize);
+        }
+        return policy;
+    }
+
+    // Detector, tiles and ROI minimum for an input size the engine has already been resized
+    // to. No run may be in flight: called at load and by the inference thread between frames.
+    private void applyInputSize(int size) {
+        detector = new Detector(engine, size, COORDS_NORMALIZED, TRACK_LOW_THRESH, TOP_K,
+                IOU_THRESH, MAX_DETECTIONS, metrics);
+        if (TILED) {
+            tiledDetector = new TiledDetector(engine, () -> new Detector(engine, size,
+                    COORDS_NORMALIZED, TRACK_LOW_THRESH, TOP_K, IOU_THRESH, MAX_DETECTIONS, metrics),
+                    TILE_COLUMNS, TILE_ROWS, TILE_OVERLAP, true, MAX_DETECTIONS, tileExecutor, metrics);
+        }
+        roiPlanner.setMinWindow(size);
+        inputSize = size;
+    }
+
+    // Feed one detector pass to the resolution policy and switch size when it asks to
+    // (inference thread, after the pass, so nothing is running on the engine)
+    private void adaptInputSize(long nanos) {
+        int size = resolutionPolicy.record(nanos);
+        if (size == inputSize) return;
+        if (!engine.resizeInput(size, size)) {
+            Log.w(TAG, "Cannot resize model input to " + size + ", staying at " + inputSize);
+            resolutionPolicy = ResolutionPolicy.fixed(inputSize);
+            return;
+        }
+        applyInputSize(size);
+        Log.i(TAG, "Input size now " + size + ": " + resolutionPolicy);
     }
 
-    // Set up VideoView and start frame-by-frame processing
-    private void setupVideoPlayer() {
-        String videoPath = copyVideoFromAssets();
+    // Set up VideoView; frame-by-frame processing starts once it and the model are ready
+    private void setupVideoPlayer(String videoPath) {
+        if (destroyed) return;
         if (videoPath == null) {
             Toast.makeText(this, "Cannot load video", Toast.LENGTH_LONG).show();
             return;
@@ -116,399 +385,502 @@ public class MainActivity extends AppCompatActivity {
         videoView.setVideoURI(Uri.parse(videoPath));
         videoView.setOnPreparedListener(mp -> {
             Log.d(TAG, "Video prepared");
-            setupVideoRetriever(videoPath);
-            startVideoProcessing();
+            startupTrace.mark("player prepared");
+            this.videoPath = videoPath;
+            if (modelReady) startVideoProcessing();
         });
         videoView.setOnCompletionListener(mp -> Log.d(TAG, "Video playback completed"));
     }
 
-    // Copy video.mp4 from assets to external files dir
+    // Store for this clip's content and everything that shapes its detections (startup thread).
+    // Windowed runs store what the detector saw in the window, so the ROI and cascade settings
+    // that pick the window are part of the key as well.
+    private void openDetectionCache(String videoPath) {
+        try (AssetFileDescriptor model = getAssets().openFd(MODEL_VARIANT.asset)) {
+            String version = DetectionCache.versionKey(MODEL_VARIANT.asset, model.getLength(),
+                    requestedInputSize == INPUT_SIZE_AUTO ? "auto" : requestedInputSize,
+                    COORDS_NORMALIZED, TRACK_LOW_THRESH, TOP_K, IOU_THRESH, MAX_DETECTIONS,
+                    TILED ? TILE_COLUMNS + "x" + TILE_ROWS + "@" + TILE_OVERLAP : "whole",
+                    ROI_ENABLED ? "roi " + ROI_MARGIN + "/" + ROI_FULL_FRAME_EVERY + "/" + DETECT_EVERY : "no roi",
+                    CASCADE ? PRESENCE_ASSET + "@" + PRESENCE_THRESH + (PRESENCE_SEED_CROP ? " seeded" : "") : "no cascade");
+            DetectionCache cache = new DetectionCache(new File(getExternalFilesDir(null), CACHE_DIR),
+                    CACHE_BUDGET_BYTES, MAX_DETECTIONS);
+            DetectionCache.Store store = cache.open(DetectionCache.contentKey(new File(videoPath)), version);
+            if (destroyed) {
+                store.close();
+                return;
+            }
+            cacheStore = store;
+            Log.d(TAG, "Detection cache: " + store.size() + " frames");
+        } catch (IOException e) {
+            Log.w(TAG, "Detection cache unavailable", e); // runs without it
+        }
+    }
+
+    // Copy the video from assets to the external files dir, skipped when a copy of the same
+    // size is already there. Written to a temporary name and renamed, so an interrupted copy
+    // is never mistaken for a complete one. (startup thread)
     private String copyVideoFromAssets() {
         File out = new File(getExternalFilesDir(null), VIDEO_FILENAME);
-        if (out.exists()) return out.getAbsolutePath();
-        try (InputStream in = getAssets().open(VIDEO_FILENAME);
-             OutputStream os = new FileOutputStream(out)) {
-            byte[] buf = new byte[1024];
-            int r;
-            while ((r = in.read(buf)) != -1) os.write(buf, 0, r);
+        File part = new File(out.getPath() + ".part");
+        try {
+            long length;
+            try (AssetFileDescriptor afd = getAssets().openFd(VIDEO_FILENAME)) {
+                length = afd.getLength();
+                if (out.length() == length) return out.getAbsolutePath();
+                transferAsset(afd, part);
+            } catch (FileNotFoundException compressed) {
+                // openFd only works for assets stored uncompressed in the APK
+                if (out.exists()) return out.getAbsolutePath();
+                length = streamAsset(part);
+            }
+            if (part.length() != length || !part.renameTo(out)) {
+                throw new IOException("Incomplete copy of " + VIDEO_FILENAME);
+            }
             return out.getAbsolutePath();
         } catch (IOException e) {
             Log.e(TAG, "copyVideoFromAssets failed", e);
+            part.delete();
             return null;
         }
     }
 
-    // Init retriever to pull frames
-    private void setupVideoRetriever(String path) {
-        retriever = new MediaMetadataRetriever();
-        retriever.setDataSource(path);
-        Log.d(TAG, "Retriever ready");
+    // Channel-to-channel copy of the asset's byte range out of the APK, without passing the
+    // bytes through a Java heap buffer
+    private static void transferAsset(AssetFileDescriptor afd, File to) throws IOException {
+        try (FileChannel in = afd.createInputStream().getChannel();
+             FileChannel os = new FileOutputStream(to).getChannel()) {
+            long start = afd.getStartOffset(), length = afd.getLength(), done = 0;
+            while (done < length) {
+                long n = in.transferTo(start + done, length - done, os);
+                if (n <= 0) throw new IOException("Asset truncated at " + done + " of " + length);
+                done += n;
+            }
+        }
+    }
+
+    private long streamAsset(File to) throws IOException {
+        try (InputStream in = getAssets().open(VIDEO_FILENAME);
+             OutputStream os = new FileOutputStream(to)) {
+            byte[] buf = new byte[COPY_BUFFER];
+            long total = 0;
+            int r;
+            while ((r = in.read(buf)) != -1) {
+                os.write(buf, 0, r);
+                total += r;
+            }
+            return total;
+        }
     }
 
     private void startVideoProcessing() {
-        if (isProcessing || retriever == null) return;
+        if (isProcessing || videoPath == null || !modelReady) return;
+        try {
+            frameSource = new MediaCodecFrameSource(videoPath, INITIAL_INTERVAL_US, FRAME_POOL);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot open video decoder", e);
+            return;
+        }
+        Log.d(TAG, "Decoder ready: " + frameSource.width() + "x" + frameSource.height());
+        DetectionCache.Store store = cacheStore;
+        if (store != null) frameSource.setPixelFilter(timeUs -> !store.contains(timeUs));
         isProcessing = true;
         currentFramePosition = 0;
-        processNextFrame();
+        tracker.reset();
+        detectHint = true;
+        roiPlanner.reset();
+        roiHint = RoiPlanner.FULL_FRAME;
+        scheduler.reset();
+        motionGate.reset();
+        ballTracked = false;
+        overlay.clear(); // the previous run's threads have stopped; safe to produce from here
+        metrics.reset(scheduler.now());
+        verboseFrames = VERBOSE_FRAMES && Log.isLoggable(TAG, Log.VERBOSE);
+        pipeline = new FramePipeline.Builder<FrameTask>("frames", this::decodeNextFrame)
+                .stage("preprocess", QUEUE_CAPACITY, PREPROCESS_POLICY,
+                        timed(STAGE_PREPROCESS, this::preprocessFrame))
+                .stage("infer", QUEUE_CAPACITY, INFER_POLICY, timed(STAGE_INFER, this::inferFrame))
+                .stage("render", QUEUE_CAPACITY, RENDER_POLICY, timed(STAGE_RENDER, this::renderFrame))
+                .listener(new FramePipeline.Listener<FrameTask>() {
+                    @Override
+                    public void onCompleted(FrameTask task) { recycle(task); }
+
+                    @Override
+                    public void onDropped(FrameTask task) {
+                        metrics.increment(PipelineMetrics.Counter.DROPPED);
+                        recycle(task);
+                    }
+
+                    @Override
+                    public void onError(String stage, FrameTask task, Exception e) {
+                        if (e instanceof InterruptedIOException) return; // source cancelled by a stop
+                        metrics.increment(PipelineMetrics.Counter.ERRORS);
+                        Log.e(TAG, "Pipeline error in " + stage, e);
+                        runOnUiThread(() -> Toast.makeText(MainActivity.this,
+                                "Inference error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+                    }
+
+                    // every pipeline thread is gone, so nothing uses the decoder any more
+                    @Override
+                    public void onFinished() {
+                        closeFrameSource();
+                        isProcessing = false;
+                        Log.i(TAG, "Run finished\n" + metrics.format());
+                    }
+                })
+                .build();
+        pipeline.start();
     }
 
-    private void processNextFrame() {
-        if (!isProcessing || currentFramePosition >= MAX_FRAMES) {
-            isProcessing = false;
-            return;
+    // Stop the pipeline and wait for its threads, so the interpreter and decoder are idle
+    private void stopVideoProcessing() {
+        if (pipeline == null) return;
+        pipeline.stop();
+        // a decode thread waiting for a free frame would otherwise hold up the stop
+        FrameSource source = frameSource;
+        if (source != null) source.cancel();
+        try {
+            if (!pipeline.awaitTermination(2, TimeUnit.SECONDS)) {
+                // onFinished closes the decoder and allows a new run once the threads are gone
+                Log.w(TAG, "Pipeline did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        Bitmap frame = retriever.getFrameAtTime(
-                currentFramePosition * frameInterval * 1000L,
-                MediaMetadataRetriever.OPTION_CLOSEST
-        );
-        if (frame != null) {
-            runInference(frame);
-            currentFramePosition++;
-            handler.postDelayed(this::processNextFrame, frameInterval);
-        } else {
-            Log.d(TAG, "No more frames");
-            isProcessing = false;
+        pipeline = null;
+    }
+
+    private void closeFrameSource() {
+        if (frameSource == null) return;
+        try {
+            frameSource.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing frame source", e);
         }
+        frameSource = null;
+    }
+
+    // Report a stage's latency to the scheduler
+    private FramePipeline.Stage<FrameTask> timed(int stage, FramePipeline.Stage<FrameTask> body) {
+        return task -> {
+            long t0 = scheduler.now();
+            body.process(task);
+            scheduler.recordStage(stage, scheduler.now() - t0);
+        };
     }
 
-    // Compute resize ratio & pad for original dims
-    private void calculateResizeParams(int origW, int origH) {
-        ratio = Math.min((float) DET_SIZE / origW, (float) DET_SIZE / origH);
-        int rw = Math.round(origW * ratio);
-        int rh = Math.round(origH * ratio);
-        padW = (DET_SIZE - rw) / 2;
-        padH = (DET_SIZE - rh) / 2;
+    // Decode stage (pipeline source): decode forward to the next sampled frame, null at the
+    // end of the clip. The spacing is re-planned for every frame.
+    private FrameTask decodeNextFrame() throws IOException {
+        long t0 = scheduler.now();
+        frameSource.setSampleIntervalUs(scheduler.nextIntervalUs());
+        VideoFrame frame = frameSource.next();
+        if (frame == null) {
+            Log.d(TAG, "No more frames");
+            return null;
+        }
+        FrameTask task = taskPool.poll();
+        if (task == null) task = new FrameTask(MAX_DETECTIONS);
+        task.index = currentFramePosition++;
+        task.timeUs = frame.timeUs;
+        task.video = frame;
+        task.startNanos = t0;
+        task.cached = !frame.hasPixels; // only the cache's filter skips pixels
+        long elapsed = scheduler.now() - t0;
+        scheduler.recordStage(STAGE_DECODE, elapsed);
+        metrics.record(PipelineMetrics.Stage.DECODE, elapsed);
+        metrics.increment(PipelineMetrics.Counter.FRAMES);
+        return task;
     }
 
-    // Resize + pad to square DET_SIZE×DET_SIZE
-    private Bitmap resizeAndPad(Bitmap bmp) {
-        int ow = bmp.getWidth(), oh = bmp.getHeight();
-        calculateResizeParams(ow, oh);
-        int rw = Math.round(ow * ratio), rh = Math.round(oh * ratio);
-        Bitmap resized = Bitmap.createScaledBitmap(bmp, rw, rh, true);
-        Bitmap square  = Bitmap.createBitmap(DET_SIZE, DET_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas c = new Canvas(square);
-        c.drawColor(Color.BLACK);
-        c.drawBitmap(resized, padW, padH, null);
-        return square;
+    // Return a finished or dropped frame's buffers and task to their pools
+    private void recycle(FrameTask task) {
+        if (task.input != null) inputSlots.offer(task.input);
+        FrameSource source = frameSource;
+        if (task.video != null && source != null) source.release(task.video);
+        task.reset();
+        taskPool.offer(task);
     }
 
-    // Intersection-over-Union of two boxes [x1,y1,x2,y2]
-    private float iou(float[] a, float[] b) {
-        float x1 = Math.max(a[0], b[0]), y1 = Math.max(a[1], b[1]);
-        float x2 = Math.min(a[2], b[2]), y2 = Math.min(a[3], b[3]);
-        float w = Math.max(0, x2 - x1), h = Math.max(0, y2 - y1);
-        float inter = w * h;
-        float areaA = (a[2]-a[0])*(a[3]-a[1]);
-        float areaB = (b[2]-b[0])*(b[3]-b[1]);
-        return inter / (areaA + areaB - inter + 1e-6f);
+    private FramePreprocessor acquireInputSlot() {
+        FramePreprocessor slot;
+        while ((slot = inputSlots.poll()) == null) {
+            FramePipeline<FrameTask> p = pipeline;
+            if (p == null || !p.isRunning()) throw new IllegalStateException("Pipeline stopped");
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        // made before the last resolution change: replace it with one of the current size
+        int size = inputSize;
+        if (slot.inputSize() != size) slot = Detector.preprocessor(engine, size);
+        return slot;
     }
 
-    // Non-Maximum Suppression (CPU)
-    private int[] nms(List<float[]> boxes, List<Float> scores) {
-        Integer[] idxs = new Integer[boxes.size()];
-        for (int i = 0; i < idxs.length; i++) idxs[i] = i;
-        Arrays.sort(idxs, (i,j) -> -Float.compare(scores.get(i), scores.get(j)));
-        List<Integer> keep = new ArrayList<>();
-        boolean[] rem = new boolean[boxes.size()];
-        for (int i : idxs) {
-            if (rem[i]) continue;
-            keep.add(i);
-            for (int j : idxs) {
-                if (i == j || rem[j]) continue;
-                if (iou(boxes.get(i), boxes.get(j)) > IOU_THRESH) rem[j] = true;
+    // Preprocess stage: letterbox + normalize into a pooled input tensor, unless the motion
+    // gate finds the frame unchanged or the tracker will predict it. The hint can lag one
+    // frame behind; that only shifts when the detector runs next.
+    private void preprocessFrame(FrameTask task) throws Exception {
+        if (task.cached) return; // no pixels, and the detections are already known
+        VideoFrame frame = task.video;
+        if (!ballTracked) {
+            if (motionGate.isUnchanged(frame.argb, frame.width, frame.height, task.timeUs)) {
+                task.unchanged = true;
+                metrics.increment(PipelineMetrics.Counter.SKIPPED);
+                return;
+            }
+            scheduler.recordMotion(motionGate.changedFraction() / GATE_FULL_MOTION);
+        }
+        if (!detectHint) return;
+        long roi = roiHint;
+        boolean window = roi != RoiPlanner.FULL_FRAME
+                && RoiPlanner.x(roi) + RoiPlanner.width(roi) <= frame.width
+                && RoiPlanner.y(roi) + RoiPlanner.height(roi) <= frame.height;
+        if (presenceGate != null && !window) {
+            long t0 = scheduler.now();
+            boolean present = presenceGate.evaluate(frame.argb, frame.width, frame.height);
+            metrics.record(PipelineMetrics.Stage.PRESENCE, scheduler.now() - t0);
+            if (!present) {
+                task.absent = true;
+                metrics.increment(PipelineMetrics.Counter.ABSENT);
+                return;
+            }
+            task.gated = true;
+            metrics.increment(PipelineMetrics.Counter.PRESENT);
+            long seed = PRESENCE_SEED_CROP
+                    ? presenceGate.seedWindow(inputSize, frame.width, frame.height) : RoiPlanner.FULL_FRAME;
+            if (seed != RoiPlanner.FULL_FRAME) {
+                roi = seed;
+                window = true;
             }
         }
-        return keep.stream().mapToInt(x -> x).toArray();
+        if (tiledDetector != null && !window) {
+            task.tiled = true;
+            return;
+        }
+        FramePreprocessor in = acquireInputSlot();
+        task.input = in;
+        long t0 = scheduler.now();
+        if (window) {
+            in.letterboxNormalize(frame.argb, frame.width, frame.height, RoiPlanner.x(roi),
+                    RoiPlanner.y(roi), RoiPlanner.width(roi), RoiPlanner.height(roi));
+        } else {
+            in.letterboxNormalize(frame.argb, frame.width, frame.height);
+        }
+        // one fused pass, so normalize has no separate time
+        metrics.record(PipelineMetrics.Stage.LETTERBOX, scheduler.now() - t0);
     }
 
-    // Scale coords from DET_SIZE back to original image
-    private void scaleCoords(float[] box, int ow, int oh) {
-        box[0] = (box[0] - padW) / ratio;
-        box[1] = (box[1] - padH) / ratio;
-        box[2] = (box[2] - padW) / ratio;
-        box[3] = (box[3] - padH) / ratio;
-        box[0] = Math.max(0, Math.min(box[0], ow));
-        box[1] = Math.max(0, Math.min(box[1], oh));
-        box[2] = Math.max(0, Math.min(box[2], ow));
-        box[3] = Math.max(0, Math.min(box[3], oh));
+    // Inference stage: detect or predict, then publish the tracked boxes into task.boxes.
+    // Unchanged frames leave the tracker alone and repeat its current boxes.
+    private void inferFrame(FrameTask task) throws Exception {
+        if (task.unchanged) {
+            publishTracks(task);
+            return;
+        }
+        if (task.cached && cacheStore.get(task.timeUs, detected)) {
+            metrics.increment(PipelineMetrics.Counter.CACHED);
+            tracker.update(detected, task.timeUs);
+        } else if (task.tiled) {
+            long t0 = scheduler.now();
+            tiledDetector.detect(task.video.argb, task.video.width, task.video.height, detected);
+            adaptInputSize(scheduler.now() - t0);
+            cacheDetections(task.timeUs);
+            if (task.gated && !detected.isEmpty()) metrics.increment(PipelineMetrics.Counter.CONFIRMED);
+            tracker.update(detected, task.timeUs);
+        } else if (task.input != null && task.input.inputSize() != inputSize) {
+            // letterboxed at the size before the last change: predict it like a skipped frame
+            inputSlots.offer(task.input);
+            task.input = null;
+            tracker.predict(task.timeUs);
+            metrics.increment(PipelineMetrics.Counter.PREDICTED);
+        } else if (task.input != null) {
+            long t0 = scheduler.now();
+            detect(task, detected);
+            adaptInputSize(scheduler.now() - t0);
+            cacheDetections(task.timeUs);
+            if (task.gated && !detected.isEmpty()) metrics.increment(PipelineMetrics.Counter.CONFIRMED);
+            tracker.update(detected, task.timeUs);
+        } else if (task.absent) {
+            // the presence model saw no ball: an observation of nothing, not a prediction
+            detected.clear();
+            tracker.update(detected, task.timeUs);
+        } else {
+            tracker.predict(task.timeUs);
+            metrics.increment(PipelineMetrics.Counter.PREDICTED);
+        }
+        publishTracks(task);
+        reportMotion(task);
+        boolean detectNext = tracker.shouldDetect();
+        if (detectNext && ROI_ENABLED) {
+            // lead in stream time: the tracker's last step is the current sample spacing
+            roiHint = roiPlanner.plan(tracker, task.video.width, task.video.height,
+                    ROI_LEAD_STEPS * tracker.stepUs());
+        }
+        detectHint = detectNext;
     }
 
-    private void runInference(Bitmap frame) {
+    // Append fresh detector output to the cache; without a working cache frames just run again
+    private void cacheDetections(long timeUs) {
+        DetectionCache.Store store = cacheStore;
+        if (store == null) return;
         try {
-            // Preprocess
-            Bitmap inBmp = resizeAndPad(frame);
-            ByteBuffer inBuf = ByteBuffer.allocateDirect(DET_SIZE * DET_SIZE * 3 * 4);
-            inBuf.order(ByteOrder.nativeOrder());
-            int[] pix = new int[DET_SIZE * DET_SIZE];
-            inBmp.getPixels(pix, 0, DET_SIZE, 0, 0, DET_SIZE, DET_SIZE);
-            for (int v : pix) {
-                inBuf.putFloat(((v >> 16) & 0xFF) / 255f);
-                inBuf.putFloat(((v >> 8)  & 0xFF) / 255f);
-                inBuf.putFloat((v        & 0xFF) / 255f);
-            }
-            inBuf.rewind();
-
-            // Get model's expected output shape
-            int[] outShape = tflite.getOutputTensor(0).shape();
-            Log.d(TAG, "Model output shape: " + Arrays.toString(outShape));
+            store.put(timeUs, detected);
+        } catch (IOException e) {
+            Log.w(TAG, "Detection cache write failed", e);
+        }
+    }
 
-            if (outShape.length < 1) {
-                Log.e(TAG, "Invalid output shape: " + Arrays.toString(outShape));
-                return;
-            }
+    // Current tracks into the task for rendering, and queued on the video overlay for their frame time
+    private void publishTracks(FrameTask task) {
+        tracker.write(task.boxes, task.trackIds);
+        ballTracked = !task.boxes.isEmpty();
+        overlay.update(task.boxes, task.trackIds, task.timeUs, task.video.width, task.video.height);
+    }
 
-            // Allocate output buffer with exact byte size needed
-            int byteSize = tflite.getOutputTensor(0).numBytes();
-            Log.d(TAG, "Output byte size: " + byteSize);
+    // Fastest live track in frame widths per second of video, as the scheduler's motion level
+    private void reportMotion(FrameTask task) {
+        float fastest = 0;
+        List<BallTracker.Track> tracks = tracker.tracks();
+        for (int i = 0; i < tracks.size(); i++) {
+            BallTracker.Track t = tracks.get(i);
+            if (t.isLost()) continue;
+            fastest = Math.max(fastest, (float) Math.hypot(t.velocityX(), t.velocityY()));
+        }
+        float widthsPerSecond = fastest / task.video.width; // velocities are in px per second
+        scheduler.recordMotion(widthsPerSecond / FAST_BALL_WIDTHS_PER_S);
+    }
 
-            if (byteSize <= 0) {
-                Log.e(TAG, "Invalid output byte size: " + byteSize);
-                return;
-            }
+    // Run the model, decode, NMS and scale back into out
+    private void detect(FrameTask task, Detections out) throws Exception {
+        FramePreprocessor in = task.input;
+        detector.infer(in);
 
-            // Create output buffer and run inference
-            ByteBuffer outBuf = ByteBuffer.allocateDirect(byteSize)
-                    .order(ByteOrder.nativeOrder());
-            tflite.run(inBuf, outBuf.rewind());
-
-            // Convert output to float array safely
-            outBuf.rewind();
-            int floatCount = byteSize / 4; // Each float is 4 bytes
-            float[] outArr = new float[floatCount];
-
-            // Get all floats from buffer
-            FloatBuffer floatBuffer = outBuf.asFloatBuffer();
-            if (floatBuffer.remaining() < floatCount) {
-                floatCount = floatBuffer.remaining();
-                outArr = new float[floatCount];
-                Log.w(TAG, "Adjusted float count to buffer remaining: " + floatCount);
+        FloatBuffer raw = detector.floatOutput();
+        if (raw != null) {
+            if (DUMP_OUTPUT_TENSORS && tensorDumps < MAX_TENSOR_DUMPS) {
+                dumpOutputTensor(engine.outputShape(), raw);
             }
-            floatBuffer.get(outArr, 0, floatCount);
-
-            // Debug output shape & size
-            Log.d(TAG, "Output shape: " + Arrays.toString(outShape) +
-                    ", Float count: " + outArr.length);
 
             // Log the first few values for debugging
-            StringBuilder valueLog = new StringBuilder("First values: ");
-            for (int i = 0; i < Math.min(10, outArr.length); i++) {
-                valueLog.append(outArr[i]).append(", ");
-            }
-            Log.d(TAG, valueLog.toString());
-
-            // Postprocess: extract boxes & scores
-            List<float[]> boxList = new ArrayList<>();
-            List<Float> scoreList = new ArrayList<>();
-
-            // Handle flat output format [1, 300]
-            handleFlatOutput(outArr, boxList, scoreList, frame.getWidth(), frame.getHeight());
-
-            // NMS + scale back
-            if (!boxList.isEmpty()) {
-                int[] keep = nms(boxList, scoreList);
-                List<float[]> finalBoxes = new ArrayList<>();
-                for (int idx : keep) {
-                    float[] bb = boxList.get(idx);
-                    scaleCoords(bb, frame.getWidth(), frame.getHeight());
-                    finalBoxes.add(bb);
+            if (VERBOSE_FRAMES && verboseFrames) {
+                StringBuilder valueLog = new StringBuilder("First values: ");
+                for (int i = 0; i < Math.min(10, raw.capacity()); i++) {
+                    valueLog.append(raw.get(i)).append(", ");
                 }
-
-                // Draw results
-                Bitmap outBmp = frame.copy(Bitmap.Config.ARGB_8888, true);
-                Canvas canvas = new Canvas(outBmp);
-                Paint paint = new Paint();
-                paint.setColor(Color.RED);
-                paint.setStyle(Paint.Style.STROKE);
-                paint.setStrokeWidth(5f);
-                for (float[] bb : finalBoxes) {
-                    canvas.drawRect(bb[0], bb[1], bb[2], bb[3], paint);
-                }
-                runOnUiThread(() -> resultView.setImageBitmap(outBmp));
-
-                // Play video on first detection
-                if (!finalBoxes.isEmpty() && !boxDetected) {
-                    boxDetected = true;
-                    runOnUiThread(() -> {
-                        videoView.start();
-                        Toast.makeText(this, "Detected, starting video!", Toast.LENGTH_SHORT).show();
-                    });
-                }
-            } else {
-                // No detections - just display original frame
-                runOnUiThread(() -> resultView.setImageBitmap(frame));
+                Log.v(TAG, valueLog.toString());
             }
+        }
+        detector.postprocess(in.letterbox(), out);
 
-        } catch (Exception e) {
-            Log.e(TAG, "Inference error", e);
-            e.printStackTrace();
+        // Done with the slot and its geometry; hand it back to the preprocess stage
+        task.input = null;
+        inputSlots.offer(in);
+    }
 
-            // Show error frame but continue processing
+    // Render stage: draw, then record end-to-end latency and dump metrics when an interval is up
+    private void renderFrame(FrameTask task) {
+        long t0 = scheduler.now();
+        drawFrame(task);
+        long now = scheduler.now();
+        metrics.record(PipelineMetrics.Stage.RENDER, now - t0);
+        scheduler.recordLatency(now - task.startNanos);
+        if (metrics.reportDue(now)) Log.i(TAG, metrics.format());
+    }
+
+    // Draw the frame and its boxes into the free bitmap and hand it to the UI thread. If the
+    // UI thread has not shown the previous frame yet, this one is not drawn; cached frames
+    // have no pixels and only show on the overlay.
+    private void drawFrame(FrameTask task) {
+        VideoFrame frame = task.video;
+        Detections boxes = task.boxes;
+        if (frame.hasPixels) drawPixels(frame, boxes);
+        if (boxes.isEmpty()) return;
+
+        // Play video on first detection
+        if (!boxDetected) {
+            boxDetected = true;
             runOnUiThread(() -> {
-                resultView.setImageBitmap(frame);
-                Toast.makeText(this, "Inference error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                videoView.start();
+                Toast.makeText(this, "Detected, starting video!", Toast.LENGTH_SHORT).show();
             });
         }
     }
 
-    // Handle flat array output format [1, 300]
-    private void handleFlatOutput(float[] outArr, List<float[]> boxList, List<Float> scoreList, int origWidth, int origHeight) {
-        // First, check if array has enough elements to process
-        if (outArr.length <= 1) {
-            Log.e(TAG, "Output array is too small: " + outArr.length);
+    private void drawPixels(VideoFrame frame, Detections boxes) {
+        Bitmap outBmp = frameBitmaps.begin(frame.width, frame.height);
+        if (outBmp == null) {
+            metrics.increment(PipelineMetrics.Counter.UNSHOWN);
             return;
         }
+        outBmp.setPixels(frame.argb, 0, frame.width, 0, 0, frame.width, frame.height);
+        Canvas canvas = frameBitmaps.canvas();
+        for (int i = 0; i < boxes.size(); i++) {
+            canvas.drawRect(boxes.x1[i], boxes.y1[i], boxes.x2[i], boxes.y2[i], boxPaint);
+        }
+        frameBitmaps.publish();
+        runOnUiThread(showFrame);
+        if (!firstFrameShown) {
+            firstFrameShown = true;
+            startupTrace.mark("first frame");
+            Log.i(TAG, "Startup: " + startupTrace);
+        }
+    }
 
-        try {
-            // Log the first few values to understand the format
-            StringBuilder sb = new StringBuilder("First values: ");
-            for (int i = 0; i < Math.min(10, outArr.length); i++) {
-                sb.append(outArr[i]).append(", ");
-            }
-            Log.d(TAG, sb.toString());
-
-            // Get the actual detection count - might be the first element
-            // or we might need to detect valid boxes another way
-            int numDetections = 0;
-
-            // If first value is reasonable as a count (between 0 and 50)
-            if (outArr[0] >= 0 && outArr[0] <= 50) {
-                numDetections = (int) outArr[0];
-                Log.d(TAG, "Using first value as detection count: " + numDetections);
-            } else {
-                // Alternative: scan for valid detections based on confidence values
-                // For YOLOv8, each detection typically has format:
-                // [x, y, w, h, confidence, class_id]
-                for (int i = 0; i + 5 < outArr.length; i += BOX_ELEMENTS) {
-                    float conf = outArr[i + 4];
-                    if (conf > 0 && conf <= 1.0) {
-                        numDetections++;
-                    }
-                }
-                Log.d(TAG, "Found " + numDetections + " potential detections by scanning");
-            }
-
-            // Safety check
-            int maxPossibleDetections = (outArr.length - 1) / BOX_ELEMENTS;
-            if (numDetections > maxPossibleDetections) {
-                Log.w(TAG, "Detection count too high, limiting from " + numDetections +
-                        " to " + maxPossibleDetections);
-                numDetections = maxPossibleDetections;
-            }
-
-            // Process the detections
-            for (int i = 0; i < numDetections; i++) {
-                // Calculate offset based on whether we're using the first value as count
-                int offset;
-                if (outArr[0] >= 0 && outArr[0] <= 50) {
-                    offset = i * BOX_ELEMENTS + 1; // +1 to skip the count
-                } else {
-                    offset = i * BOX_ELEMENTS;
-                }
-
-                // Safety check
-                if (offset + 5 >= outArr.length) {
-                    Log.w(TAG, "Breaking at detection " + i + ", offset " + offset +
-                            " would exceed array length " + outArr.length);
-                    break;
-                }
-
-                float conf = outArr[offset + 4]; // confidence value
-                if (conf < CONF_THRESH) continue;
-
-                // Log detection info
-                Log.d(TAG, String.format("Detection %d (offset %d): [%.2f, %.2f, %.2f, %.2f, %.2f]",
-                        i, offset,
-                        outArr[offset], outArr[offset+1],
-                        outArr[offset+2], outArr[offset+3],
-                        outArr[offset+4]));
-
-                // Get coordinates
-                float x = outArr[offset];
-                float y = outArr[offset + 1];
-                float w = outArr[offset + 2];
-                float h = outArr[offset + 3];
-
-                // Check if values are valid
-                if (Float.isNaN(x) || Float.isNaN(y) || Float.isNaN(w) || Float.isNaN(h)) {
-                    Log.w(TAG, "Skipping detection with NaN values");
-                    continue;
-                }
-
-                // Convert to absolute coordinates based on the input size DET_SIZE
-                float x1, y1, x2, y2;
-
-                // Check if coordinates are likely normalized (between 0-1)
-                boolean isNormalized = (Math.abs(x) <= 1 && Math.abs(y) <= 1 &&
-                        Math.abs(w) <= 1 && Math.abs(h) <= 1);
-
-                if (isNormalized) {
-                    // Convert from normalized [0-1] to absolute coords
-                    x1 = (x - w/2) * DET_SIZE;
-                    y1 = (y - h/2) * DET_SIZE;
-                    x2 = (x + w/2) * DET_SIZE;
-                    y2 = (y + h/2) * DET_SIZE;
-                } else {
-                    // Assume coords are already in pixels
-                    x1 = x - w/2;
-                    y1 = y - h/2;
-                    x2 = x + w/2;
-                    y2 = y + h/2;
-                }
-
-                // Skip invalid boxes
-                if (x1 >= x2 || y1 >= y2 ||
-                        x2 <= 0 || y2 <= 0 ||
-                        x1 >= DET_SIZE || y1 >= DET_SIZE) {
-                    Log.w(TAG, "Skipping invalid box: " + x1 + "," + y1 + "," + x2 + "," + y2);
-                    continue;
-                }
-
-                boxList.add(new float[]{x1, y1, x2, y2});
-                scoreList.add(conf);
-
-                Log.d(TAG, String.format("Added box %d: [%.1f, %.1f, %.1f, %.1f], conf: %.2f",
-                        i, x1, y1, x2, y2, conf));
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing flat output", e);
-            e.printStackTrace();
+    // Write the raw output tensor to <external files>/tensors for use as a fixture
+    private void dumpOutputTensor(int[] shape, FloatBuffer values) {
+        File dir = new File(getExternalFilesDir(null), "tensors");
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+        File out = new File(dir, String.format(Locale.US, "output_%03d.bin", tensorDumps++));
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(out))) {
+            TensorDump.write(os, shape, values);
+        } catch (IOException e) {
+            Log.e(TAG, "dumpOutputTensor failed", e);
         }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        isProcessing = false;
-        handler.removeCallbacksAndMessages(null);
+        stopVideoProcessing();
         if (videoView.isPlaying()) videoView.pause();
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        if (!isProcessing && retriever != null) startVideoProcessing();
+        if (!isProcessing && videoPath != null) startVideoProcessing();
         if (boxDetected && !videoView.isPlaying()) videoView.start();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-
-        if (tflite != null) {
-            tflite.close();
-            tflite = null;
+        destroyed = true;
+        startup.shutdownNow();
+        try {
+            // a model load still running closes its own engine once it sees destroyed
+            startup.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-
-        if (retriever != null) {
+        stopVideoProcessing();
+        if (tileExecutor != null) tileExecutor.shutdown();
+        if (presenceEngine != null) {
+            presenceEngine.close();
+            presenceEngine = null;
+        }
+        if (cacheStore != null) {
             try {
-                retriever.release();
+                cacheStore.close();
             } catch (IOException e) {
-                Log.e(TAG, "Error releasing retriever", e);
+                Log.e(TAG, "Error closing detection cache", e);
             }
-            retriever = null;
+            cacheStore = null;
+        }
+
+        if (engine != null) {
+            engine.close();
+            engine = null;
         }
 
-        handler.removeCallbacksAndMessages(null);
     }
 }
\ No newline at end of file
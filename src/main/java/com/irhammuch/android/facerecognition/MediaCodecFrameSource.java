@@ -0,0 +1,171 @@
+package com.irhammuch.android.facerecognition;
+
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.util.function.LongPredicate;
+
+/**
+ * Streaming {@link FrameSource} for a video file: MediaExtractor feeds a MediaCodec decoder
+ * that runs strictly forward, and only frames at the sampling interval are converted into
+ * pooled ARGB buffers. Unlike {@code getFrameAtTime(OPTION_CLOSEST)}, no frame ever seeks
+ * back to a keyframe, so cost grows with clip length rather than with GOP length. The
+ * track's rotation metadata is applied during color conversion, so frames come out upright
+ * and {@link #width()} / {@link #height()} are the displayed size.
+ */
+final class MediaCodecFrameSource implements FrameSource {
+    private static final long TIMEOUT_US = 10_000;
+
+    private final MediaExtractor extractor;
+    private final MediaCodec codec;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private final int width, height;           // displayed, after rotation
+    private final int codedWidth, codedHeight; // as decoded
+    private final int rotation;                // clockwise degrees applied on conversion
+    private volatile long sampleIntervalUs;
+    private volatile LongPredicate pixelFilter;
+    private final FramePool pool;
+
+    private boolean inputDone;
+    private boolean outputDone;
+    private long lastSampleUs;
+    private int emitted;
+
+    MediaCodecFrameSource(String path, long sampleIntervalUs, int poolSize) throws IOException {
+        this.sampleIntervalUs = sampleIntervalUs;
+        extractor = new MediaExtractor();
+        extractor.setDataSource(path);
+        MediaFormat format = null;
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat f = extractor.getTrackFormat(i);
+            String mime = f.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("video/")) {
+                extractor.selectTrack(i);
+                format = f;
+                break;
+            }
+        }
+        if (format == null) {
+            extractor.release();
+            throw new IOException("No video track in " + path);
+        }
+        codedWidth = format.getInteger(MediaFormat.KEY_WIDTH);
+        codedHeight = format.getInteger(MediaFormat.KEY_HEIGHT);
+        rotation = rotation(format);
+        boolean sideways = rotation == 90 || rotation == 270;
+        width = sideways ? codedHeight : codedWidth;
+        height = sideways ? codedWidth : codedHeight;
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+                MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+        codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+        codec.configure(format, null, null, 0);
+        codec.start();
+        pool = new FramePool(width, height, poolSize);
+    }
+
+    // Clockwise rotation the track asks for, normalized to 0, 90, 180 or 270
+    private static int rotation(MediaFormat format) {
+        if (!format.containsKey(MediaFormat.KEY_ROTATION)) return 0;
+        int degrees = ((format.getInteger(MediaFormat.KEY_ROTATION) % 360) + 360) % 360;
+        return degrees % 90 == 0 ? degrees : 0;
+    }
+
+    @Override
+    public int width() { return width; }
+
+    @Override
+    public int height() { return height; }
+
+    @Override
+    public VideoFrame next() throws IOException {
+        while (!outputDone) {
+            if (!inputDone) feedInput();
+
+            int out = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+            if (out < 0) continue; // try again later / format or buffers changed
+
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) outputDone = true;
+            long nextSampleUs = emitted == 0 ? Long.MIN_VALUE : lastSampleUs + sampleIntervalUs;
+            if (info.size == 0 || info.presentationTimeUs < nextSampleUs) {
+                codec.releaseOutputBuffer(out, false);
+                continue;
+            }
+
+            VideoFrame frame = pool.acquire();
+            LongPredicate filter = pixelFilter;
+            frame.hasPixels = filter == null || filter.test(info.presentationTimeUs);
+            if (!frame.hasPixels) {
+                // decoded all the same, later frames reference it; only conversion is skipped
+                codec.releaseOutputBuffer(out, false);
+            } else if (!convert(out, frame)) {
+                pool.release(frame);
+                continue;
+            }
+            frame.index = emitted++;
+            frame.timeUs = info.presentationTimeUs;
+            lastSampleUs = info.presentationTimeUs;
+            return frame;
+        }
+        return null;
+    }
+
+    // Output buffer to ARGB and release it; false if the codec had no image for it
+    private boolean convert(int out, VideoFrame frame) {
+        try (Image image = codec.getOutputImage(out)) {
+            if (image == null) return false;
+            Image.Plane[] planes = image.getPlanes();
+            Yuv.toArgb(planes[0].getBuffer(), planes[0].getRowStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(),
+                    planes[1].getRowStride(), planes[1].getPixelStride(),
+                    codedWidth, codedHeight, rotation, frame.argb);
+            return true;
+        } finally {
+            codec.releaseOutputBuffer(out, false);
+        }
+    }
+
+    private void feedInput() {
+        int in = codec.dequeueInputBuffer(TIMEOUT_US);
+        if (in < 0) return;
+        int size = extractor.readSampleData(codec.getInputBuffer(in), 0);
+        if (size < 0) {
+            codec.queueInputBuffer(in, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            inputDone = true;
+        } else {
+            codec.queueInputBuffer(in, 0, size, extractor.getSampleTime(), 0);
+            extractor.advance();
+        }
+    }
+
+    @Override
+    public void setSampleIntervalUs(long intervalUs) {
+        sampleIntervalUs = intervalUs;
+    }
+
+    @Override
+    public void setPixelFilter(LongPredicate wantsPixels) {
+        pixelFilter = wantsPixels;
+    }
+
+    @Override
+    public void cancel() {
+        pool.close();
+    }
+
+    @Override
+    public void release(VideoFrame frame) {
+        pool.release(frame);
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+        codec.stop();
+        codec.release();
+        extractor.release();
+    }
+}
@@ -0,0 +1,18 @@
+package com.irhammuch.android.facerecognition;
+
+/**
+ * Exported variants of the detector. FLOAT16 halves the asset with float16 weights but keeps
+ * float32 input and output tensors; FULL_INTEGER takes RGB bytes and emits quantized scores,
+ * so it skips the float conversion on both sides of the interpreter.
+ */
+public enum ModelVariant {
+    FLOAT32("best_stg1_float32.tflite"),
+    FLOAT16("best_stg1_float16.tflite"),
+    FULL_INTEGER("best_stg1_full_integer_quant.tflite");
+
+    public final String asset;
+
+    ModelVariant(String asset) {
+        this.asset = asset;
+    }
+}
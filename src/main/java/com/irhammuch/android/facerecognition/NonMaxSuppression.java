@@ -0,0 +1,175 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.Arrays;
+
+/**
+ * Non-Maximum Suppression on primitive {@link Detections} stores.
+ *
+ * <p>Candidates are ordered by score once (O(n log n) on packed long keys) and each one is
+ * tested only against boxes already kept, found through a uniform grid over the input
+ * area, so only boxes that can overlap are compared. The pass stops as soon as
+ * {@code maxDetections} boxes are kept. Scratch arrays grow to the largest frame seen and
+ * are then reused, so steady-state calls do not allocate.
+ */
+public final class NonMaxSuppression {
+    private static final int GRID = 8; // cells per side
+
+    private final float iouThresh;
+    private final int maxDetections;
+    private final boolean classAware;
+    private final float cellScale;
+
+    // score-ordered candidate keys
+    private long[] order = new long[0];
+    // grid of kept boxes: per-cell linked lists through entry arrays
+    private final int[] cellHead = new int[GRID * GRID];
+    private int[] entryBox = new int[64];
+    private int[] entryNext = new int[64];
+    private int entryCount;
+    // per kept box stamp so a box spanning several cells is tested once per candidate
+    private final int[] visited;
+    private int stamp;
+    // Soft-NMS working scores
+    private float[] softScores = new float[0];
+
+    /**
+     * @param extent     side of the square coordinate space boxes live in (model input size)
+     * @param classAware only suppress boxes of the same class
+     */
+    public NonMaxSuppression(float iouThresh, int maxDetections, int extent, boolean classAware) {
+        this.iouThresh = iouThresh;
+        this.maxDetections = maxDetections;
+        this.classAware = classAware;
+        this.cellScale = GRID / (float) extent;
+        this.visited = new int[maxDetections];
+    }
+
+    public int maxDetections() { return maxDetections; }
+
+    // Greedy hard NMS: copies kept boxes from src to dst, highest score first
+    public int run(Detections src, Detections dst) {
+        dst.clear();
+        int n = src.size();
+        if (n == 0) return 0;
+        sortByScore(src.score, n);
+        Arrays.fill(cellHead, -1);
+        entryCount = 0;
+
+        final int limit = Math.min(maxDetections, dst.capacity());
+        for (int a = 0; a < n && dst.size() < limit; a++) {
+            int i = (int) order[a];
+            if (!overlapsKept(src, i, dst)) {
+                int k = dst.size();
+                dst.add(src, i);
+                insert(dst, k);
+            }
+        }
+        return dst.size();
+    }
+
+    /**
+     * Gaussian Soft-NMS: instead of discarding overlapping boxes, decays their score by
+     * {@code exp(-iou² / sigma)} and keeps picking the best remaining one until
+     * {@code maxDetections} are kept or no score reaches {@code minScore}.
+     * Kept boxes carry their decayed scores.
+     */
+    public int runSoft(Detections src, float sigma, float minScore, Detections dst) {
+        dst.clear();
+        int n = src.size();
+        if (softScores.length < n) softScores = new float[n];
+        final float[] s = softScores;
+        System.arraycopy(src.score, 0, s, 0, n);
+
+        final int limit = Math.min(maxDetections, dst.capacity());
+        while (dst.size() < limit) {
+            int best = -1;
+            float bestScore = minScore;
+            for (int i = 0; i < n; i++) {
+                if (s[i] >= bestScore) {
+                    bestScore = s[i];
+                    best = i;
+                }
+            }
+            if (best < 0) break;
+            dst.add(src.x1[best], src.y1[best], src.x2[best], src.y2[best], bestScore, src.cls[best]);
+            s[best] = -1f;
+
+            for (int j = 0; j < n; j++) {
+                if (s[j] < minScore || disjointBounds(src, best, src, j)) continue;
+                if (classAware && src.cls[j] != src.cls[best]) continue;
+                float iou = iou(src, best, src, j);
+                s[j] *= (float) Math.exp(-(iou * iou) / sigma);
+            }
+        }
+        return dst.size();
+    }
+
+    // Intersection-over-Union of box i in a and box j in b
+    public static float iou(Detections a, int i, Detections b, int j) {
+        float x1 = Math.max(a.x1[i], b.x1[j]), y1 = Math.max(a.y1[i], b.y1[j]);
+        float x2 = Math.min(a.x2[i], b.x2[j]), y2 = Math.min(a.y2[i], b.y2[j]);
+        float w = Math.max(0, x2 - x1), h = Math.max(0, y2 - y1);
+        float inter = w * h;
+        return inter / (a.area(i) + b.area(j) - inter + 1e-6f);
+    }
+
+    private static boolean disjointBounds(Detections a, int i, Detections b, int j) {
+        return a.x1[i] >= b.x2[j] || b.x1[j] >= a.x2[i] || a.y1[i] >= b.y2[j] || b.y1[j] >= a.y2[i];
+    }
+
+    // Descending by score; scores are positive so their int bits sort like the floats
+    private void sortByScore(float[] score, int n) {
+        if (order.length < n) order = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(score[i])) << 32) | i;
+        }
+        Arrays.sort(order, 0, n);
+    }
+
+    private boolean overlapsKept(Detections src, int i, Detections kept) {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+        int cx0 = cell(src.x1[i]), cx1 = cell(src.x2[i]);
+        int cy0 = cell(src.y1[i]), cy1 = cell(src.y2[i]);
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                for (int e = cellHead[cy * GRID + cx]; e >= 0; e = entryNext[e]) {
+                    int k = entryBox[e];
+                    if (visited[k] == stamp) continue;
+                    visited[k] = stamp;
+                    if (classAware && kept.cls[k] != src.cls[i]) continue;
+                    if (disjointBounds(src, i, kept, k)) continue;
+                    if (iou(src, i, kept, k) > iouThresh) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Register kept box k in every cell it covers
+    private void insert(Detections kept, int k) {
+        int cx0 = cell(kept.x1[k]), cx1 = cell(kept.x2[k]);
+        int cy0 = cell(kept.y1[k]), cy1 = cell(kept.y2[k]);
+        int needed = entryCount + (cx1 - cx0 + 1) * (cy1 - cy0 + 1);
+        if (needed > entryBox.length) {
+            int cap = Math.max(needed, entryBox.length * 2);
+            entryBox = Arrays.copyOf(entryBox, cap);
+            entryNext = Arrays.copyOf(entryNext, cap);
+        }
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * GRID + cx;
+                entryBox[entryCount] = k;
+                entryNext[entryCount] = cellHead[c];
+                cellHead[c] = entryCount++;
+            }
+        }
+    }
+
+    private int cell(float v) {
+        int c = (int) (v * cellScale);
+        return c < 0 ? 0 : (c >= GRID ? GRID - 1 : c);
+    }
+}
@@ -0,0 +1,113 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage latency histograms and event counters for the frame pipeline. Recording is
+ * lock-free and allocation-free, so it can stay on in release builds; text is only built by
+ * {@link #format()}, which callers run when {@link #reportDue} says an interval has passed.
+ */
+public final class PipelineMetrics {
+
+    // LETTERBOX covers normalization too when the fused kernel is used; PRESENCE is the
+    // cascade's first stage, letterbox included
+    public enum Stage { DECODE, PRESENCE, LETTERBOX, NORMALIZE, INFER, DECODE_OUTPUT, NMS, RENDER }
+
+    // PRESENT / ABSENT: frames the presence model passed to the detector or rejected;
+    // CONFIRMED: passed frames on which the detector found something
+    public enum Counter {
+        FRAMES, SKIPPED, PREDICTED, CACHED, PRESENT, ABSENT, CONFIRMED, DETECTIONS, DROPPED,
+        UNSHOWN, ERRORS
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+    private final long reportIntervalNanos;
+    private final AtomicLong nextReport = new AtomicLong(Long.MIN_VALUE);
+
+    /** @param reportIntervalNanos spacing of {@link #reportDue} answering true */
+    public PipelineMetrics(long reportIntervalNanos) {
+        this.reportIntervalNanos = reportIntervalNanos;
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    public long count(Counter counter) { return counters.get(counter.ordinal()); }
+
+    public LatencyHistogram histogram(Stage stage) { return histograms[stage.ordinal()]; }
+
+    // Clear everything and start the report interval at now
+    public void reset(long now) {
+        for (LatencyHistogram h : histograms) h.reset();
+        for (int i = 0; i < COUNTERS.length; i++) counters.set(i, 0);
+        nextReport.set(now + reportIntervalNanos);
+    }
+
+    // True for exactly one caller once per interval, whichever thread gets there first
+    public boolean reportDue(long now) {
+        long due = nextReport.get();
+        if (due == Long.MIN_VALUE) {
+            nextReport.compareAndSet(due, now + reportIntervalNanos);
+            return false;
+        }
+        return now - due >= 0 && nextReport.compareAndSet(due, now + reportIntervalNanos);
+    }
+
+    // One line per stage that saw samples (count, p50/p90/p99/max in ms), then the counters
+    public String format() {
+        StringBuilder sb = new StringBuilder(512);
+        for (Stage stage : STAGES) {
+            LatencyHistogram.Snapshot s = histograms[stage.ordinal()].snapshot();
+            if (s.count() == 0) continue;
+            sb.append(String.format(Locale.US, "%-13s n=%-6d p50=%7.2f p90=%7.2f p99=%7.2f max=%7.2f ms%n",
+                    stage.name().toLowerCase(Locale.US), s.count(), millis(s.percentile(0.5)),
+                    millis(s.percentile(0.9)), millis(s.percentile(0.99)), millis(s.max())));
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(COUNTERS[i].name().toLowerCase(Locale.US)).append('=').append(counters.get(i));
+        }
+        long present = count(Counter.PRESENT), gated = present + count(Counter.ABSENT);
+        if (gated > 0) {
+            sb.append(String.format(Locale.US, "%ncascade: presence pass %.1f%%, detector confirmed %.1f%%,"
+                            + " saved %.2f ms per gated frame", 100.0 * present / gated,
+                    present == 0 ? 0 : 100.0 * count(Counter.CONFIRMED) / present, millis(cascadeSaving())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Mean time the cascade saved per frame it screened, in nanoseconds: the detector stages
+     * rejected frames did not run, minus the presence model on every screened frame. Negative
+     * when the presence model costs more than it saves.
+     */
+    public double cascadeSaving() {
+        long absent = count(Counter.ABSENT), gated = absent + count(Counter.PRESENT);
+        if (gated == 0) return 0;
+        double detector = mean(Stage.LETTERBOX) + mean(Stage.NORMALIZE) + mean(Stage.INFER)
+                + mean(Stage.DECODE_OUTPUT) + mean(Stage.NMS);
+        return (absent * detector - gated * mean(Stage.PRESENCE)) / gated;
+    }
+
+    private double mean(Stage stage) {
+        return histograms[stage.ordinal()].snapshot().mean();
+    }
+
+    private static double millis(double nanos) { return nanos / 1e6; }
+}
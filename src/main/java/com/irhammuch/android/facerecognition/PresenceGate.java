@@ -0,0 +1,117 @@
+package com.irhammuch.android.facerecognition;
+
+import org.tensorflow.lite.DataType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * First stage of a detector cascade: a small presence model (a 160-224 px classifier or
+ * heatmap) that decides whether the full detector needs to run on a frame at all. Output
+ * shapes understood:
+ * <ul>
+ *   <li>{@code [1, 1]}: presence probability;</li>
+ *   <li>{@code [1, 2]}: background / ball probabilities, the second one is used;</li>
+ *   <li>{@code [1, H, W]} or {@code [1, H, W, 1]}: heatmap; presence is its peak, and the
+ *       peak cell gives a coarse location that can seed a crop for the detector.</li>
+ * </ul>
+ * Quantized outputs are dequantized. Confined to one thread.
+ */
+public final class PresenceGate {
+    private final InferenceEngine engine;
+    private final float threshold;
+    private final FramePreprocessor in;
+    private final ByteBuffer out;
+    private final int heatW, heatH; // 0 for classifier outputs
+    private final int channel;      // element read for classifier outputs
+    private final boolean quantized, signed;
+
+    private float score;
+    private float centerX = Float.NaN, centerY = Float.NaN;
+
+    /** @param threshold presence score at or above which the detector runs */
+    public PresenceGate(InferenceEngine engine, float threshold) {
+        int[] shape = engine.outputShape();
+        if (shape.length == 2 && (shape[1] == 1 || shape[1] == 2)) {
+            heatW = heatH = 0;
+            channel = shape[1] - 1;
+        } else if ((shape.length == 3 || shape.length == 4 && shape[3] == 1) && shape[1] > 0 && shape[2] > 0) {
+            heatH = shape[1];
+            heatW = shape[2];
+            channel = 0;
+        } else {
+            throw new IllegalStateException("Unsupported presence output: " + Arrays.toString(shape));
+        }
+        this.engine = engine;
+        this.threshold = threshold;
+        this.in = Detector.preprocessor(engine, engine.inputShape()[1]);
+        this.out = ByteBuffer.allocateDirect(engine.outputBytes()).order(ByteOrder.nativeOrder());
+        this.quantized = engine.outputType() != DataType.FLOAT32;
+        this.signed = engine.outputType() == DataType.INT8;
+    }
+
+    public float threshold() { return threshold; }
+
+    public boolean hasHeatmap() { return heatW > 0; }
+
+    /** Runs the presence model on a packed ARGB frame; true when a ball is likely there. */
+    public boolean evaluate(int[] argb, int width, int height) throws Exception {
+        in.letterboxNormalize(argb, width, height);
+        engine.run(in.inputBuffer(), out);
+        if (heatW == 0) {
+            score = value(channel);
+            return score >= threshold;
+        }
+        int best = 0;
+        float peak = value(0);
+        for (int i = 1, n = heatW * heatH; i < n; i++) {
+            float v = value(i);
+            if (v > peak) {
+                peak = v;
+                best = i;
+            }
+        }
+        score = peak;
+        // peak cell center, from model input pixels back through the letterbox
+        Letterbox lb = in.letterbox();
+        float mx = (best % heatW + 0.5f) * lb.inputSize() / heatW;
+        float my = (best / heatW + 0.5f) * lb.inputSize() / heatH;
+        centerX = (mx - lb.padW()) / lb.ratio() + lb.offsetX();
+        centerY = (my - lb.padH()) / lb.ratio() + lb.offsetY();
+        return score >= threshold;
+    }
+
+    // Presence score of the last evaluate()
+    public float score() { return score; }
+
+    // Coarse ball location of the last evaluate() in frame pixels; NaN without a heatmap
+    public float centerX() { return centerX; }
+
+    public float centerY() { return centerY; }
+
+    /**
+     * A {@code side} x {@code side} window around the last heatmap peak, shifted inside the
+     * frame and packed with {@link RoiPlanner#pack}, or {@link RoiPlanner#FULL_FRAME} when
+     * there is no location or the frame is not larger than the window.
+     */
+    public long seedWindow(int side, int frameW, int frameH) {
+        if (heatW == 0 || (frameW <= side && frameH <= side)) return RoiPlanner.FULL_FRAME;
+        int w = Math.min(side, frameW), h = Math.min(side, frameH);
+        int x = Math.max(0, Math.min(frameW - w, Math.round(centerX - w / 2f)));
+        int y = Math.max(0, Math.min(frameH - h, Math.round(centerY - h / 2f)));
+        return RoiPlanner.pack(x, y, w, h);
+    }
+
+    private float value(int i) {
+        if (!quantized) return out.getFloat(i * 4);
+        int q = signed ? out.get(i) : out.get(i) & 0xFF;
+        return (q - engine.outputZeroPoint()) * engine.outputScale();
+    }
+
+    @Override
+    public String toString() {
+        return "PresenceGate(threshold " + threshold + ", "
+                + (heatW > 0 ? heatW + "x" + heatH + " heatmap" : "classifier") + ")";
+    }
+}
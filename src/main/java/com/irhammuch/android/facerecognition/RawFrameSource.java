@@ -0,0 +1,160 @@
+package com.irhammuch.android.facerecognition;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.LongPredicate;
+
+/**
+ * {@link FrameSource} over a file of back-to-back raw frames, e.g. from
+ * {@code ffmpeg -i clip.mp4 -pix_fmt yuv420p -f rawvideo clip.yuv}. Frames are read
+ * sequentially through one reused direct buffer; frames between samples are skipped by
+ * moving the channel position, never decoded.
+ */
+public final class RawFrameSource implements FrameSource {
+
+    public enum PixelFormat {
+        /** 4 bytes per pixel, R G B A. */
+        RGBA_8888,
+        /** Planar 4:2:0: full Y plane, then quarter-size U and V planes. */
+        I420
+    }
+
+    private final FileChannel channel;
+    private final int width, height;
+    private final PixelFormat format;
+    private final int frameBytes;
+    private final long frameDurationUs;
+    private volatile long sampleIntervalUs;
+    private volatile LongPredicate pixelFilter;
+    private final long frameCount;
+    private final ByteBuffer readBuf;
+    private final ByteBuffer yPlane, uPlane, vPlane;
+    private final FramePool pool;
+
+    private long nextFrame;
+    private long lastSampleUs;
+    private int emitted;
+
+    /**
+     * @param fps              frame rate of the raw stream, used for timestamps
+     * @param sampleIntervalUs spacing between emitted frames, 0 for every frame
+     * @param poolSize         number of frame buffers that can be out at once
+     */
+    public RawFrameSource(File file, int width, int height, PixelFormat format, double fps,
+                          long sampleIntervalUs, int poolSize) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.frameBytes = format == PixelFormat.I420
+                ? width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2)
+                : width * height * 4;
+        this.frameDurationUs = Math.round(1_000_000d / fps);
+        this.sampleIntervalUs = sampleIntervalUs;
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+        this.frameCount = channel.size() / frameBytes;
+        this.readBuf = ByteBuffer.allocateDirect(frameBytes);
+        if (format == PixelFormat.I420) {
+            int ySize = width * height, cSize = ((width + 1) / 2) * ((height + 1) / 2);
+            yPlane = slice(readBuf, 0, ySize);
+            uPlane = slice(readBuf, ySize, cSize);
+            vPlane = slice(readBuf, ySize + cSize, cSize);
+        } else {
+            yPlane = uPlane = vPlane = null;
+        }
+        this.pool = new FramePool(width, height, poolSize);
+    }
+
+    @Override
+    public int width() { return width; }
+
+    @Override
+    public int height() { return height; }
+
+    public long frameCount() { return frameCount; }
+
+    @Override
+    public VideoFrame next() throws IOException {
+        // skip ahead to the first frame at or after the next sample time
+        long nextSampleUs = emitted == 0 ? 0 : lastSampleUs + sampleIntervalUs;
+        while (nextFrame < frameCount && nextFrame * frameDurationUs < nextSampleUs) nextFrame++;
+        if (nextFrame >= frameCount) return null;
+
+        long timeUs = nextFrame * frameDurationUs;
+        LongPredicate filter = pixelFilter;
+        VideoFrame frame;
+        if (filter != null && !filter.test(timeUs)) {
+            // frames are independent here: no read at all
+            frame = pool.acquire();
+            frame.hasPixels = false;
+        } else {
+            frame = read();
+            frame.hasPixels = true;
+        }
+        frame.index = emitted++;
+        frame.timeUs = timeUs;
+        lastSampleUs = timeUs;
+        nextFrame++;
+        return frame;
+    }
+
+    private VideoFrame read() throws IOException {
+        readBuf.clear();
+        long pos = nextFrame * frameBytes;
+        while (readBuf.hasRemaining()) {
+            if (channel.read(readBuf, pos + readBuf.position()) < 0) throw new EOFException();
+        }
+
+        VideoFrame frame = pool.acquire();
+        if (format == PixelFormat.I420) {
+            int cw = (width + 1) / 2;
+            Yuv.toArgb(yPlane, width, uPlane, vPlane, cw, 1, width, height, frame.argb);
+        } else {
+            rgbaToArgb(readBuf, frame.argb);
+        }
+        return frame;
+    }
+
+    @Override
+    public void setSampleIntervalUs(long intervalUs) {
+        sampleIntervalUs = intervalUs;
+    }
+
+    @Override
+    public void setPixelFilter(LongPredicate wantsPixels) {
+        pixelFilter = wantsPixels;
+    }
+
+    @Override
+    public void release(VideoFrame frame) {
+        pool.release(frame);
+    }
+
+    @Override
+    public void cancel() {
+        pool.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.close();
+        channel.close();
+    }
+
+    private static void rgbaToArgb(ByteBuffer src, int[] out) {
+        for (int i = 0, o = 0; i < out.length; i++, o += 4) {
+            int r = src.get(o) & 0xFF, g = src.get(o + 1) & 0xFF, b = src.get(o + 2) & 0xFF;
+            int a = src.get(o + 3) & 0xFF;
+            out[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+        ByteBuffer dup = buf.duplicate();
+        dup.position(offset).limit(offset + length);
+        return dup.slice();
+    }
+}
@@ -0,0 +1,77 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.Arrays;
+
+/**
+ * Picks the detector input resolution from measured inference latency. After every
+ * {@code window} runs at one size it compares their mean with the budget: over budget steps
+ * one size down; when the next size up, estimated to cost in proportion to its pixel count,
+ * would still fit in {@code headroom} of the budget, it steps up. The gap between the two
+ * conditions and the fresh window after each change keep it from oscillating.
+ *
+ * <p>A fixed policy ({@link #fixed}) never changes size. Confined to one thread.
+ */
+public final class ResolutionPolicy {
+    private final int[] sizes;
+    private final long budgetNanos;
+    private final float headroom;
+    private final int window;
+    private final boolean auto;
+    private int current;   // index into sizes
+    private int samples;
+    private long sumNanos;
+
+    /**
+     * @param sizes       candidate input sides, ascending
+     * @param initial     size to start at; must be one of {@code sizes}
+     * @param budgetNanos inference time a frame may take
+     * @param headroom    share of the budget the next size up must fit in, below 1
+     * @param window      runs averaged per decision
+     */
+    public ResolutionPolicy(int[] sizes, int initial, long budgetNanos, float headroom, int window) {
+        this(sizes, initial, budgetNanos, headroom, window, true);
+    }
+
+    private ResolutionPolicy(int[] sizes, int initial, long budgetNanos, float headroom, int window,
+                             boolean auto) {
+        int at = Arrays.binarySearch(sizes, initial);
+        if (at < 0) throw new IllegalArgumentException("Size " + initial + " not in " + Arrays.toString(sizes));
+        this.sizes = sizes.clone();
+        this.budgetNanos = budgetNanos;
+        this.headroom = headroom;
+        this.window = Math.max(1, window);
+        this.auto = auto;
+        this.current = at;
+    }
+
+    /** Policy that stays at {@code size}. */
+    public static ResolutionPolicy fixed(int size) {
+        return new ResolutionPolicy(new int[]{size}, size, Long.MAX_VALUE, 1f, 1, false);
+    }
+
+    public int current() { return sizes[current]; }
+
+    public boolean isAuto() { return auto; }
+
+    /** Records one inference at {@link #current()}; returns the size to use from now on. */
+    public int record(long inferNanos) {
+        if (!auto) return current();
+        sumNanos += inferNanos;
+        if (++samples < window) return current();
+        double mean = (double) sumNanos / samples;
+        samples = 0;
+        sumNanos = 0;
+        if (mean > budgetNanos && current > 0) {
+            current--;
+        } else if (current < sizes.length - 1) {
+            double scale = (double) sizes[current + 1] * sizes[current + 1] / ((double) sizes[current] * sizes[current]);
+            if (mean * scale < headroom * budgetNanos) current++;
+        }
+        return current();
+    }
+
+    @Override
+    public String toString() {
+        return auto ? "auto " + Arrays.toString(sizes) + ", now " + current() : "fixed " + current();
+    }
+}
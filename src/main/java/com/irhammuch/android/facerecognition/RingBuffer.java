@@ -0,0 +1,82 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer / multi-consumer queue (Vyukov's sequenced ring).
+ * Slots carry a sequence number, so producers and consumers only contend on their own
+ * cursor and nothing is allocated per element. Capacity is rounded up to a power of two.
+ */
+public final class RingBuffer<T> {
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequence;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+        // the sequencing needs at least two slots to tell "full" from "free"
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequence.set(i, i);
+        mask = size - 1;
+    }
+
+    public int capacity() { return mask + 1; }
+
+    // Enqueue; returns false when full
+    public boolean offer(T item) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) pos & mask;
+            long dif = sequence.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.lazySet(idx, item);
+                    sequence.set(idx, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    // Dequeue; returns null when empty
+    public T poll() {
+        long pos = head.get();
+        while (true) {
+            int idx = (int) pos & mask;
+            long dif = sequence.get(idx) - (pos + 1);
+            if (dif == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    T item = slots.get(idx);
+                    slots.lazySet(idx, null);
+                    sequence.set(idx, pos + mask + 1);
+                    return item;
+                }
+                pos = head.get();
+            } else if (dif < 0) {
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    // Approximate under concurrency
+    public int size() {
+        long s = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(s, mask + 1));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
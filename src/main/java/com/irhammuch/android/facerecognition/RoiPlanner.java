@@ -0,0 +1,90 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.List;
+
+/**
+ * Chooses the part of the frame the detector looks at next. While the tracker holds live
+ * balls, the window covers their boxes pushed ahead by their velocity over the lead time
+ * plus a margin, and is
+ * at least {@code minWindow} pixels on a side, so with a window of the model input size the
+ * crop runs at native resolution instead of being shrunk with the whole frame. The plan
+ * falls back to the full frame when no ball is tracked, when the window would cover the
+ * frame anyway, and every {@code fullFrameEvery} plans so new balls are still found.
+ */
+public final class RoiPlanner {
+    /** Plan value meaning "letterbox the whole frame". */
+    public static final long FULL_FRAME = -1L;
+
+    private int minWindow;
+    private final float margin;
+    private final int fullFrameEvery;
+    private int sinceFullFrame;
+
+    /**
+     * @param minWindow      smallest window side in frame pixels, normally the model input size
+     * @param margin         padding around each box, as a multiple of its larger side
+     * @param fullFrameEvery force a full-frame search after this many windowed plans
+     */
+    public RoiPlanner(int minWindow, float margin, int fullFrameEvery) {
+        this.minWindow = minWindow;
+        this.margin = margin;
+        this.fullFrameEvery = fullFrameEvery;
+    }
+
+    public void reset() { sinceFullFrame = 0; }
+
+    // Follows a change of the model input size; the next plan uses the new minimum
+    public void setMinWindow(int minWindow) { this.minWindow = minWindow; }
+
+    /**
+     * Window for the next detector run, packed with {@link #pack}; {@link #FULL_FRAME} to
+     * search everything. {@code leadUs} is the stream time of motion to allow for between
+     * planning and the frame the window is applied to.
+     */
+    public long plan(BallTracker tracker, int frameW, int frameH, long leadUs) {
+        final float lead = leadUs / 1e6f;
+        float x1 = Float.MAX_VALUE, y1 = Float.MAX_VALUE, x2 = -Float.MAX_VALUE, y2 = -Float.MAX_VALUE;
+        List<BallTracker.Track> tracks = tracker.tracks();
+        for (int t = 0; t < tracks.size(); t++) {
+            BallTracker.Track track = tracks.get(t);
+            if (track.isLost() || !track.confirmed()) continue;
+            float dx = track.velocityX() * lead, dy = track.velocityY() * lead;
+            float pad = margin * Math.max(track.x2() - track.x1(), track.y2() - track.y1());
+            x1 = Math.min(x1, Math.min(track.x1(), track.x1() + dx) - pad);
+            y1 = Math.min(y1, Math.min(track.y1(), track.y1() + dy) - pad);
+            x2 = Math.max(x2, Math.max(track.x2(), track.x2() + dx) + pad);
+            y2 = Math.max(y2, Math.max(track.y2(), track.y2() + dy) + pad);
+        }
+        if (x1 > x2 || ++sinceFullFrame > fullFrameEvery) {
+            sinceFullFrame = 0;
+            return FULL_FRAME;
+        }
+
+        int side = (int) Math.ceil(Math.max(minWindow, Math.max(x2 - x1, y2 - y1)));
+        if (side >= frameW && side >= frameH) {
+            sinceFullFrame = 0;
+            return FULL_FRAME;
+        }
+        int w = Math.min(side, frameW), h = Math.min(side, frameH);
+        int x = clamp(Math.round((x1 + x2 - w) / 2), frameW - w);
+        int y = clamp(Math.round((y1 + y2 - h) / 2), frameH - h);
+        return pack(x, y, w, h);
+    }
+
+    private static int clamp(int v, int max) {
+        return Math.max(0, Math.min(v, max));
+    }
+
+    // 16 bits per field; frames are far below 65536 pixels on a side
+    public static long pack(int x, int y, int w, int h) {
+        return ((long) x << 48) | ((long) y << 32) | ((long) w << 16) | h;
+    }
+
+    public static int x(long roi) { return (int) (roi >>> 48) & 0xFFFF; }
+
+    public static int y(long roi) { return (int) (roi >>> 32) & 0xFFFF; }
+
+    public static int width(long roi) { return (int) (roi >>> 16) & 0xFFFF; }
+
+    public static int height(long roi) { return (int) roi & 0xFFFF; }
+}
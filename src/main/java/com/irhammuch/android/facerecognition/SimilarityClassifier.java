@@ -15,7 +15,19 @@ limitations under the License.
 
 package com.irhammuch.android.facerecognition;
 
+import java.util.List;
+
+/** Nearest-neighbour recognition over registered embeddings. */
 public interface SimilarityClassifier {
+
+    /** Adds an embedding under the given id and display title. */
+    void register(String id, String title, float[] embedding);
+
+    /** Up to {@code k} registered entries closest to the embedding, closest first. */
+    List<Recognition> recognize(float[] embedding, int k);
+
+    int size();
+
     /** An immutable result returned by a Classifier describing what was recognized. */
     class Recognition {
         /**
@@ -46,22 +58,34 @@ public interface SimilarityClassifier {
             return this.extra;
         }
 
+        public String getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Float getDistance() {
+            return distance;
+        }
+
         @Override
         public String toString() {
-            String resultString = "";
+            StringBuilder sb = new StringBuilder(48);
             if (id != null) {
-                resultString += "[" + id + "] ";
+                sb.append('[').append(id).append("] ");
             }
 
             if (title != null) {
-                resultString += title + " ";
+                sb.append(title).append(' ');
             }
 
             if (distance != null) {
-                resultString += String.format("(%.1f%%) ", distance * 100.0f);
+                sb.append(String.format("(%.1f%%) ", distance * 100.0f));
             }
 
-            return resultString.trim();
+            return sb.toString().trim();
         }
 
     }
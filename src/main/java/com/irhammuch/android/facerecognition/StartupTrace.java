@@ -0,0 +1,38 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.Locale;
+
+/**
+ * Wall-clock phases of app startup, measured from construction. Phases may be marked from
+ * different threads (model loading and asset staging run in parallel), so each mark records
+ * both its own duration since the thread's previous mark and the total since start.
+ */
+public final class StartupTrace {
+    private final AdaptiveScheduler.Clock clock;
+    private final long origin;
+    private final StringBuilder summary = new StringBuilder(256);
+    private final ThreadLocal<Long> lastMark = new ThreadLocal<>();
+
+    public StartupTrace(AdaptiveScheduler.Clock clock) {
+        this.clock = clock;
+        this.origin = clock.nanoTime();
+    }
+
+    // Ends a phase started at the calling thread's previous mark (or at construction);
+    // returns its duration in nanoseconds
+    public synchronized long mark(String phase) {
+        long now = clock.nanoTime();
+        Long previous = lastMark.get();
+        long took = now - (previous != null ? previous : origin);
+        lastMark.set(now);
+        if (summary.length() > 0) summary.append(", ");
+        summary.append(String.format(Locale.US, "%s %.1f ms (at %.1f ms)", phase, took / 1e6,
+                (now - origin) / 1e6));
+        return took;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return summary.toString();
+    }
+}
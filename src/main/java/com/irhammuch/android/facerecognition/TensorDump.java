@@ -0,0 +1,59 @@
+package com.irhammuch.android.facerecognition;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Raw float32 tensor snapshots, used to record real output tensors on a device and replay
+ * them as benchmark and test fixtures on the JVM.
+ *
+ * <p>Format (big-endian, as written by {@link DataOutputStream}): magic {@code "TNSR"},
+ * rank, each dimension, then {@code product(shape)} floats.
+ */
+public final class TensorDump {
+    private static final int MAGIC = 0x544E5352; // "TNSR"
+
+    public final int[] shape;
+    public final float[] data;
+
+    public TensorDump(int[] shape, float[] data) {
+        this.shape = shape;
+        this.data = data;
+    }
+
+    public static void write(OutputStream os, int[] shape, FloatBuffer values) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(shape.length);
+        for (int d : shape) out.writeInt(d);
+        int n = elementCount(shape);
+        for (int i = 0; i < n; i++) out.writeFloat(values.get(i));
+        out.flush();
+    }
+
+    public static TensorDump read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC) throw new IOException("Not a tensor dump");
+        int[] shape = new int[in.readInt()];
+        for (int i = 0; i < shape.length; i++) shape[i] = in.readInt();
+        float[] data = new float[elementCount(shape)];
+        for (int i = 0; i < data.length; i++) data[i] = in.readFloat();
+        return new TensorDump(shape, data);
+    }
+
+    private static int elementCount(int[] shape) {
+        int n = 1;
+        for (int d : shape) n *= d;
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return "TensorDump" + Arrays.toString(shape);
+    }
+}
@@ -0,0 +1,329 @@
+package com.irhammuch.android.facerecognition;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * {@link InferenceEngine} over a pool of TFLite interpreters that share one model buffer.
+ * Each interpreter is owned by a worker thread; all workers take jobs from a single work
+ * queue, so frames are spread over the instances in arrival order and no interpreter is
+ * ever used by two threads at once.
+ */
+public final class TfliteInferenceEngine implements InferenceEngine {
+    private final ByteBuffer model;
+    private final boolean useXnnpack;
+    private final Worker[] workers;
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final int[] modelInputShape; // as stored in the model, for rebuilt interpreters
+    // Tensor geometry, replaced by resizeInput while no run is in flight
+    private volatile int[] inputShape;
+    private volatile int[] outputShape;
+    private volatile int outputBytes;
+    private volatile int inputBytes;
+    private final DataType inputType;
+    private final DataType outputType;
+    private final float inputScale;
+    private final int inputZeroPoint;
+    private final float outputScale;
+    private final int outputZeroPoint;
+    private final int maxBatch;
+    private volatile int numThreads;
+    private volatile boolean closed;
+    private final Object closing = new Object(); // orders submissions against close()
+
+    /**
+     * @param model      memory-mapped model, shared read-only by every instance
+     * @param instances  number of interpreters (and worker threads)
+     * @param numThreads CPU threads per interpreter
+     * @param maxBatch   largest batch to accept if the model has a dynamic batch dimension
+     */
+    public TfliteInferenceEngine(ByteBuffer model, int instances, int numThreads,
+                                 boolean useXnnpack, int maxBatch) {
+        this.model = model;
+        this.useXnnpack = useXnnpack;
+        this.numThreads = numThreads;
+        this.workers = new Worker[instances];
+        for (int i = 0; i < instances; i++) workers[i] = new Worker(i, newInterpreter());
+
+        readGeometry();
+        Tensor input = workers[0].interpreter.getInputTensor(0);
+        Tensor output = workers[0].interpreter.getOutputTensor(0);
+        modelInputShape = inputShape.clone();
+        inputType = input.dataType();
+        outputType = output.dataType();
+        inputScale = input.quantizationParams().getScale();
+        inputZeroPoint = input.quantizationParams().getZeroPoint();
+        outputScale = output.quantizationParams().getScale();
+        outputZeroPoint = output.quantizationParams().getZeroPoint();
+        int[] signature = input.shapeSignature();
+        this.maxBatch = signature.length > 0 && signature[0] == -1 ? Math.max(1, maxBatch) : 1;
+        for (Worker w : workers) w.start();
+    }
+
+    // Shapes and sizes from the first instance; every instance has the same
+    private void readGeometry() {
+        Tensor input = workers[0].interpreter.getInputTensor(0);
+        Tensor output = workers[0].interpreter.getOutputTensor(0);
+        inputShape = input.shape();
+        outputShape = output.shape();
+        inputBytes = input.numBytes();
+        outputBytes = output.numBytes();
+    }
+
+    private Interpreter newInterpreter() {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setUseXNNPACK(useXnnpack);
+        options.setNumThreads(numThreads);
+        return new Interpreter(model, options);
+    }
+
+    @Override
+    public int[] inputShape() { return inputShape.clone(); }
+
+    @Override
+    public int[] outputShape() { return outputShape.clone(); }
+
+    @Override
+    public int outputBytes() { return outputBytes; }
+
+    @Override
+    public DataType inputType() { return inputType; }
+
+    @Override
+    public DataType outputType() { return outputType; }
+
+    @Override
+    public float inputScale() { return inputScale; }
+
+    @Override
+    public int inputZeroPoint() { return inputZeroPoint; }
+
+    @Override
+    public float outputScale() { return outputScale; }
+
+    @Override
+    public int outputZeroPoint() { return outputZeroPoint; }
+
+    @Override
+    public int instances() { return workers.length; }
+
+    @Override
+    public int maxBatch() { return maxBatch; }
+
+    public int numThreads() { return numThreads; }
+
+    @Override
+    public void run(ByteBuffer input, ByteBuffer output) throws Exception {
+        try {
+            submit(input, output).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    @Override
+    public Future<?> submit(ByteBuffer input, ByteBuffer output) {
+        return enqueue(new Job(input, 1, output));
+    }
+
+    @Override
+    public Future<?> submitBatch(ByteBuffer input, int batch, ByteBuffer output) {
+        if (batch < 1 || batch > maxBatch) {
+            throw new IllegalArgumentException("Batch " + batch + " outside 1.." + maxBatch);
+        }
+        return enqueue(new Job(input, batch, output));
+    }
+
+    private Future<?> enqueue(Job job) {
+        // under the lock, so nothing joins the queue after close() has drained it
+        synchronized (closing) {
+            if (closed) throw new IllegalStateException("Engine closed");
+            queue.add(job);
+        }
+        return job.future;
+    }
+
+    // Each instance in turn on the calling thread; its lock keeps the worker off it meanwhile
+    @Override
+    public long warmUp(int runs) {
+        ByteBuffer in = ByteBuffer.allocateDirect(inputBytes).order(ByteOrder.nativeOrder());
+        ByteBuffer out = ByteBuffer.allocateDirect(outputBytes).order(ByteOrder.nativeOrder());
+        Job job = new Job(in, 1, out);
+        long slowestFirst = 0;
+        for (Worker w : workers) {
+            for (int i = 0; i < runs; i++) {
+                long t0 = System.nanoTime();
+                w.runLocked(job);
+                if (i == 0) slowestFirst = Math.max(slowestFirst, System.nanoTime() - t0);
+            }
+        }
+        return slowestFirst;
+    }
+
+    // NHWC input: only height and width change; the batch goes back to 1
+    @Override
+    public synchronized boolean resizeInput(int width, int height) {
+        int[] previous = inputShape;
+        if (previous.length != 4) return false;
+        int[] shape = {1, height, width, previous[3]};
+        if (Arrays.equals(shape, previous)) return true;
+        try {
+            for (Worker w : workers) w.resize(shape);
+        } catch (RuntimeException e) {
+            // fixed-size graph (e.g. a reshape baked for one size): put every instance back
+            int[] restore = previous.clone();
+            restore[0] = 1;
+            for (Worker w : workers) w.resize(restore);
+            return false;
+        }
+        readGeometry();
+        return true;
+    }
+
+    @Override
+    public synchronized void setNumThreads(int threads) {
+        if (threads == numThreads) return;
+        numThreads = threads;
+        int[] shape = inputShape.clone();
+        shape[0] = 1;
+        for (Worker w : workers) {
+            // wait for the worker's current job, then swap in a rebuilt interpreter
+            synchronized (w.lock) {
+                w.interpreter.close();
+                w.interpreter = newInterpreter();
+                w.batch = 1;
+                if (!Arrays.equals(shape, modelInputShape)) w.resize(shape);
+            }
+        }
+    }
+
+    // No logging here so the engine also runs on a plain JVM; callers log this instead
+    @Override
+    public String toString() {
+        return workers.length + " instance(s), " + numThreads + " thread(s), XNNPACK "
+                + (useXnnpack ? "on" : "off") + ", input " + inputType + Arrays.toString(inputShape)
+                + ", output " + outputType + Arrays.toString(outputShape) + ", max batch " + maxBatch;
+    }
+
+    // Jobs still queued fail with IllegalStateException; later submissions are rejected
+    @Override
+    public void close() {
+        synchronized (closing) {
+            if (closed) return;
+            closed = true;
+        }
+        for (Worker w : workers) w.interrupt();
+        for (Worker w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // a worker still finishing its job holds the lock until it is done
+            synchronized (w.lock) {
+                w.interpreter.close();
+            }
+        }
+        IllegalStateException closedError = new IllegalStateException("Engine closed");
+        Job pending;
+        while ((pending = queue.poll()) != null) pending.future.fail(closedError);
+    }
+
+    private static final class Job {
+        final ByteBuffer input;
+        final int batch;
+        final ByteBuffer output;
+        final JobFuture future;
+        Worker worker;
+
+        Job(ByteBuffer input, int batch, ByteBuffer output) {
+            this.input = input;
+            this.batch = batch;
+            this.output = output;
+            this.future = new JobFuture(() -> {
+                worker.runLocked(this);
+                return null;
+            });
+        }
+    }
+
+    private static final class JobFuture extends FutureTask<Void> {
+        JobFuture(Callable<Void> work) {
+            super(work);
+        }
+
+        // Completes a job that will never run
+        void fail(Throwable cause) {
+            setException(cause);
+        }
+    }
+
+    private final class Worker extends Thread {
+        // guards the interpreter; not the Thread itself, whose monitor join() uses
+        final Object lock = new Object();
+        Interpreter interpreter;
+        int batch = 1;
+
+        Worker(int index, Interpreter interpreter) {
+            super("tflite-" + index);
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                Job job;
+                try {
+                    job = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                job.worker = this;
+                job.future.run();
+            }
+        }
+
+        void resize(int[] shape) {
+            synchronized (lock) {
+                interpreter.resizeInput(0, shape);
+                interpreter.allocateTensors();
+                batch = shape[0];
+            }
+        }
+
+        void runLocked(Job job) {
+            synchronized (lock) {
+                runJob(job);
+            }
+        }
+
+        private void runJob(Job job) {
+            if (job.batch != batch) {
+                int[] shape = inputShape.clone();
+                shape[0] = job.batch;
+                interpreter.resizeInput(0, shape);
+                interpreter.allocateTensors();
+                batch = job.batch;
+            }
+            if (job.input.capacity() < inputBytes * job.batch
+                    || job.output.capacity() < outputBytes * job.batch) {
+                throw new IllegalArgumentException("Buffers too small for batch " + job.batch);
+            }
+            job.input.rewind();
+            job.output.rewind();
+            interpreter.run(job.input, job.output);
+        }
+    }
+}
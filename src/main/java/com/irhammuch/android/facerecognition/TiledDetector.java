@@ -0,0 +1,196 @@
+package com.irhammuch.android.facerecognition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Sliced inference for frames much larger than the model input. The frame is cut into a
+ * grid of overlapping tiles, each letterboxed into the input at close to native resolution,
+ * plus optionally one global pass over the whole frame for objects larger than a tile. Every
+ * part has its own preprocessor and {@link Detector}, so parts run concurrently on the
+ * executor while the engine spreads them over its instances; each part's boxes come back in
+ * frame coordinates through its letterbox's crop offset.
+ *
+ * <p>The same object seen by several parts is merged greedily, highest score first: a kept
+ * box absorbs same-class boxes whose intersection covers more than {@link #FUSE_IOS} of the
+ * smaller box, and grows to their union. Intersection over the smaller box rather than IoU,
+ * because a ball cut off at a tile edge yields a fragment lying inside the full box.
+ *
+ * <p>{@link #detect} is called from one thread at a time.
+ */
+public final class TiledDetector {
+    /** Intersection over the smaller box above which two boxes are the same object. */
+    public static final float FUSE_IOS = 0.5f;
+
+    private final int columns, rows;
+    private final float overlap;
+    private final int inputSize;
+    private final ExecutorService executor; // null: parts run in turn on the calling thread
+    private final PipelineMetrics metrics;
+    private final Part[] parts;              // tiles row-major, then the global pass if any
+    private final Part global;
+    private final List<Callable<Void>> jobs = new ArrayList<>();
+    private final Detections all;
+    private final long[] keys;
+    private final boolean[] absorbed;
+
+    private int[] src;
+    private int frameW = -1, frameH = -1;
+    private boolean tiling; // false for frames that fit the input; only the whole frame runs
+
+    /** One tile, or the whole frame when {@code w == 0}. */
+    private final class Part implements Callable<Void> {
+        final FramePreprocessor in;
+        final Detector detector;
+        final Detections boxes;
+        int x, y, w, h;
+
+        Part(FramePreprocessor in, Detector detector, int maxDetections) {
+            this.in = in;
+            this.detector = detector;
+            this.boxes = new Detections(maxDetections);
+        }
+
+        @Override
+        public Void call() throws Exception {
+            long t0 = System.nanoTime();
+            if (w == 0) in.letterboxNormalize(src, frameW, frameH);
+            else in.letterboxNormalize(src, frameW, frameH, x, y, w, h);
+            if (metrics != null) metrics.record(PipelineMetrics.Stage.LETTERBOX, System.nanoTime() - t0);
+            detector.detect(in, boxes);
+            return null;
+        }
+    }
+
+    /**
+     * @param detectors     creates one detector per part, all on {@code engine}
+     * @param overlap       share of a tile's width (height) shared with its neighbour, 0 to < 1
+     * @param globalPass    also run the whole frame letterboxed, for objects larger than a tile
+     * @param executor      runs the parts concurrently; null to run them on the caller
+     * @param metrics       receives letterbox timings; may be null
+     */
+    public TiledDetector(InferenceEngine engine, Supplier<Detector> detectors, int columns, int rows,
+                         float overlap, boolean globalPass, int maxDetections,
+                         ExecutorService executor, PipelineMetrics metrics) {
+        if (columns < 1 || rows < 1) throw new IllegalArgumentException("Empty tile grid");
+        if (overlap < 0 || overlap >= 1) throw new IllegalArgumentException("Overlap out of range: " + overlap);
+        this.columns = columns;
+        this.rows = rows;
+        this.overlap = overlap;
+        this.inputSize = engine.inputShape()[1];
+        this.executor = executor;
+        this.metrics = metrics;
+        int count = columns * rows + (globalPass ? 1 : 0);
+        parts = new Part[count];
+        for (int i = 0; i < count; i++) {
+            parts[i] = new Part(Detector.preprocessor(engine, inputSize), detectors.get(), maxDetections);
+        }
+        global = globalPass ? parts[count - 1] : null;
+        all = new Detections(count * maxDetections);
+        keys = new long[all.capacity()];
+        absorbed = new boolean[all.capacity()];
+    }
+
+    public int tileCount() { return columns * rows; }
+
+    // Crop of tile i for the current frame, packed with RoiPlanner.pack
+    public long tile(int i) {
+        Part p = parts[i];
+        return RoiPlanner.pack(p.x, p.y, p.w, p.h);
+    }
+
+    /** Detects over the tiles (and global pass) of a packed ARGB frame into out; returns the count. */
+    public int detect(int[] argb, int width, int height, Detections out) throws Exception {
+        if (width != frameW || height != frameH) layout(width, height);
+        src = argb;
+        jobs.clear();
+        if (tiling) {
+            for (Part p : parts) jobs.add(p);
+        } else {
+            // one part over the whole frame; the global one if there is one
+            Part whole = global != null ? global : parts[0];
+            whole.w = 0;
+            jobs.add(whole);
+        }
+        if (executor == null || jobs.size() == 1) {
+            for (int i = 0; i < jobs.size(); i++) jobs.get(i).call();
+        } else {
+            for (Future<Void> f : executor.invokeAll(jobs)) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+        }
+        src = null;
+
+        all.clear();
+        for (int i = 0; i < jobs.size(); i++) {
+            Detections boxes = ((Part) jobs.get(i)).boxes;
+            for (int j = 0; j < boxes.size(); j++) all.add(boxes, j);
+        }
+        return fuse(all, out);
+    }
+
+    // Tile grid for a new frame size: tiles evenly spaced so the outer ones touch the edges
+    private void layout(int width, int height) {
+        frameW = width;
+        frameH = height;
+        tiling = width > inputSize || height > inputSize;
+        int tileW = span(width, columns), tileH = span(height, rows);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                Part p = parts[r * columns + c];
+                p.x = columns > 1 ? Math.round((float) c * (width - tileW) / (columns - 1)) : 0;
+                p.y = rows > 1 ? Math.round((float) r * (height - tileH) / (rows - 1)) : 0;
+                p.w = tileW;
+                p.h = tileH;
+            }
+        }
+        if (global != null) global.w = 0;
+    }
+
+    // Side of `count` tiles covering `extent` with `overlap` shared between neighbours
+    private int span(int extent, int count) {
+        return Math.min(extent, (int) Math.ceil(extent / (count - (count - 1) * overlap)));
+    }
+
+    // Greedy merge across parts into dst, highest score first; returns the count
+    private int fuse(Detections src, Detections dst) {
+        int n = src.size();
+        // scores are positive, so their int bits sort like the floats
+        for (int i = 0; i < n; i++) keys[i] = ((long) Float.floatToIntBits(src.score[i]) << 32) | i;
+        Arrays.sort(keys, 0, n);
+        Arrays.fill(absorbed, 0, n, false);
+        dst.clear();
+        for (int a = n - 1; a >= 0; a--) {
+            int i = (int) keys[a];
+            if (absorbed[i]) continue;
+            float x1 = src.x1[i], y1 = src.y1[i], x2 = src.x2[i], y2 = src.y2[i];
+            for (int b = a - 1; b >= 0; b--) {
+                int j = (int) keys[b];
+                if (absorbed[j] || src.cls[j] != src.cls[i]) continue;
+                float iw = Math.min(x2, src.x2[j]) - Math.max(x1, src.x1[j]);
+                float ih = Math.min(y2, src.y2[j]) - Math.max(y1, src.y1[j]);
+                if (iw <= 0 || ih <= 0) continue;
+                float smaller = Math.min((x2 - x1) * (y2 - y1), src.area(j));
+                if (iw * ih <= FUSE_IOS * smaller) continue;
+                absorbed[j] = true;
+                x1 = Math.min(x1, src.x1[j]);
+                y1 = Math.min(y1, src.y1[j]);
+                x2 = Math.max(x2, src.x2[j]);
+                y2 = Math.max(y2, src.y2[j]);
+            }
+            if (!dst.add(x1, y1, x2, y2, src.score[i], src.cls[i])) break;
+        }
+        return dst.size();
+    }
+}
@@ -0,0 +1,22 @@
+package com.irhammuch.android.facerecognition;
+
+/**
+ * A decoded frame as packed ARGB pixels. Frames belong to a {@link FrameSource} pool and go
+ * back to it through {@link FrameSource#release(VideoFrame)} once the pipeline is done.
+ */
+public final class VideoFrame {
+    public final int width;
+    public final int height;
+    public final int[] argb;
+    public int index;
+    public long timeUs;
+    // False when the source skipped converting this frame (see FrameSource.setPixelFilter);
+    // argb then still holds an older frame
+    public boolean hasPixels;
+
+    public VideoFrame(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.argb = new int[width * height];
+    }
+}
@@ -0,0 +1,55 @@
+package com.irhammuch.android.facerecognition;
+
+import java.nio.ByteBuffer;
+
+/** YUV 4:2:0 to packed ARGB conversion (BT.601, limited range) in fixed-point integer math. */
+public final class Yuv {
+    private Yuv() {}
+
+    /**
+     * Converts planar or semi-planar 4:2:0 data. {@code uvPixelStride} is 1 for I420 and 2 for
+     * interleaved NV12/NV21 chroma; buffers are read with absolute gets from position 0.
+     */
+    public static void toArgb(ByteBuffer y, int yRowStride,
+                              ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                              int width, int height, int[] out) {
+        toArgb(y, yRowStride, u, v, uvRowStride, uvPixelStride, width, height, 0, out);
+    }
+
+    /**
+     * Same, writing the picture turned clockwise by {@code rotation} degrees (0, 90, 180 or
+     * 270), as a video track's rotation metadata asks; for 90 and 270 {@code out} holds a
+     * {@code height} x {@code width} image.
+     */
+    public static void toArgb(ByteBuffer y, int yRowStride,
+                              ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                              int width, int height, int rotation, int[] out) {
+        for (int row = 0; row < height; row++) {
+            int yBase = row * yRowStride;
+            int uvBase = (row >> 1) * uvRowStride;
+            // where the row's first pixel lands and how far apart its pixels land
+            int o, step;
+            switch (rotation) {
+                case 90:  o = height - 1 - row; step = height; break;
+                case 180: o = (height - 1 - row) * width + width - 1; step = -1; break;
+                case 270: o = (width - 1) * height + row; step = -height; break;
+                default:  o = row * width; step = 1; break;
+            }
+            for (int col = 0; col < width; col++, o += step) {
+                int c = (y.get(yBase + col) & 0xFF) - 16;
+                int uvOff = uvBase + (col >> 1) * uvPixelStride;
+                int d = (u.get(uvOff) & 0xFF) - 128;
+                int e = (v.get(uvOff) & 0xFF) - 128;
+                int c298 = 298 * (c < 0 ? 0 : c) + 128;
+                int r = clamp((c298 + 409 * e) >> 8);
+                int g = clamp((c298 - 100 * d - 208 * e) >> 8);
+                int b = clamp((c298 + 516 * d) >> 8);
+                out[o] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+}
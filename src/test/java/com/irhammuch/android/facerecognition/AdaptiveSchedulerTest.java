@@ -0,0 +1,90 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveSchedulerTest {
+    private static final long MIN_US = 33_000, MAX_US = 500_000;
+
+    private static final class FakeClock implements AdaptiveScheduler.Clock {
+        long now;
+
+        @Override
+        public long nanoTime() { return now; }
+
+        void advanceMillis(long ms) { now += TimeUnit.MILLISECONDS.toNanos(ms); }
+    }
+
+    private static AdaptiveScheduler scheduler(FakeClock clock) {
+        return new AdaptiveScheduler(clock, 3, MIN_US, MAX_US,
+                TimeUnit.MILLISECONDS.toNanos(250), 0.8f, TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static void stages(AdaptiveScheduler s, long... millis) {
+        for (int i = 0; i < millis.length; i++) s.recordStage(i, TimeUnit.MILLISECONDS.toNanos(millis[i]));
+    }
+
+    @Test
+    public void staticScene_backsOffToMaxInterval() {
+        FakeClock clock = new FakeClock();
+        AdaptiveScheduler s = scheduler(clock);
+        stages(s, 5, 10, 20);
+        assertEquals(MAX_US, s.nextIntervalUs());
+    }
+
+    @Test
+    public void fastBall_samplesAsOftenAsTheDeviceAllows() {
+        FakeClock clock = new FakeClock();
+        AdaptiveScheduler s = scheduler(clock);
+        stages(s, 5, 10, 20);
+        s.recordMotion(1f);
+        // slowest stage 20 ms at 80% utilization -> 25 ms, below the 33 ms floor
+        assertEquals(MIN_US, s.nextIntervalUs());
+
+        for (int i = 0; i < 30; i++) stages(s, 5, 10, 80);
+        assertEquals(100_000, s.nextIntervalUs(), 2_000);
+    }
+
+    @Test
+    public void motionDecaysOverHalfLife() {
+        FakeClock clock = new FakeClock();
+        AdaptiveScheduler s = scheduler(clock);
+        s.recordMotion(1f);
+        assertEquals(MIN_US, s.nextIntervalUs());
+        clock.advanceMillis(1000);
+        assertEquals(0.5f, s.motion(), 1e-4f);
+        assertEquals(MAX_US - (MAX_US - MIN_US) / 2, s.nextIntervalUs(), 1);
+        clock.advanceMillis(10_000);
+        assertEquals(MAX_US, s.nextIntervalUs(), 1_000);
+
+        // a weaker reading does not pull a still-high level down
+        s.recordMotion(1f);
+        s.recordMotion(0.2f);
+        assertEquals(1f, s.motion(), 1e-6f);
+    }
+
+    @Test
+    public void latencyOverBudget_stretchesInterval() {
+        FakeClock clock = new FakeClock();
+        AdaptiveScheduler s = scheduler(clock);
+        stages(s, 5, 10, 40);
+        s.recordMotion(1f);
+        long before = s.nextIntervalUs();
+        s.recordLatency(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(before * 2, s.nextIntervalUs());
+    }
+
+    @Test
+    public void reset_forgetsHistory() {
+        FakeClock clock = new FakeClock();
+        AdaptiveScheduler s = scheduler(clock);
+        stages(s, 5, 10, 400);
+        s.recordMotion(1f);
+        s.reset();
+        assertEquals(0, s.bottleneckNanos());
+        assertEquals(0f, s.motion(), 0f);
+    }
+}
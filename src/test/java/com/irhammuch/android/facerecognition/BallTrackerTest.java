@@ -0,0 +1,216 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BallTrackerTest {
+    private static final float SIZE = 40;
+    private static final long FRAME_US = 33_333;
+
+    private long timeUs;
+
+    // Stream time of the next frame at 30 fps
+    private long next() {
+        return timeUs += FRAME_US;
+    }
+
+    private static BallTracker tracker(int detectEvery) {
+        return new BallTracker(0.5f, 0.1f, 5, detectEvery, 0.3f);
+    }
+
+    private static void ball(Detections d, float cx, float cy, float score) {
+        d.add(cx - SIZE / 2, cy - SIZE / 2, cx + SIZE / 2, cy + SIZE / 2, score, 0);
+    }
+
+    @Test
+    public void kalman_learnsConstantVelocity() {
+        KalmanBoxFilter kf = new KalmanBoxFilter(0, 0, 20, 20);
+        for (int i = 1; i <= 20; i++) {
+            kf.predict(FRAME_US);
+            kf.update(i * 5, i * 2, i * 5 + 20, i * 2 + 20);
+        }
+        // 5 and 2 px per frame at 30 fps
+        assertEquals(150f, kf.velocityX(), 6f);
+        assertEquals(60f, kf.velocityY(), 6f);
+        kf.predict(FRAME_US);
+        assertEquals(21 * 5 + 10, kf.centerX(), 1f);
+        assertEquals(21 * 2 + 10, kf.centerY(), 1f);
+    }
+
+    @Test
+    public void twoBalls_keepTheirIdsAcrossFrames() {
+        BallTracker tracker = tracker(1);
+        Detections d = new Detections(10);
+        Detections out = new Detections(10);
+        int[] ids = new int[10];
+        int idA = -1, idB = -1;
+        for (int f = 0; f < 30; f++) {
+            d.clear();
+            ball(d, 100 + f * 8, 200, 0.9f);       // moving right
+            ball(d, 500 - f * 6, 100 + f * 4, 0.8f); // moving down-left
+            tracker.update(d, next());
+            assertEquals(2, tracker.write(out, ids));
+            int a = (out.x1[0] + out.x2[0]) / 2 < (out.x1[1] + out.x2[1]) / 2 ? 0 : 1;
+            if (f == 0) {
+                idA = ids[a];
+                idB = ids[1 - a];
+                assertTrue(idA != idB);
+            } else if (100 + f * 8 < 500 - f * 6 - SIZE) {
+                // while they are apart, left box is always ball A
+                assertEquals(idA, ids[a]);
+                assertEquals(idB, ids[1 - a]);
+            }
+        }
+    }
+
+    @Test
+    public void lowConfidenceDetection_extendsExistingTrack() {
+        BallTracker tracker = tracker(1);
+        Detections d = new Detections(4);
+        Detections out = new Detections(4);
+        int[] ids = new int[4];
+        for (int f = 0; f < 5; f++) {
+            d.clear();
+            ball(d, 100 + f * 5, 100, 0.9f);
+            tracker.update(d, next());
+        }
+        tracker.write(out, ids);
+        int id = ids[0];
+
+        // motion blur: score falls below highThresh but the box still overlaps
+        d.clear();
+        ball(d, 125, 100, 0.2f);
+        tracker.update(d, next());
+        assertEquals(1, tracker.write(out, ids));
+        assertEquals(id, ids[0]);
+
+        // a weak box far away starts nothing
+        d.clear();
+        ball(d, 130, 100, 0.9f);
+        ball(d, 400, 400, 0.2f);
+        tracker.update(d, next());
+        assertEquals(1, tracker.write(out, ids));
+        assertEquals(id, ids[0]);
+    }
+
+    @Test
+    public void fastSmallBall_matchedByProximityWithoutOverlap() {
+        BallTracker tracker = tracker(1);
+        Detections d = new Detections(4);
+        Detections out = new Detections(4);
+        int[] ids = new int[4];
+        for (int f = 0; f < 10; f++) {
+            d.clear();
+            d.add(100 + f * 15, 100, 110 + f * 15, 110, 0.9f, 0); // 10 px ball, 15 px/frame
+            tracker.update(d, next());
+            assertEquals(1, tracker.write(out, ids));
+            assertEquals(1, ids[0]);
+        }
+    }
+
+    @Test
+    public void predict_propagatesBoxesBetweenDetections() {
+        BallTracker tracker = tracker(4);
+        Detections d = new Detections(4);
+        Detections out = new Detections(4);
+        int detections = 0;
+        for (int f = 0; f < 40; f++) {
+            float cx = 50 + f * 10;
+            if (tracker.shouldDetect()) {
+                d.clear();
+                ball(d, cx, 300, 0.9f);
+                tracker.update(d, next());
+                detections++;
+            } else {
+                tracker.predict(next());
+            }
+            if (f > 10) {
+                assertEquals(1, tracker.write(out, null));
+                assertEquals(cx, (out.x1[0] + out.x2[0]) / 2, 4f);
+            }
+        }
+        assertTrue("detector ran on " + detections + " of 40 frames", detections <= 40 / 4 + 3);
+    }
+
+    @Test
+    public void samplingIntervalChange_keepsPredictionOnTheBall() {
+        // 300 px/s to the right, sampled at 30 fps and then every 500 ms
+        BallTracker tracker = tracker(100);
+        Detections d = new Detections(4);
+        Detections out = new Detections(4);
+        int[] ids = new int[4];
+        long t = 0;
+        for (int f = 0; f < 30; f++, t += FRAME_US) {
+            d.clear();
+            ball(d, 100 + 300 * t / 1e6f, 300, 0.9f);
+            tracker.update(d, t);
+        }
+        tracker.write(out, ids);
+        int id = ids[0];
+        for (long step : new long[]{500_000, 500_000, 500_000, FRAME_US, 500_000}) {
+            t += step;
+            float cx = 100 + 300 * t / 1e6f;
+            tracker.predict(t);
+            assertEquals(1, tracker.write(out, ids));
+            assertEquals("after a " + step + " us step", cx, (out.x1[0] + out.x2[0]) / 2, 10f);
+            d.clear();
+            ball(d, cx, 300, 0.9f);
+            tracker.update(d, t);
+            assertEquals(1, tracker.write(out, ids));
+            assertEquals(id, ids[0]);
+        }
+    }
+
+    @Test
+    public void sameBallAtTwoIntervals_learnsTheSameVelocity() {
+        for (long step : new long[]{FRAME_US, 500_000}) {
+            BallTracker tracker = tracker(1);
+            Detections d = new Detections(4);
+            for (int f = 0; f < 20; f++) {
+                d.clear();
+                // 100 px/s: 50 px per slow step, inside the first match's proximity gate
+                ball(d, 100 + 100 * (f * step) / 1e6f, 300, 0.9f);
+                tracker.update(d, f * step);
+            }
+            assertEquals(1, tracker.tracks().size());
+            assertEquals("at " + step + " us", 100f, tracker.tracks().get(0).velocityX(), 5f);
+        }
+    }
+
+    @Test
+    public void decayingConfidence_requestsDetectionEarly() {
+        BallTracker tracker = new BallTracker(0.5f, 0.1f, 30, 100, 0.5f);
+        Detections d = new Detections(4);
+        for (int f = 0; f < 3; f++) {
+            d.clear();
+            ball(d, 100, 100, 0.6f);
+            tracker.update(d, next());
+        }
+        assertFalse(tracker.shouldDetect());
+        tracker.predict(next()); // 0.6 * 0.9 = 0.54
+        assertFalse(tracker.shouldDetect());
+        tracker.predict(next()); // 0.486
+        assertTrue(tracker.shouldDetect());
+    }
+
+    @Test
+    public void lostTrack_isRemovedAfterMaxLost() {
+        BallTracker tracker = tracker(1);
+        Detections d = new Detections(4);
+        Detections out = new Detections(4);
+        for (int f = 0; f < 3; f++) {
+            d.clear();
+            ball(d, 100, 100, 0.9f);
+            tracker.update(d, next());
+        }
+        d.clear();
+        tracker.update(d, next());
+        assertEquals(0, tracker.write(out, null));
+        assertEquals(1, tracker.tracks().size());
+        assertTrue(tracker.tracks().get(0).isLost());
+        for (int f = 0; f < 5; f++) tracker.update(d, next());
+        assertTrue(tracker.tracks().isEmpty());
+        assertTrue(tracker.shouldDetect());
+    }
+}
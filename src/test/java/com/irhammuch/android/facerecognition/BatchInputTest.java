@@ -0,0 +1,102 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class BatchInputTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("batch", "");
+        assertTrue(dir.delete() && dir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    static void writePpm(File file, int w, int h, int rgb) throws IOException {
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(("P6\n# test frame\n" + w + " " + h + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+            byte[] px = new byte[w * h * 3];
+            for (int i = 0; i < px.length; i += 3) {
+                px[i] = (byte) (rgb >> 16);
+                px[i + 1] = (byte) (rgb >> 8);
+                px[i + 2] = (byte) rgb;
+            }
+            os.write(px);
+        }
+    }
+
+    @Test
+    public void ppmSequence_sortedByName() throws IOException {
+        writePpm(new File(dir, "000002.ppm"), 3, 2, 0x0000FF);
+        writePpm(new File(dir, "000001.ppm"), 4, 2, 0x102030);
+        new File(dir, "notes.txt").createNewFile();
+
+        try (BatchInput input = new BatchInput(dir, 0, 0)) {
+            assertEquals(2, input.size());
+            assertEquals("000001.ppm", input.fileName(input.frame(0).file));
+            assertEquals(4, input.frame(0).width);
+
+            BatchInput.Scratch scratch = new BatchInput.Scratch();
+            int[] argb = input.read(0, scratch);
+            assertEquals(0xFF102030, argb[0]);
+            assertEquals(0xFF102030, argb[7]);
+            argb = input.read(1, scratch);
+            assertEquals(0xFF0000FF, argb[5]);
+        }
+    }
+
+    @Test
+    public void rawRgba_isSplitIntoFrames() throws IOException {
+        int w = 2, h = 2;
+        try (FileOutputStream os = new FileOutputStream(new File(dir, "clip.rgba"))) {
+            for (int f = 0; f < 3; f++) {
+                for (int p = 0; p < w * h; p++) os.write(new byte[]{(byte) (10 * f), 0, 0, (byte) 255});
+            }
+            os.write(new byte[5]); // partial trailing frame is ignored
+        }
+        try (BatchInput input = new BatchInput(dir, w, h)) {
+            assertEquals(3, input.size());
+            BatchInput.Scratch scratch = new BatchInput.Scratch();
+            for (int f = 0; f < 3; f++) {
+                assertEquals(f, input.frame(f).index);
+                assertEquals(0xFF000000 | (10 * f) << 16, input.read(f, scratch)[3]);
+            }
+        }
+    }
+
+    @Test
+    public void readAfterClose_fails() throws IOException {
+        writePpm(new File(dir, "000001.ppm"), 2, 2, 0x102030);
+        BatchInput input = new BatchInput(dir, 0, 0);
+        BatchInput.Scratch scratch = new BatchInput.Scratch();
+        assertEquals(0xFF102030, input.read(0, scratch)[0]);
+        input.close();
+        input.close();
+        try {
+            input.read(0, scratch);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rawWithoutSize_isRejected() throws IOException {
+        new FileOutputStream(new File(dir, "clip.yuv")).close();
+        new BatchInput(dir, 0, 0);
+    }
+}
@@ -0,0 +1,141 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class BatchRunnerTest {
+    private static final int SIZE = 64;
+    private File dir;
+
+    // Every frame yields the same two boxes: one confident, one below threshold
+    private static final float[] OUTPUT = {
+            2,
+            0.5f, 0.5f, 0.25f, 0.5f, 0.9f, 0,
+            0.2f, 0.2f, 0.1f, 0.1f, 0.3f, 0,
+    };
+
+    private static FakeInferenceEngine engine() {
+        return FakeInferenceEngine.fixed(SIZE, new int[]{1, OUTPUT.length}, OUTPUT);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("batch", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        // 128x64 frames letterbox to 64x32 with 16 px of padding above and below
+        for (int i = 0; i < 23; i++) {
+            BatchInputTest.writePpm(new File(dir, String.format("%04d.ppm", i)), 128, 64, 0x336699);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    private static String[] names(BatchInput input) {
+        String[] names = new String[input.fileCount()];
+        for (int i = 0; i < names.length; i++) names[i] = input.fileName(i);
+        return names;
+    }
+
+    @Test
+    public void everyFrameIsWrittenOnce_csv() throws IOException {
+        FakeInferenceEngine engine = engine();
+        BatchRunner runner = new BatchRunner(engine, true, 0.5f, 0.45f, 10, 4);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BatchRunner.Result result;
+        try (BatchInput input = new BatchInput(dir, 0, 0);
+             DetectionWriter out = DetectionWriter.open(DetectionWriter.Format.CSV, bytes, names(input))) {
+            result = runner.run(input, out);
+        }
+        assertEquals(23, result.frames);
+        assertEquals(23, engine.runs());
+        assertEquals(23, runner.metrics().count(PipelineMetrics.Counter.FRAMES));
+        assertEquals(23, runner.metrics().count(PipelineMetrics.Counter.DETECTIONS));
+        assertTrue(result.framesPerSecond() > 0);
+
+        String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals("file,frame,x1,y1,x2,y2,score,class", lines[0]);
+        assertEquals(24, lines.length);
+        boolean[] seen = new boolean[23];
+        for (int i = 1; i < lines.length; i++) {
+            String[] f = lines[i].split(",");
+            int n = Integer.parseInt(f[0].substring(0, 4));
+            assertFalse(seen[n]);
+            seen[n] = true;
+            // center (0.5, 0.5), 0.25 x 0.5 of the input -> 16x32 model px -> 32x64 frame px at (64, 32)
+            assertEquals("48,0,80,64,0.9,0", lines[i].substring(lines[i].indexOf(',', 9) + 1));
+        }
+    }
+
+    @Test
+    public void jsonLines_onePerFrame() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BatchInput input = new BatchInput(dir, 0, 0);
+             DetectionWriter out = DetectionWriter.open(DetectionWriter.Format.JSONL, bytes, names(input))) {
+            new BatchRunner(engine(), true, 0.5f, 0.45f, 10, 2).run(input, out);
+        }
+        String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(23, lines.length);
+        for (String line : lines) {
+            assertTrue(line, line.matches("\\{\"file\":\"\\d{4}\\.ppm\",\"frame\":0,\"boxes\":\\[\\[48,0,80,64,0.9,0]]}"));
+        }
+    }
+
+    @Test
+    public void binary_roundTrips() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BatchInput input = new BatchInput(dir, 0, 0);
+             DetectionWriter out = DetectionWriter.open(DetectionWriter.Format.BINARY, bytes, names(input))) {
+            new BatchRunner(engine(), true, 0.5f, 0.45f, 10, 3).run(input, out);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(DetectionWriter.MAGIC, in.readInt());
+        assertEquals(DetectionWriter.VERSION, in.readInt());
+        assertEquals(23, in.readInt());
+        for (int i = 0; i < 23; i++) assertEquals(String.format("%04d.ppm", i), in.readUTF());
+        int records = 0;
+        while (in.available() > 0) {
+            int file = in.readInt();
+            assertTrue(file >= 0 && file < 23);
+            assertEquals(0, in.readInt());
+            assertEquals(1, in.readShort());
+            assertEquals(48f, in.readFloat(), 1e-3f);
+            assertEquals(0f, in.readFloat(), 1e-3f);
+            assertEquals(80f, in.readFloat(), 1e-3f);
+            assertEquals(64f, in.readFloat(), 1e-3f);
+            assertEquals(0.9f, in.readFloat(), 1e-6f);
+            assertEquals(0, in.readShort());
+            records++;
+        }
+        assertEquals(23, records);
+    }
+
+    @Test
+    public void appendFixed_roundsAndTrims() {
+        StringBuilder sb = new StringBuilder();
+        DetectionWriter.appendFixed(sb, 12.34f, 10);
+        sb.append(' ');
+        DetectionWriter.appendFixed(sb, -0.06f, 10);
+        sb.append(' ');
+        DetectionWriter.appendFixed(sb, 0.905f, 1000);
+        sb.append(' ');
+        DetectionWriter.appendFixed(sb, 3.0001f, 1000);
+        sb.append(' ');
+        DetectionWriter.appendFixed(sb, 0.05f, 1000);
+        assertEquals("12.3 -0.1 0.905 3 0.05", sb.toString());
+    }
+}
@@ -0,0 +1,80 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoxTimelineTest {
+
+    private static boolean offer(BoxTimeline t, long timeUs, float x) {
+        Detections d = new Detections(4);
+        d.add(x, 0, x + 10, 10, 0.9f, 0);
+        return t.offer(timeUs, 100, 100, d.x1, d.y1, d.x2, d.y2, d.score, d.cls, new int[]{7}, d.size());
+    }
+
+    @Test
+    public void framesWaitForPlayback() {
+        BoxTimeline t = new BoxTimeline(8, 4);
+        offer(t, 0, 1);
+        offer(t, 33_000, 2);
+        offer(t, 66_000, 3);
+        BoxTimeline.Frame f = t.current(0);
+        assertEquals(0, f.timeUs());
+        assertEquals(1f, f.boxes().x1[0], 0f);
+        assertEquals(7, f.id(0));
+        assertEquals(33_000, t.nextTimeUs());
+        // still before the second frame: the first stays
+        assertEquals(0, t.current(32_999).timeUs());
+        // playback jumped past two frames: the latest due one shows
+        assertEquals(3f, t.current(70_000).boxes().x1[0], 0f);
+        assertEquals(Long.MAX_VALUE, t.nextTimeUs());
+    }
+
+    @Test
+    public void fullRing_dropsNewFrames() {
+        BoxTimeline t = new BoxTimeline(2, 4);
+        assertTrue(offer(t, 0, 1));
+        assertTrue(offer(t, 1, 2));
+        assertFalse(offer(t, 2, 3));
+        assertEquals(1, t.dropped());
+        t.current(0);
+        // showing one frame hands its slot back
+        assertTrue(offer(t, 3, 4));
+        assertEquals(4f, t.current(Long.MAX_VALUE).boxes().x1[0], 0f);
+    }
+
+    @Test
+    public void clear_dropsQueuedAndShownFrames() {
+        BoxTimeline t = new BoxTimeline(4, 4);
+        offer(t, 0, 1);
+        offer(t, 50, 2);
+        assertEquals(1, t.current(0).boxes().size());
+        t.clear();
+        offer(t, 10, 3);
+        BoxTimeline.Frame f = t.current(0);
+        assertTrue(f.boxes().isEmpty());
+        assertEquals(3f, t.current(10).boxes().x1[0], 0f);
+    }
+
+    @Test
+    public void producerAndConsumerThreads_seeWholeFrames() throws InterruptedException {
+        BoxTimeline t = new BoxTimeline(4, 4);
+        final int frames = 20_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < frames; i++) {
+                while (!offer(t, i, i)) Thread.yield();
+            }
+        });
+        producer.start();
+        long last = -1;
+        while (last < frames - 1) {
+            BoxTimeline.Frame f = t.current(Long.MAX_VALUE);
+            if (f.boxes().isEmpty()) continue;
+            // box and time were written together
+            assertEquals((float) f.timeUs(), f.boxes().x1[0], 0f);
+            assertTrue(f.timeUs() >= last);
+            last = f.timeUs();
+        }
+        producer.join();
+    }
+}
@@ -0,0 +1,123 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class DetectionCacheTest {
+    private static final int MAX_DETECTIONS = 4;
+
+    private static long recordBytes(int boxes) {
+        return 16 + boxes * 24L;
+    }
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("cache", "");
+        assertTrue(dir.delete() && dir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    private static Detections boxes(int n, float base) {
+        Detections d = new Detections(MAX_DETECTIONS);
+        for (int i = 0; i < n; i++) d.add(base + i, base, base + i + 10, base + 10, 0.5f + i * 0.1f, i);
+        return d;
+    }
+
+    @Test
+    public void putThenGet_acrossReopen() throws IOException {
+        DetectionCache cache = new DetectionCache(dir, Long.MAX_VALUE, MAX_DETECTIONS);
+        try (DetectionCache.Store store = cache.open("video", "v1")) {
+            // more records than the initial mapping holds, so it has to grow
+            for (int i = 0; i < 300; i++) store.put(i * 33_333L, boxes(i % 3, i));
+            store.put(0, boxes(3, 99)); // already stored: kept as it was
+            assertTrue(store.contains(33_333L));
+            assertFalse(store.contains(33_334L));
+        }
+        // records sized to their boxes: 0, 1 and 2 boxes a hundred times each
+        assertEquals(16 + 100 * (recordBytes(0) + recordBytes(1) + recordBytes(2)),
+                new File(dir, "video-v1.dcache").length());
+
+        try (DetectionCache.Store store = cache.open("video", "v1")) {
+            assertEquals(300, store.size());
+            Detections out = new Detections(MAX_DETECTIONS);
+            assertTrue(store.get(5 * 33_333L, out));
+            assertEquals(2, out.size());
+            assertEquals(6f, out.x1[1], 0f);
+            assertEquals(15f, out.y2[0], 0f);
+            assertEquals(0.6f, out.score[1], 1e-6f);
+            assertEquals(1, out.cls[1]);
+            assertTrue(store.get(0, out));
+            assertEquals(0, out.size());
+            assertFalse(store.get(1, out));
+        }
+        // another model version is a separate, empty store
+        try (DetectionCache.Store store = cache.open("video", "v2")) {
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    public void tornRecordAtTheTail_isDropped() throws IOException {
+        DetectionCache cache = new DetectionCache(dir, Long.MAX_VALUE, MAX_DETECTIONS);
+        try (DetectionCache.Store store = cache.open("video", "v1")) {
+            for (int i = 0; i < 3; i++) store.put(i, boxes(2, i));
+        }
+        // a crash half-way through writing the last record's boxes
+        File file = new File(dir, "video-v1.dcache");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(16 + 2 * recordBytes(2) + 20);
+            raf.writeInt(0x7F00FF00);
+        }
+        try (DetectionCache.Store store = cache.open("video", "v1")) {
+            assertEquals(2, store.size());
+            assertFalse(store.contains(2));
+            store.put(2, boxes(1, 0)); // the slot is reused
+            assertEquals(3, store.size());
+        }
+    }
+
+    @Test
+    public void overBudget_evictsLeastRecentlyUsedClosedStores() throws IOException {
+        long perStore = 16 + 10 * recordBytes(1);
+        DetectionCache cache = new DetectionCache(dir, 2 * perStore, MAX_DETECTIONS);
+        String[] videos = {"a", "b", "c"};
+        for (int v = 0; v < videos.length; v++) {
+            try (DetectionCache.Store store = cache.open(videos[v], "v1")) {
+                for (int i = 0; i < 10; i++) store.put(i, boxes(1, i));
+            }
+            assertTrue(new File(dir, videos[v] + "-v1.dcache").setLastModified(1_000_000L * (v + 1)));
+        }
+        // closing c put three stores in a budget for two: a, the oldest, went
+        assertFalse(new File(dir, "a-v1.dcache").exists());
+        assertTrue(new File(dir, "b-v1.dcache").exists());
+        assertTrue(new File(dir, "c-v1.dcache").exists());
+    }
+
+    @Test
+    public void contentKey_dependsOnContent() throws IOException {
+        File a = new File(dir, "a.mp4"), b = new File(dir, "b.mp4");
+        byte[] data = new byte[3 << 20];
+        data[data.length - 1] = 1;
+        Files.write(a.toPath(), data);
+        data[data.length - 1] = 2;
+        Files.write(b.toPath(), data);
+        assertEquals(DetectionCache.contentKey(a), DetectionCache.contentKey(a));
+        assertNotEquals(DetectionCache.contentKey(a), DetectionCache.contentKey(b));
+        assertNotEquals(DetectionCache.versionKey("m", 640), DetectionCache.versionKey("m", 416));
+    }
+}
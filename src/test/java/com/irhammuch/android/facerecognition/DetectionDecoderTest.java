@@ -0,0 +1,242 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DetectionDecoderTest {
+    private static final int SIZE = 640;
+
+    @Test
+    public void layoutFor_choosesFromShape() {
+        assertEquals(DetectionDecoder.Layout.FLAT_WITH_HEADER,
+                DetectionDecoder.layoutFor(new int[]{1, 301}));
+        assertEquals(DetectionDecoder.Layout.FLAT_WITH_HEADER,
+                DetectionDecoder.layoutFor(new int[]{1, 300}));
+        assertEquals(DetectionDecoder.Layout.YOLOV8, DetectionDecoder.layoutFor(new int[]{1, 84, 8400}));
+        assertEquals(DetectionDecoder.Layout.YOLOV8, DetectionDecoder.layoutFor(new int[]{1, 5, 8400}));
+        assertEquals(DetectionDecoder.Layout.END_TO_END, DetectionDecoder.layoutFor(new int[]{1, 300, 6}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void layoutFor_rejectsUnknownShape() {
+        DetectionDecoder.layoutFor(new int[]{1, 7, 3, 3});
+    }
+
+    @Test
+    public void decode_flatWithHeader_readsCountAndNormalizedCoords() {
+        DetectionDecoder dec = new DetectionDecoder(new int[]{1, 13}, SIZE, true, 0.5f);
+        float[] out = {
+                2,
+                0.5f, 0.5f, 0.1f, 0.2f, 0.9f, 0,
+                0.2f, 0.2f, 0.1f, 0.1f, 0.3f, 0,
+        };
+        Detections d = new Detections(dec.maxCandidates());
+        assertEquals(1, dec.decode(out, d));
+        assertEquals(288f, d.x1[0], 1e-3f);
+        assertEquals(256f, d.y1[0], 1e-3f);
+        assertEquals(352f, d.x2[0], 1e-3f);
+        assertEquals(384f, d.y2[0], 1e-3f);
+        assertEquals(0.9f, d.score[0], 0f);
+    }
+
+    @Test
+    public void decode_flat300_isCountHeaderAndFortyNineRecords() {
+        DetectionDecoder dec = new DetectionDecoder(new int[]{1, 300}, SIZE, true, 0.5f);
+        assertEquals(49, dec.maxCandidates());
+        float[] out = new float[300];
+        out[0] = 2;
+        float[] first = {0.5f, 0.5f, 0.1f, 0.2f, 0.9f, 0};
+        float[] second = {0.25f, 0.75f, 0.1f, 0.1f, 0.7f, 1};
+        System.arraycopy(first, 0, out, 1, 6);
+        System.arraycopy(second, 0, out, 7, 6);
+        // beyond the count: ignored even though it passes the threshold
+        System.arraycopy(first, 0, out, 13, 6);
+
+        Detections d = new Detections(dec.maxCandidates());
+        assertEquals(2, dec.decode(out, d));
+        assertEquals(288f, d.x1[0], 1e-3f);
+        assertEquals(256f, d.y1[0], 1e-3f);
+        assertEquals(0.9f, d.score[0], 0f);
+        assertEquals(128f, d.x1[1], 1e-3f);
+        assertEquals(448f, d.y1[1], 1e-3f);
+        assertEquals(1, d.cls[1]);
+
+        FloatBuffer buf = FloatBuffer.wrap(out);
+        Detections fromBuffer = new Detections(dec.maxCandidates());
+        assertEquals(2, dec.decode(buf, fromBuffer));
+        assertEquals(288f, fromBuffer.x1[0], 1e-3f);
+        assertEquals(448f, fromBuffer.y1[1], 1e-3f);
+    }
+
+    @Test
+    public void decode_yolov8_picksBestClassPerAnchor() {
+        int n = 8, channels = 6; // cx, cy, w, h, 2 classes
+        float[] out = new float[channels * n];
+        setAnchor(out, n, 1, 100, 100, 20, 20, 0.1f, 0.8f);
+        setAnchor(out, n, 3, 300, 200, 40, 10, 0.6f, 0.2f);
+        setAnchor(out, n, 2, 50, 50, 10, 10, 0.2f, 0.2f);
+
+        DetectionDecoder dec = new DetectionDecoder(new int[]{1, channels, n}, SIZE, false, 0.5f);
+        Detections d = new Detections(dec.maxCandidates());
+        assertEquals(2, dec.decode(out, d));
+        assertEquals(90f, d.x1[0], 0f);
+        assertEquals(1, d.cls[0]);
+        assertEquals(0.8f, d.score[0], 0f);
+        assertEquals(280f, d.x1[1], 0f);
+        assertEquals(195f, d.y1[1], 0f);
+        assertEquals(0, d.cls[1]);
+    }
+
+    @Test
+    public void decode_endToEnd_readsCornerBoxes() {
+        float[] out = {
+                0.1f, 0.1f, 0.2f, 0.2f, 0.7f, 3,
+                0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0,
+        };
+        DetectionDecoder dec = new DetectionDecoder(new int[]{1, 2, 6}, SIZE, true, 0.5f);
+        Detections d = new Detections(dec.maxCandidates());
+        assertEquals(1, dec.decode(out, d));
+        assertEquals(64f, d.x1[0], 1e-3f);
+        assertEquals(128f, d.y2[0], 1e-3f);
+        assertEquals(3, d.cls[0]);
+    }
+
+    @Test
+    public void decode_quantizedYolov8_matchesFloatDecode() {
+        int n = 8, channels = 5;
+        float scale = 1 / 255f;
+        int zp = -128;
+        float[] real = new float[channels * n];
+        setAnchor(real, n, 2, 0.5f, 0.25f, 0.1f, 0.2f, 0.9f);
+        setAnchor(real, n, 5, 0.1f, 0.1f, 0.05f, 0.05f, 0.3f);
+        byte[] q = new byte[real.length];
+        for (int i = 0; i < real.length; i++) q[i] = (byte) (Math.round(real[i] / scale) + zp);
+
+        DetectionDecoder dec = new DetectionDecoder(new int[]{1, channels, n}, SIZE, true, 0.5f);
+        Detections df = new Detections(n), dq = new Detections(n);
+        dec.decode(real, df);
+        assertEquals(1, dec.decode(q, scale, zp, true, dq));
+        assertEquals(df.x1[0], dq.x1[0], 2f);
+        assertEquals(df.y2[0], dq.y2[0], 2f);
+        assertEquals(0.9f, dq.score[0], scale);
+
+        // same tensor as uint8 with zero point 0
+        for (int i = 0; i < real.length; i++) q[i] = (byte) Math.round(real[i] / scale);
+        assertEquals(1, dec.decode(q, scale, 0, false, dq));
+        assertEquals(0.9f, dq.score[0], scale);
+    }
+
+    @Test
+    public void decode_inPlace_matchesArrayDecode() {
+        int n = 400, channels = 7; // 3 classes
+        Random rnd = new Random(3);
+        float[] out = new float[channels * n];
+        for (int i = 0; i < n; i++) {
+            float[] scores = {rnd.nextFloat(), rnd.nextFloat() * 0.6f, rnd.nextFloat() * 0.3f};
+            setAnchor(out, n, i, 0.1f + 0.8f * rnd.nextFloat(), 0.1f + 0.8f * rnd.nextFloat(),
+                    0.05f, 0.05f, scores);
+        }
+        FloatBuffer direct = ByteBuffer.allocateDirect(out.length * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        direct.put(out).rewind();
+
+        DetectionDecoder dec = new DetectionDecoder(new int[]{1, channels, n}, SIZE, true, 0.5f);
+        Detections a = new Detections(n), b = new Detections(n);
+        int count = dec.decode(out, a);
+        assertTrue(count > 0);
+        assertEquals(count, dec.decode(direct, b));
+        for (int i = 0; i < count; i++) {
+            assertEquals(a.x1[i], b.x1[i], 0f);
+            assertEquals(a.y2[i], b.y2[i], 0f);
+            assertEquals(a.score[i], b.score[i], 0f);
+            assertEquals(a.cls[i], b.cls[i]);
+        }
+    }
+
+    @Test
+    public void decode_inPlace_topKKeepsHighestScores() {
+        int n = 50, channels = 5;
+        float[] out = new float[channels * n];
+        for (int i = 0; i < n; i++) setAnchor(out, n, i, 0.5f, 0.5f, 0.1f, 0.1f, 0.5f + i / 100f);
+
+        DetectionDecoder dec = new DetectionDecoder(new int[]{1, channels, n}, SIZE, true, 0.5f, 5);
+        Detections d = new Detections(n);
+        assertEquals(5, dec.decode(FloatBuffer.wrap(out), d));
+        for (int k = 0; k < 5; k++) assertEquals(0.5f + (n - 1 - k) / 100f, d.score[k], 1e-6f);
+    }
+
+    @Test
+    public void decode_quantized_topKKeepsHighestScores() {
+        int n = 50, channels = 6; // 2 classes
+        float scale = 1 / 255f;
+        float[] real = new float[channels * n];
+        for (int i = 0; i < n; i++) setAnchor(real, n, i, 0.5f, 0.5f, 0.1f, 0.1f, 0.1f, 0.5f + i / 100f);
+        byte[] q = new byte[real.length];
+        for (int i = 0; i < real.length; i++) q[i] = (byte) Math.round(real[i] / scale);
+
+        DetectionDecoder dec = new DetectionDecoder(new int[]{1, channels, n}, SIZE, true, 0.5f, 5);
+        Detections d = new Detections(n);
+        assertEquals(5, dec.decode(q, scale, 0, false, d));
+        for (int k = 0; k < 5; k++) {
+            assertEquals(0.5f + (n - 1 - k) / 100f, d.score[k], scale);
+            assertEquals(1, d.cls[k]);
+            assertEquals(288f, d.x1[k], 2f);
+        }
+    }
+
+    @Test
+    public void decode_inPlace_flatWithHeader() {
+        float[] out = {
+                2,
+                0.5f, 0.5f, 0.1f, 0.2f, 0.9f, 1,
+                0.2f, 0.2f, 0.1f, 0.1f, 0.3f, 0,
+        };
+        DetectionDecoder dec = new DetectionDecoder(new int[]{1, 13}, SIZE, true, 0.5f);
+        Detections d = new Detections(dec.maxCandidates());
+        assertEquals(1, dec.decode(FloatBuffer.wrap(out), d));
+        assertEquals(288f, d.x1[0], 1e-3f);
+        assertEquals(1, d.cls[0]);
+    }
+
+    @Test
+    public void scaleCoords_undoesLetterbox() {
+        Letterbox lb = new Letterbox(SIZE);
+        lb.update(1920, 1080);
+        Detections d = new Detections(1);
+        d.add(0, 140, 640, 500, 1f, 0);
+
+        DetectionDecoder.scaleCoords(d, lb);
+        assertEquals(0f, d.x1[0], 1e-3f);
+        assertEquals(0f, d.y1[0], 1e-3f);
+        assertEquals(1920f, d.x2[0], 1e-2f);
+        assertEquals(1080f, d.y2[0], 1e-2f);
+    }
+
+    @Test
+    public void scaleCoords_addsCropOffset() {
+        Letterbox lb = new Letterbox(SIZE);
+        lb.update(1920, 1080, 1000, 300, 640, 640);
+        Detections d = new Detections(1);
+        d.add(100, 200, 120, 220, 1f, 0);
+        DetectionDecoder.scaleCoords(d, lb);
+        assertEquals(1100f, d.x1[0], 1e-3f);
+        assertEquals(500f, d.y1[0], 1e-3f);
+        assertEquals(1120f, d.x2[0], 1e-3f);
+        assertEquals(520f, d.y2[0], 1e-3f);
+    }
+
+    private static void setAnchor(float[] out, int n, int i, float cx, float cy, float w, float h,
+                                  float... scores) {
+        out[i] = cx;
+        out[n + i] = cy;
+        out[2 * n + i] = w;
+        out[3 * n + i] = h;
+        for (int c = 0; c < scores.length; c++) out[(4 + c) * n + i] = scores[c];
+    }
+}
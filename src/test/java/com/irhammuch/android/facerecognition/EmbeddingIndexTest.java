@@ -0,0 +1,109 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EmbeddingIndexTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("index", "");
+        assertTrue(dir.delete() && dir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void recognize_ranksByCosineDistance() {
+        EmbeddingIndex index = new EmbeddingIndex(3, 1); // grows past its capacity
+        index.register("a", "ball", new float[]{1, 0, 0});
+        index.register("b", "player", new float[]{0, 1, 0});
+        index.register("c", "player", new float[]{1, 1, 0});
+
+        List<SimilarityClassifier.Recognition> r = index.recognize(new float[]{2, 0.1f, 0}, 2);
+        assertEquals(2, r.size());
+        assertEquals("a", r.get(0).getId());
+        assertEquals("c", r.get(1).getId());
+        assertEquals(0f, r.get(0).getDistance(), 0.01f);
+        assertEquals(1 - (float) Math.cos(Math.PI / 4), r.get(1).getDistance(), 0.05f);
+        assertEquals(3, index.recognize(new float[]{0, 0, 1}, 10).size());
+    }
+
+    @Test
+    public void recognition_toStringSkipsMissingParts() {
+        assertEquals("[7] ball (12.5%)", new SimilarityClassifier.Recognition("7", "ball", 0.125f).toString());
+        assertEquals("ball", new SimilarityClassifier.Recognition(null, "ball", null).toString());
+    }
+
+    @Test
+    public void coarseIndex_withAllListsProbed_matchesFullScan() {
+        Random rnd = new Random(3);
+        EmbeddingIndex index = new EmbeddingIndex(16, 64);
+        for (int i = 0; i < 2000; i++) index.register("e" + i, null, randomVector(rnd, 16));
+        float[] q = randomVector(rnd, 16);
+        int[] fullRows = new int[5], rows = new int[5];
+        float[] fullDist = new float[5], dist = new float[5];
+        assertEquals(5, index.nearest(q, fullRows, fullDist));
+
+        index.buildCoarseIndex(32, 5, 1);
+        index.register("late", null, q); // joins its nearest list
+        index.setProbes(32);
+        assertEquals(5, index.nearest(q, rows, dist));
+        assertEquals("late", index.id(rows[0]));
+        assertEquals(0f, dist[0], 1e-5f);
+        for (int i = 0; i < 4; i++) assertEquals(fullRows[i], rows[i + 1]);
+
+        // a single probe still finds the entry equal to the query
+        index.setProbes(1);
+        assertEquals(1, index.nearest(q, new int[1], dist));
+        assertEquals(0f, dist[0], 1e-5f);
+    }
+
+    @Test
+    public void saveThenLoad_roundTripsEntries() throws IOException {
+        Random rnd = new Random(5);
+        EmbeddingIndex index = new EmbeddingIndex(8, 4);
+        for (int i = 0; i < 10; i++) index.register("id" + i, i % 2 == 0 ? "bäll" : null, randomVector(rnd, 8));
+        File file = new File(dir, "gallery.emb");
+        index.save(file);
+
+        EmbeddingIndex loaded = EmbeddingIndex.load(file);
+        assertEquals(8, loaded.dim());
+        assertEquals(10, loaded.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("id" + i, loaded.id(i));
+            assertEquals(index.title(i), loaded.title(i));
+        }
+        float[] q = randomVector(rnd, 8);
+        assertEquals(index.recognize(q, 3).toString(), loaded.recognize(q, 3).toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void load_rejectsOtherFiles() throws IOException {
+        File file = new File(dir, "other.bin");
+        Files.write(file.toPath(), new byte[32]);
+        EmbeddingIndex.load(file);
+    }
+
+    private static float[] randomVector(Random rnd, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) v[i] = (float) rnd.nextGaussian();
+        return v;
+    }
+}
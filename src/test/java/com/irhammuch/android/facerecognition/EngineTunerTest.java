@@ -0,0 +1,25 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+
+import static org.junit.Assert.*;
+
+public class EngineTunerTest {
+    @Test
+    public void int64Tensors_disableXnnpack() {
+        assertTrue(EngineTuner.supportsXnnpack(DataType.FLOAT32));
+        assertTrue(EngineTuner.supportsXnnpack(DataType.UINT8));
+        assertTrue(EngineTuner.supportsXnnpack(DataType.INT8));
+        assertFalse(EngineTuner.supportsXnnpack(DataType.INT64));
+        assertFalse(EngineTuner.supportsXnnpack(DataType.STRING));
+    }
+
+    @Test
+    public void threadCandidates_doubleUpToCoreCount() {
+        assertArrayEquals(new int[]{1}, EngineTuner.threadCandidates(1));
+        assertArrayEquals(new int[]{1, 2, 4, 8}, EngineTuner.threadCandidates(8));
+        assertArrayEquals(new int[]{1, 2, 4, 6}, EngineTuner.threadCandidates(6));
+        assertArrayEquals(new int[]{1}, EngineTuner.threadCandidates(0));
+    }
+}
@@ -0,0 +1,95 @@
+package com.irhammuch.android.facerecognition;
+
+import org.tensorflow.lite.DataType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in {@link InferenceEngine} for tests and benchmarks: a square float input, a fixed
+ * output shape and type, and a {@link Model} that fills the output from the input in place
+ * of a network. Only the synchronous {@link #run} is supported. The JMH source set sees this
+ * class through the test classpath.
+ */
+final class FakeInferenceEngine implements InferenceEngine {
+
+    /** Writes one output tensor; {@code output} is cleared and in native order. */
+    interface Model {
+        void run(ByteBuffer input, ByteBuffer output);
+    }
+
+    private final int inputSize;
+    private final int[] outputShape;
+    private final DataType outputType;
+    private final float outputScale;
+    private final int instances;
+    private final Model model;
+    private final AtomicInteger runs = new AtomicInteger();
+
+    /**
+     * @param outputScale quantization scale of a UINT8/INT8 output, 0 for float
+     * @param instances   instance count reported to callers that spread work over them
+     */
+    FakeInferenceEngine(int inputSize, int[] outputShape, DataType outputType, float outputScale,
+                        int instances, Model model) {
+        this.inputSize = inputSize;
+        this.outputShape = outputShape;
+        this.outputType = outputType;
+        this.outputScale = outputScale;
+        this.instances = instances;
+        this.model = model;
+    }
+
+    /** Float input and output, one instance. */
+    static FakeInferenceEngine floats(int inputSize, int[] outputShape, Model model) {
+        return new FakeInferenceEngine(inputSize, outputShape, DataType.FLOAT32, 0, 1, model);
+    }
+
+    /** Float engine whose every run emits {@code values}. */
+    static FakeInferenceEngine fixed(int inputSize, int[] outputShape, float... values) {
+        return floats(inputSize, outputShape, (input, output) -> output.asFloatBuffer().put(values));
+    }
+
+    /** Runs so far. */
+    int runs() { return runs.get(); }
+
+    @Override public int[] inputShape() { return new int[]{1, inputSize, inputSize, 3}; }
+    @Override public int[] outputShape() { return outputShape.clone(); }
+    @Override public DataType inputType() { return DataType.FLOAT32; }
+    @Override public DataType outputType() { return outputType; }
+    @Override public float inputScale() { return 0; }
+    @Override public int inputZeroPoint() { return 0; }
+    @Override public float outputScale() { return outputScale; }
+    @Override public int outputZeroPoint() { return 0; }
+    @Override public int instances() { return instances; }
+    @Override public int maxBatch() { return 1; }
+    @Override public long warmUp(int runs) { return 0; }
+    @Override public boolean resizeInput(int width, int height) { return false; }
+    @Override public void setNumThreads(int numThreads) { }
+    @Override public void close() { }
+
+    @Override
+    public int outputBytes() {
+        int elements = 1;
+        for (int d : outputShape) elements *= d;
+        return outputType == DataType.FLOAT32 ? elements * 4 : elements;
+    }
+
+    @Override
+    public void run(ByteBuffer input, ByteBuffer output) {
+        runs.incrementAndGet();
+        output.clear();
+        output.order(ByteOrder.nativeOrder());
+        model.run(input, output);
+    }
+
+    @Override
+    public Future<?> submit(ByteBuffer input, ByteBuffer output) { throw new UnsupportedOperationException(); }
+
+    @Override
+    public Future<?> submitBatch(ByteBuffer input, int batch, ByteBuffer output) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,129 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FramePipelineTest {
+
+    private static final class Recorder implements FramePipeline.Listener<Integer> {
+        final List<Integer> completed = new CopyOnWriteArrayList<>();
+        final List<Integer> dropped = new CopyOnWriteArrayList<>();
+        final AtomicInteger errors = new AtomicInteger();
+
+        @Override
+        public void onCompleted(Integer item) { completed.add(item); }
+
+        @Override
+        public void onDropped(Integer item) { dropped.add(item); }
+
+        @Override
+        public void onError(String stage, Integer item, Exception e) { errors.incrementAndGet(); }
+    }
+
+    private static FramePipeline.Source<Integer> counter(int frames) {
+        AtomicInteger next = new AtomicInteger();
+        return () -> {
+            int i = next.getAndIncrement();
+            return i < frames ? i : null;
+        };
+    }
+
+    private static FramePipeline.Stage<Integer> sleeping(long millis) {
+        return item -> Thread.sleep(millis);
+    }
+
+    @Test
+    public void block_deliversEveryFrameInOrder() throws Exception {
+        Recorder rec = new Recorder();
+        FramePipeline<Integer> p = new FramePipeline.Builder<>("test", counter(100))
+                .stage("preprocess", 2, BackpressurePolicy.BLOCK, item -> {})
+                .stage("infer", 1, BackpressurePolicy.BLOCK, sleeping(1))
+                .stage("render", 2, BackpressurePolicy.BLOCK, item -> {})
+                .listener(rec)
+                .build();
+        p.start();
+        assertTrue(p.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100, rec.completed.size());
+        for (int i = 0; i < 100; i++) assertEquals(Integer.valueOf(i), rec.completed.get(i));
+        assertTrue(rec.dropped.isEmpty());
+        assertFalse(p.isRunning());
+    }
+
+    @Test
+    public void dropOldest_shedsFramesBehindSlowStage() throws Exception {
+        Recorder rec = new Recorder();
+        FramePipeline<Integer> p = new FramePipeline.Builder<>("test", counter(200))
+                .stage("infer", 2, BackpressurePolicy.DROP_OLDEST, sleeping(2))
+                .listener(rec)
+                .build();
+        p.start();
+        assertTrue(p.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(200, rec.completed.size() + rec.dropped.size());
+        assertTrue(p.dropped(0) > 0);
+        assertStrictlyIncreasing(rec.completed);
+        assertEquals(Integer.valueOf(199), rec.completed.get(rec.completed.size() - 1));
+    }
+
+    @Test
+    public void latestOnly_keepsOnlyNewestFrame() throws Exception {
+        Recorder rec = new Recorder();
+        FramePipeline<Integer> p = new FramePipeline.Builder<>("test", counter(200))
+                .stage("infer", 4, BackpressurePolicy.LATEST_ONLY, sleeping(2))
+                .listener(rec)
+                .build();
+        p.start();
+        assertTrue(p.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(200, rec.completed.size() + rec.dropped.size());
+        assertTrue(rec.completed.size() < 200);
+        assertStrictlyIncreasing(rec.completed);
+        assertEquals(Integer.valueOf(199), rec.completed.get(rec.completed.size() - 1));
+    }
+
+    @Test
+    public void stageError_dropsFrameAndKeepsRunning() throws Exception {
+        Recorder rec = new Recorder();
+        FramePipeline<Integer> p = new FramePipeline.Builder<>("test", counter(10))
+                .stage("infer", 2, BackpressurePolicy.BLOCK, item -> {
+                    if (item % 3 == 0) throw new IllegalStateException("bad frame " + item);
+                })
+                .listener(rec)
+                .build();
+        p.start();
+        assertTrue(p.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(4, rec.errors.get());
+        assertEquals(6, rec.completed.size());
+        assertEquals(4, rec.dropped.size());
+    }
+
+    @Test
+    public void stop_handsBackEveryFrameInFlight() throws Exception {
+        Recorder rec = new Recorder();
+        FramePipeline<Integer> p = new FramePipeline.Builder<>("test", counter(Integer.MAX_VALUE))
+                .stage("preprocess", 4, BackpressurePolicy.BLOCK, sleeping(1))
+                .stage("infer", 4, BackpressurePolicy.DROP_OLDEST, sleeping(3))
+                .listener(rec)
+                .build();
+        p.start();
+        Thread.sleep(100);
+        p.stop();
+        assertTrue(p.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(p.produced(), rec.completed.size() + rec.dropped.size());
+    }
+
+    private static void assertStrictlyIncreasing(List<Integer> items) {
+        for (int i = 1; i < items.size(); i++) {
+            assertTrue(items.get(i - 1) < items.get(i));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class FramePreprocessorTest {
+    private static final int SIZE = 640;
+    // A per-frame buffer costs kilobytes; this much allocation is JVM noise
+    private static final long ALLOCATION_SLACK = 1024;
+
+    @Test
+    public void letterbox_fitsLandscapeFrame() {
+        Letterbox lb = new Letterbox(SIZE);
+        assertTrue(lb.update(1920, 1080));
+        assertEquals(1f / 3f, lb.ratio(), 1e-6f);
+        assertEquals(640, lb.scaledW());
+        assertEquals(360, lb.scaledH());
+        assertEquals(0, lb.padW());
+        assertEquals(140, lb.padH());
+        assertFalse(lb.update(1920, 1080));
+    }
+
+    @Test
+    public void normalize_writesRgbFloats() {
+        FramePreprocessor pre = new FramePreprocessor(SIZE);
+        int[] pix = pre.pixels();
+        pix[0] = 0xFF_FF_80_00;
+        pix[pix.length - 1] = 0xFF_00_00_FF;
+
+        FloatBuffer in = pre.normalize().asFloatBuffer();
+        assertEquals(SIZE * SIZE * 3, in.remaining());
+        assertEquals(1f, in.get(0), 0f);
+        assertEquals(128 / 255f, in.get(1), 0f);
+        assertEquals(0f, in.get(2), 0f);
+        assertEquals(1f, in.get(in.limit() - 1), 0f);
+    }
+
+    @Test
+    public void normalize_quantizedInputsCopyBytes() {
+        FramePreprocessor u8 = new FramePreprocessor(SIZE, FramePreprocessor.InputFormat.UINT8);
+        FramePreprocessor s8 = new FramePreprocessor(SIZE, FramePreprocessor.InputFormat.INT8);
+        u8.pixels()[0] = s8.pixels()[0] = 0xFF_FF_80_00;
+
+        ByteBuffer ub = u8.normalize();
+        assertEquals(SIZE * SIZE * 3, ub.remaining());
+        assertEquals((byte) 0xFF, ub.get(0));
+        assertEquals((byte) 0x80, ub.get(1));
+        assertEquals(0, ub.get(2));
+
+        ByteBuffer sb = s8.normalize();
+        assertEquals(127, sb.get(0));
+        assertEquals(0, sb.get(1));
+        assertEquals(-128, sb.get(2));
+    }
+
+    @Test
+    public void quantizedInputs_useTheTensorParameters() {
+        // symmetric int8: scale 1/128, zero point 0, as some converters emit
+        FramePreprocessor s8 = new FramePreprocessor(SIZE, FramePreprocessor.InputFormat.INT8, 1 / 128f, 0);
+        s8.pixels()[0] = 0xFF_FF_80_00;
+        ByteBuffer sb = s8.normalize();
+        assertEquals(127, sb.get(0)); // 128 clamped
+        assertEquals(64, sb.get(1));
+        assertEquals(0, sb.get(2));
+
+        // the fused path pads with the quantized black level and matches the two-step one
+        FramePreprocessor twoStep = new FramePreprocessor(SIZE, FramePreprocessor.InputFormat.UINT8, 0.02f, 10);
+        FramePreprocessor fused = new FramePreprocessor(SIZE, FramePreprocessor.InputFormat.UINT8, 0.02f, 10);
+        int[] src = noise(1280, 720, 3);
+        twoStep.letterboxFrom(src, 1280, 720);
+        twoStep.normalize();
+        fused.letterboxNormalize(src, 1280, 720);
+        assertSameTensor("uint8 0.02/10", twoStep.inputBuffer(), fused.inputBuffer());
+        assertEquals(10, fused.inputBuffer().get(0));
+    }
+
+    @Test
+    public void letterboxFrom_scalesIntoCenterAndPadsBlack() {
+        FramePreprocessor pre = new FramePreprocessor(SIZE);
+        int[] src = new int[1920 * 1080];
+        java.util.Arrays.fill(src, 0xFF_20_40_60);
+        pre.letterboxFrom(src, 1920, 1080);
+
+        int[] pix = pre.pixels();
+        assertEquals(0xFF000000, pix[0]);                       // top padding
+        assertEquals(0xFF000000, pix[SIZE * SIZE - 1]);         // bottom padding
+        assertEquals(0xFF_20_40_60, pix[140 * SIZE]);           // first content row
+        assertEquals(0xFF_20_40_60, pix[(140 + 359) * SIZE + SIZE - 1]);
+        assertEquals(0xFF000000, pix[(140 + 360) * SIZE]);
+    }
+
+    @Test
+    public void letterboxFrom_cropKeepsNativeResolution() {
+        FramePreprocessor pre = new FramePreprocessor(SIZE);
+        int w = 1920, h = 1080;
+        int[] src = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) src[y * w + x] = 0xFF000000 | (x & 0xFF) << 8 | (y & 0xFF);
+        }
+        pre.letterboxFrom(src, w, h, 700, 300, SIZE, SIZE);
+        assertEquals(1f, pre.letterbox().ratio(), 0f);
+        int[] pix = pre.pixels();
+        assertEquals(src[300 * w + 700], pix[0]);
+        assertEquals(src[(300 + 17) * w + 700 + 33], pix[17 * SIZE + 33]);
+        assertEquals(src[(300 + SIZE - 1) * w + 700 + SIZE - 1], pix[SIZE * SIZE - 1]);
+    }
+
+    @Test
+    public void normalize_steadyStateAllocatesNothing() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(mx.isThreadAllocatedMemorySupported());
+        mx.setThreadAllocatedMemoryEnabled(true);
+
+        FramePreprocessor pre = new FramePreprocessor(SIZE);
+        int[] pix = pre.pixels();
+        for (int i = 0; i < pix.length; i++) pix[i] = 0xFF000000 | ((i * 31) & 0xFFFFFF);
+
+        // warm up so JIT and class init are out of the measurement
+        for (int i = 0; i < 200; i++) pre.normalize();
+
+        long allocated = minAllocatedBytes(mx, () -> {
+            for (int i = 0; i < 50; i++) {
+                pre.letterbox().update(1920, 1080);
+                pre.normalize();
+            }
+        });
+        assertSame(pre.inputBuffer(), pre.normalize());
+        assertTrue("bytes allocated over 50 frames: " + allocated, allocated <= ALLOCATION_SLACK);
+    }
+
+    // Fewest bytes the current thread allocates in any of five runs of frames: JIT and
+    // deoptimization work can land on the test thread during a single run
+    private static long minAllocatedBytes(com.sun.management.ThreadMXBean mx, Runnable frames) {
+        long tid = Thread.currentThread().getId();
+        long min = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long before = mx.getThreadAllocatedBytes(tid);
+            frames.run();
+            min = Math.min(min, mx.getThreadAllocatedBytes(tid) - before);
+        }
+        return min;
+    }
+
+    private static int[] noise(int w, int h, long seed) {
+        java.util.Random random = new java.util.Random(seed);
+        int[] src = new int[w * h];
+        for (int i = 0; i < src.length; i++) src[i] = 0xFF000000 | random.nextInt(0x1000000);
+        return src;
+    }
+
+    private static void assertSameTensor(String what, ByteBuffer expected, ByteBuffer actual) {
+        assertEquals(what, expected.capacity(), actual.capacity());
+        for (int i = 0; i < expected.capacity(); i++) {
+            if (expected.get(i) != actual.get(i)) fail(what + ": tensors differ at byte " + i);
+        }
+    }
+
+    // Golden check: the fused kernel must write exactly what letterboxFrom + normalize write
+    @Test
+    public void letterboxNormalize_matchesTwoStepPath() {
+        int[][] frames = {{1920, 1080}, {1280, 720}, {720, 1280}, {333, 517}, {640, 640}, {200, 100}};
+        for (FramePreprocessor.InputFormat format : FramePreprocessor.InputFormat.values()) {
+            FramePreprocessor twoStep = new FramePreprocessor(SIZE, format);
+            FramePreprocessor fused = new FramePreprocessor(SIZE, format);
+            // geometry changes in both directions, so stale padding would show
+            for (int[] wh : frames) {
+                int w = wh[0], h = wh[1];
+                int[] src = noise(w, h, w * 31L + h);
+                twoStep.letterboxFrom(src, w, h);
+                twoStep.normalize();
+                fused.letterboxNormalize(src, w, h);
+                assertSameTensor(format + " " + w + "x" + h, twoStep.inputBuffer(), fused.inputBuffer());
+            }
+            int[] src = noise(1920, 1080, 5);
+            int[][] crops = {{700, 300, SIZE, SIZE}, {0, 0, 301, 157}, {1500, 900, 420, 180}};
+            for (int[] c : crops) {
+                twoStep.letterboxFrom(src, 1920, 1080, c[0], c[1], c[2], c[3]);
+                twoStep.normalize();
+                fused.letterboxNormalize(src, 1920, 1080, c[0], c[1], c[2], c[3]);
+                assertSameTensor(format + " crop " + java.util.Arrays.toString(c),
+                        twoStep.inputBuffer(), fused.inputBuffer());
+            }
+        }
+    }
+
+    @Test
+    public void runBand_onSeveralThreadsMatchesOneThread() throws InterruptedException {
+        int w = 1920, h = 1080, bands = 4;
+        int[] src = noise(w, h, 11);
+        FramePreprocessor single = new FramePreprocessor(SIZE);
+        single.letterboxNormalize(src, w, h);
+
+        final FramePreprocessor banded = new FramePreprocessor(SIZE);
+        banded.prepare(src, w, h, 0, 0, w, h);
+        Thread[] threads = new Thread[bands];
+        for (int b = 0; b < bands; b++) {
+            final int band = b;
+            threads[b] = new Thread(() -> banded.runBand(band, bands));
+            threads[b].start();
+        }
+        for (Thread t : threads) t.join();
+        assertSameTensor("4 bands", single.inputBuffer(), banded.inputBuffer());
+    }
+
+    @Test
+    public void letterboxNormalize_steadyStateAllocatesNothing() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(mx.isThreadAllocatedMemorySupported());
+        mx.setThreadAllocatedMemoryEnabled(true);
+
+        FramePreprocessor pre = new FramePreprocessor(SIZE);
+        int[] src = noise(1280, 720, 3);
+        for (int i = 0; i < 200; i++) pre.letterboxNormalize(src, 1280, 720, i % 7, 0, 1270, 720);
+
+        long allocated = minAllocatedBytes(mx, () -> {
+            for (int i = 0; i < 50; i++) pre.letterboxNormalize(src, 1280, 720, i % 7, 0, 1270, 720);
+        });
+        assertTrue("bytes allocated over 50 frames: " + allocated, allocated <= ALLOCATION_SLACK);
+    }
+}
@@ -0,0 +1,74 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverValuesWithinThreePercent() {
+        Random random = new Random(7);
+        for (int k = 0; k < 100_000; k++) {
+            long v = (long) Math.exp(random.nextDouble() * Math.log(LatencyHistogram.MAX_NANOS));
+            int i = LatencyHistogram.index(v);
+            long top = LatencyHistogram.highestEquivalent(i);
+            assertTrue(v + " above bucket top " + top, v <= top);
+            assertTrue(v + " -> " + top, top - v <= Math.max(1, v / 32));
+            if (i > 0) assertTrue(LatencyHistogram.highestEquivalent(i - 1) < v);
+        }
+    }
+
+    @Test
+    public void smallValues_areExact() {
+        for (long v = 0; v < 64; v++) {
+            assertEquals(v, LatencyHistogram.highestEquivalent(LatencyHistogram.index(v)));
+        }
+    }
+
+    @Test
+    public void percentiles_ofUniformMillis() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) h.record(ms * 1_000_000L);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(100, s.count());
+        assertEquals(50_000_000, s.percentile(0.5), 50_000_000 / 32.0);
+        assertEquals(99_000_000, s.percentile(0.99), 99_000_000 / 32.0);
+        assertEquals(100_000_000, s.percentile(1.0));
+        assertEquals(100_000_000, s.max());
+        assertEquals(50_500_000, s.mean());
+
+        h.reset();
+        assertEquals(0, h.snapshot().count());
+        assertEquals(0, h.snapshot().percentile(0.5));
+    }
+
+    @Test
+    public void concurrentWriters_loseNothing() throws InterruptedException {
+        final LatencyHistogram h = new LatencyHistogram();
+        final int threads = 4, perThread = 50_000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long base = (t + 1) * 1000L;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) h.record(base + i % 100);
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread w : workers) w.join();
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(threads * perThread, s.count());
+        assertEquals(threads * perThread, h.count());
+        assertEquals(4099, s.max());
+    }
+}
@@ -0,0 +1,125 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MotionGateTest {
+    private static final int W = 1920, H = 1080;
+
+    private static final long FRAME_US = 33_333;
+
+    private static MotionGate gate(long maxSkipUs) {
+        return new MotionGate(8, 32, 6, 1, maxSkipUs);
+    }
+
+    private static int[] background() {
+        int[] px = new int[W * H];
+        Random rnd = new Random(5);
+        for (int i = 0; i < px.length; i++) px[i] = 0xFF000000 | (rnd.nextInt(64) * 0x010101 + 0x404040);
+        return px;
+    }
+
+    private static void ball(int[] px, int cx, int cy, int r) {
+        for (int y = cy - r; y <= cy + r; y++) {
+            for (int x = cx - r; x <= cx + r; x++) px[y * W + x] = 0xFFFFFFFF;
+        }
+    }
+
+    @Test
+    public void identicalFrames_areSkipped() {
+        MotionGate gate = gate(100 * FRAME_US);
+        long t = 0;
+        int[] frame = background();
+        assertFalse(gate.isUnchanged(frame, W, H, t++ * FRAME_US)); // first frame always passes
+        assertTrue(gate.isUnchanged(frame, W, H, t++ * FRAME_US));
+        assertTrue(gate.isUnchanged(frame, W, H, t++ * FRAME_US));
+        assertEquals(3, gate.evaluated());
+        assertEquals(2, gate.skipped());
+        assertEquals(2 / 3f, gate.skipRatio(), 1e-6f);
+    }
+
+    @Test
+    public void sensorNoise_isIgnored() {
+        MotionGate gate = gate(100 * FRAME_US);
+        long t = 0;
+        int[] frame = background();
+        gate.isUnchanged(frame, W, H, t++ * FRAME_US);
+        int[] noisy = frame.clone();
+        Random rnd = new Random(9);
+        for (int i = 0; i < noisy.length; i++) noisy[i] += (rnd.nextInt(5) - 2) * 0x010101;
+        assertTrue(gate.isUnchanged(noisy, W, H, t++ * FRAME_US));
+    }
+
+    @Test
+    public void smallMovingBall_passes() {
+        MotionGate gate = gate(100 * FRAME_US);
+        long t = 0;
+        int[] frame = background();
+        ball(frame, 500, 500, 10);
+        gate.isUnchanged(frame, W, H, t++ * FRAME_US);
+        int[] next = background();
+        ball(next, 530, 505, 10);
+        assertFalse(gate.isUnchanged(next, W, H, t++ * FRAME_US));
+        assertTrue(gate.changedFraction() > 0);
+    }
+
+    @Test
+    public void comparesAgainstLastPassedFrame() {
+        MotionGate gate = gate(100 * FRAME_US);
+        long t = 0;
+        int[] a = background();
+        gate.isUnchanged(a, W, H, t++ * FRAME_US);
+        // slow drift: each step is small, but it accumulates against the reference
+        int[] b = a.clone();
+        for (int step = 0; step < 20; step++) {
+            for (int i = 0; i < b.length; i++) b[i] += 0x010101;
+            if (!gate.isUnchanged(b, W, H, t++ * FRAME_US)) return;
+        }
+        fail("drift never passed the gate");
+    }
+
+    @Test
+    public void maxSkipTime_letsAFrameThrough() {
+        MotionGate gate = gate(3 * FRAME_US);
+        int[] frame = background();
+        assertFalse(gate.isUnchanged(frame, W, H, 0));
+        assertTrue(gate.isUnchanged(frame, W, H, FRAME_US));
+        assertTrue(gate.isUnchanged(frame, W, H, 2 * FRAME_US));
+        assertFalse(gate.isUnchanged(frame, W, H, 3 * FRAME_US));
+        assertTrue(gate.isUnchanged(frame, W, H, 4 * FRAME_US));
+    }
+
+    @Test
+    public void maxSkipTime_holdsAtLowFrameRates() {
+        // sparse sampling: one skip already covers more stream time than allowed
+        MotionGate gate = gate(1_000_000);
+        int[] frame = background();
+        assertFalse(gate.isUnchanged(frame, W, H, 0));
+        assertTrue(gate.isUnchanged(frame, W, H, 500_000));
+        assertFalse(gate.isUnchanged(frame, W, H, 1_000_000));
+    }
+
+    @Test
+    public void seekBackwards_passes() {
+        MotionGate gate = gate(100 * FRAME_US);
+        int[] frame = background();
+        assertFalse(gate.isUnchanged(frame, W, H, 10 * FRAME_US));
+        assertFalse(gate.isUnchanged(frame, W, H, 0));
+        assertTrue(gate.isUnchanged(frame, W, H, FRAME_US));
+    }
+
+    @Test
+    public void newFrameSize_resetsReference() {
+        MotionGate gate = gate(100 * FRAME_US);
+        long t = 0;
+        gate.isUnchanged(background(), W, H, t++ * FRAME_US);
+        int[] small = new int[640 * 480];
+        Arrays.fill(small, 0xFF808080);
+        assertFalse(gate.isUnchanged(small, 640, 480, t++ * FRAME_US));
+        assertTrue(gate.isUnchanged(small, 640, 480, t++ * FRAME_US));
+    }
+}
@@ -0,0 +1,112 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NonMaxSuppressionTest {
+    private static final int SIZE = 640;
+
+    @Test
+    public void run_keepsHighestOfOverlappingBoxes() {
+        Detections in = new Detections(4);
+        in.add(0, 0, 100, 100, 0.6f, 0);
+        in.add(5, 5, 105, 105, 0.9f, 0);
+        in.add(300, 300, 350, 350, 0.7f, 0);
+        Detections out = new Detections(4);
+
+        assertEquals(2, new NonMaxSuppression(0.45f, 10, SIZE, false).run(in, out));
+        assertEquals(0.9f, out.score[0], 0f);
+        assertEquals(0.7f, out.score[1], 0f);
+    }
+
+    @Test
+    public void run_classAwareKeepsOverlapsOfOtherClasses() {
+        Detections in = new Detections(2);
+        in.add(0, 0, 100, 100, 0.9f, 0);
+        in.add(0, 0, 100, 100, 0.8f, 1);
+        Detections out = new Detections(2);
+
+        assertEquals(1, new NonMaxSuppression(0.45f, 10, SIZE, false).run(in, out));
+        assertEquals(2, new NonMaxSuppression(0.45f, 10, SIZE, true).run(in, out));
+    }
+
+    @Test
+    public void run_stopsAtMaxDetections() {
+        Detections in = new Detections(50);
+        for (int i = 0; i < 50; i++) in.add(i * 12, 0, i * 12 + 10, 10, 0.5f + i * 0.001f, 0);
+        Detections out = new Detections(50);
+
+        assertEquals(5, new NonMaxSuppression(0.45f, 5, SIZE, false).run(in, out));
+        assertEquals(0.549f, out.score[0], 1e-6f);
+    }
+
+    @Test
+    public void run_matchesBruteForceGreedyOnRandomBoxes() {
+        Random rnd = new Random(42);
+        NonMaxSuppression nms = new NonMaxSuppression(0.45f, 1000, SIZE, false);
+        for (int round = 0; round < 20; round++) {
+            Detections in = randomBoxes(rnd, 500);
+            Detections out = new Detections(500);
+            nms.run(in, out);
+
+            boolean[] expected = bruteForce(in, 0.45f);
+            int kept = 0;
+            for (boolean k : expected) if (k) kept++;
+            assertEquals(kept, out.size());
+            for (int k = 0; k < out.size(); k++) {
+                int src = indexOf(in, out, k);
+                assertTrue(expected[src]);
+            }
+        }
+    }
+
+    @Test
+    public void runSoft_decaysInsteadOfDropping() {
+        Detections in = new Detections(2);
+        in.add(0, 0, 100, 100, 0.9f, 0);
+        in.add(10, 0, 110, 100, 0.8f, 0);
+        Detections out = new Detections(2);
+
+        assertEquals(2, new NonMaxSuppression(0.45f, 10, SIZE, false).runSoft(in, 0.5f, 0.05f, out));
+        assertEquals(0.9f, out.score[0], 0f);
+        assertTrue(out.score[1] < 0.8f);
+        assertTrue(out.score[1] > 0.05f);
+    }
+
+    private static Detections randomBoxes(Random rnd, int n) {
+        Detections d = new Detections(n);
+        for (int i = 0; i < n; i++) {
+            float x = rnd.nextFloat() * 600, y = rnd.nextFloat() * 600;
+            float w = 5 + rnd.nextFloat() * 80, h = 5 + rnd.nextFloat() * 80;
+            d.add(x, y, x + w, y + h, 0.01f + rnd.nextFloat(), 0);
+        }
+        return d;
+    }
+
+    // Reference greedy NMS with the full double loop of the original implementation
+    private static boolean[] bruteForce(Detections d, float thresh) {
+        int n = d.size();
+        Integer[] idx = new Integer[n];
+        for (int i = 0; i < n; i++) idx[i] = i;
+        java.util.Arrays.sort(idx, (a, b) -> -Float.compare(d.score[a], d.score[b]));
+        boolean[] removed = new boolean[n], kept = new boolean[n];
+        for (int i : idx) {
+            if (removed[i]) continue;
+            kept[i] = true;
+            for (int j : idx) {
+                if (i != j && !removed[j] && NonMaxSuppression.iou(d, i, d, j) > thresh) removed[j] = true;
+            }
+        }
+        return kept;
+    }
+
+    private static int indexOf(Detections in, Detections out, int k) {
+        for (int i = 0; i < in.size(); i++) {
+            if (in.x1[i] == out.x1[k] && in.y1[i] == out.y1[k] && in.score[i] == out.score[k]) return i;
+        }
+        throw new AssertionError("kept box not found in input");
+    }
+}
@@ -0,0 +1,66 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PipelineMetricsTest {
+
+    @Test
+    public void reportDue_oncePerInterval() {
+        PipelineMetrics m = new PipelineMetrics(1000);
+        m.reset(0);
+        assertFalse(m.reportDue(999));
+        assertTrue(m.reportDue(1000));
+        assertFalse(m.reportDue(1000));
+        assertFalse(m.reportDue(1999));
+        assertTrue(m.reportDue(2500));
+        assertFalse(m.reportDue(3000));
+        assertTrue(m.reportDue(3500));
+    }
+
+    @Test
+    public void reportDue_withoutReset_startsAtFirstCall() {
+        PipelineMetrics m = new PipelineMetrics(1000);
+        assertFalse(m.reportDue(5000));
+        assertFalse(m.reportDue(5999));
+        assertTrue(m.reportDue(6000));
+    }
+
+    @Test
+    public void format_listsStagesWithSamplesAndAllCounters() {
+        PipelineMetrics m = new PipelineMetrics(1000);
+        m.record(PipelineMetrics.Stage.INFER, 12_000_000);
+        m.record(PipelineMetrics.Stage.NMS, 300_000);
+        m.increment(PipelineMetrics.Counter.FRAMES);
+        m.add(PipelineMetrics.Counter.DETECTIONS, 3);
+        String text = m.format();
+        assertTrue(text, text.contains("infer"));
+        assertTrue(text, text.contains("nms"));
+        assertFalse(text, text.contains("letterbox"));
+        assertTrue(text, text.contains("frames=1"));
+        assertTrue(text, text.contains("detections=3"));
+        assertTrue(text, text.contains("errors=0"));
+
+        m.reset(0);
+        assertEquals(0, m.count(PipelineMetrics.Counter.FRAMES));
+        assertEquals(0, m.histogram(PipelineMetrics.Stage.INFER).count());
+    }
+
+    @Test
+    public void cascadeSaving_weighsSkippedDetectorRunsAgainstThePresenceModel() {
+        PipelineMetrics m = new PipelineMetrics(1000);
+        m.record(PipelineMetrics.Stage.PRESENCE, 2_000_000);
+        m.record(PipelineMetrics.Stage.LETTERBOX, 1_000_000);
+        m.record(PipelineMetrics.Stage.INFER, 20_000_000);
+        m.add(PipelineMetrics.Counter.ABSENT, 3);
+        m.add(PipelineMetrics.Counter.PRESENT, 1);
+        m.increment(PipelineMetrics.Counter.CONFIRMED);
+        // 3 of 4 frames skip 21 ms; all 4 pay 2 ms
+        assertEquals((3 * 21e6 - 4 * 2e6) / 4, m.cascadeSaving(), 2e5);
+        String text = m.format();
+        assertTrue(text, text.contains("presence pass 25.0%, detector confirmed 100.0%"));
+
+        assertFalse(new PipelineMetrics(1000).format().contains("cascade"));
+    }
+}
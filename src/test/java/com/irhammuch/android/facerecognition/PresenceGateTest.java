@@ -0,0 +1,49 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+
+import static org.junit.Assert.*;
+
+public class PresenceGateTest {
+    private static final int SIZE = 32;
+
+    // Emits a fixed quantized output tensor of the given shape and type, scale 1/255
+    private static InferenceEngine quantized(int[] shape, DataType type, byte[] output) {
+        return new FakeInferenceEngine(SIZE, shape, type, 1 / 255f, 1, (input, out) -> out.put(output));
+    }
+
+    @Test
+    public void classifier_usesTheBallProbability() throws Exception {
+        PresenceGate gate = new PresenceGate(FakeInferenceEngine.fixed(SIZE, new int[]{1, 2}, 0.8f, 0.2f), 0.3f);
+        assertFalse(gate.evaluate(new int[64 * 64], 64, 64));
+        assertEquals(0.2f, gate.score(), 0f);
+        assertFalse(gate.hasHeatmap());
+        assertEquals(RoiPlanner.FULL_FRAME, gate.seedWindow(16, 64, 64));
+    }
+
+    @Test
+    public void heatmap_locatesThePeakInFramePixels() throws Exception {
+        // 4x4 heatmap, peak in row 1, column 2
+        float[] heat = new float[16];
+        heat[1 * 4 + 2] = 0.9f;
+        heat[3] = 0.4f;
+        PresenceGate gate = new PresenceGate(FakeInferenceEngine.fixed(SIZE, new int[]{1, 4, 4, 1}, heat), 0.5f);
+        // 128x64 letterboxes to 32x16 with 8 px of padding above and below
+        assertTrue(gate.evaluate(new int[128 * 64], 128, 64));
+        assertEquals(0.9f, gate.score(), 0f);
+        // cell center (20, 12) in model pixels -> ((20 - 0) * 4, (12 - 8) * 4)
+        assertEquals(80f, gate.centerX(), 0.01f);
+        assertEquals(16f, gate.centerY(), 0.01f);
+        // a 48 px window around it, pushed back inside the frame
+        assertEquals(RoiPlanner.pack(56, 0, 48, 48), gate.seedWindow(48, 128, 64));
+    }
+
+    @Test
+    public void quantizedOutput_isDequantized() throws Exception {
+        byte[] q = {(byte) 51};
+        PresenceGate gate = new PresenceGate(quantized(new int[]{1, 1}, DataType.UINT8, q), 0.3f);
+        assertFalse(gate.evaluate(new int[16], 4, 4));
+        assertEquals(0.2f, gate.score(), 1e-6f);
+    }
+}
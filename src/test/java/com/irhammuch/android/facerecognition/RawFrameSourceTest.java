@@ -0,0 +1,163 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class RawFrameSourceTest {
+    private static final int W = 8, H = 4;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("frames", ".raw");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void i420_convertsEveryFrameInOrder() throws IOException {
+        // frame i: Y = 16 + 20 * i, neutral chroma -> gray levels
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            for (int i = 0; i < 5; i++) os.write(i420Frame(16 + 20 * i, 128, 128));
+        }
+        try (RawFrameSource src = new RawFrameSource(file, W, H, RawFrameSource.PixelFormat.I420, 25, 0, 2)) {
+            assertEquals(5, src.frameCount());
+            for (int i = 0; i < 5; i++) {
+                VideoFrame f = src.next();
+                assertNotNull(f);
+                assertEquals(i, f.index);
+                assertEquals(i * 40_000L, f.timeUs);
+                int gray = Math.round((20 * i) * 298 / 256f);
+                int p = f.argb[W * H - 1];
+                assertEquals(gray, p & 0xFF, 1);
+                assertEquals(p & 0xFF, (p >> 8) & 0xFF);
+                assertEquals(p & 0xFF, (p >> 16) & 0xFF);
+                src.release(f);
+            }
+            assertNull(src.next());
+        }
+    }
+
+    @Test
+    public void pixelFilter_skipsConversionButKeepsTimestamps() throws IOException {
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            for (int i = 0; i < 3; i++) os.write(i420Frame(16 + 100 * i, 128, 128));
+        }
+        try (RawFrameSource src = new RawFrameSource(file, W, H, RawFrameSource.PixelFormat.I420, 25, 0, 1)) {
+            src.setPixelFilter(timeUs -> timeUs != 40_000L);
+            VideoFrame f = src.next();
+            assertTrue(f.hasPixels);
+            src.release(f);
+            f = src.next();
+            assertFalse(f.hasPixels);
+            assertEquals(1, f.index);
+            assertEquals(40_000L, f.timeUs);
+            assertEquals(0, f.argb[0] & 0xFF); // still the black first frame
+            src.release(f);
+            f = src.next();
+            assertTrue(f.hasPixels);
+            assertEquals(80_000L, f.timeUs);
+        }
+    }
+
+    @Test
+    public void cancel_failsANextWaitingForAFreeFrame() throws Exception {
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            for (int i = 0; i < 3; i++) os.write(i420Frame(16, 128, 128));
+        }
+        try (RawFrameSource src = new RawFrameSource(file, W, H, RawFrameSource.PixelFormat.I420, 25, 0, 1)) {
+            assertNotNull(src.next()); // the only buffer, never released
+            Exception[] thrown = new Exception[1];
+            Thread decoder = new Thread(() -> {
+                try {
+                    src.next();
+                } catch (Exception e) {
+                    thrown[0] = e;
+                }
+            });
+            decoder.start();
+            Thread.sleep(20);
+            src.cancel();
+            decoder.join(2_000);
+            assertFalse(decoder.isAlive());
+            assertTrue(thrown[0] instanceof java.io.InterruptedIOException);
+        }
+    }
+
+    @Test
+    public void i420_decodesChroma() throws IOException {
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(i420Frame(81, 90, 240)); // BT.601 red
+        }
+        try (RawFrameSource src = new RawFrameSource(file, W, H, RawFrameSource.PixelFormat.I420, 25, 0, 1)) {
+            int p = src.next().argb[0];
+            assertTrue(((p >> 16) & 0xFF) > 240);
+            assertTrue(((p >> 8) & 0xFF) < 10);
+            assertTrue((p & 0xFF) < 10);
+        }
+    }
+
+    @Test
+    public void sampleInterval_skipsFramesWithoutDecodingThem() throws IOException {
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            for (int i = 0; i < 10; i++) os.write(rgbaFrame(i, 0, 0));
+        }
+        // 10 fps stream sampled every 250 ms -> frames 0, 3, 6, 9
+        try (RawFrameSource src = new RawFrameSource(file, W, H, RawFrameSource.PixelFormat.RGBA_8888, 10, 250_000, 1)) {
+            int[] expected = {0, 3, 6, 9};
+            for (int e : expected) {
+                VideoFrame f = src.next();
+                assertEquals(e * 100_000L, f.timeUs);
+                assertEquals(0xFF000000 | e << 16, f.argb[0]);
+                src.release(f);
+            }
+            assertNull(src.next());
+        }
+    }
+
+    @Test
+    public void pool_reusesReleasedBuffers() throws IOException {
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            for (int i = 0; i < 4; i++) os.write(rgbaFrame(i, i, i));
+        }
+        try (RawFrameSource src = new RawFrameSource(file, W, H, RawFrameSource.PixelFormat.RGBA_8888, 30, 0, 2)) {
+            VideoFrame a = src.next();
+            VideoFrame b = src.next();
+            assertNotSame(a, b);
+            src.release(a);
+            assertSame(a, src.next());
+            src.release(b);
+            assertSame(b, src.next());
+        }
+    }
+
+    private static byte[] i420Frame(int y, int u, int v) {
+        int ySize = W * H, cSize = (W / 2) * (H / 2);
+        byte[] b = new byte[ySize + 2 * cSize];
+        java.util.Arrays.fill(b, 0, ySize, (byte) y);
+        java.util.Arrays.fill(b, ySize, ySize + cSize, (byte) u);
+        java.util.Arrays.fill(b, ySize + cSize, b.length, (byte) v);
+        return b;
+    }
+
+    private static byte[] rgbaFrame(int r, int g, int b) {
+        byte[] out = new byte[W * H * 4];
+        for (int i = 0; i < out.length; i += 4) {
+            out[i] = (byte) r;
+            out[i + 1] = (byte) g;
+            out[i + 2] = (byte) b;
+            out[i + 3] = (byte) 0xFF;
+        }
+        return out;
+    }
+}
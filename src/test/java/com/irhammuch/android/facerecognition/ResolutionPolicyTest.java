@@ -0,0 +1,67 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResolutionPolicyTest {
+    private static final int[] SIZES = {320, 416, 512, 640};
+    private static final long BUDGET = 10_000_000;
+
+    private static ResolutionPolicy auto(int initial) {
+        return new ResolutionPolicy(SIZES, initial, BUDGET, 0.6f, 3);
+    }
+
+    // Inference time proportional to input pixels: 12 ms at 640
+    private static long cost(int size) {
+        return 12_000_000L * size * size / (640 * 640);
+    }
+
+    @Test
+    public void fixed_neverChanges() {
+        ResolutionPolicy p = ResolutionPolicy.fixed(416);
+        for (int i = 0; i < 10; i++) assertEquals(416, p.record(Long.MAX_VALUE / 2));
+        assertFalse(p.isAuto());
+    }
+
+    @Test
+    public void overBudget_stepsDownAfterAWindow() {
+        ResolutionPolicy p = auto(640);
+        assertEquals(640, p.record(12_000_000));
+        assertEquals(640, p.record(12_000_000));
+        assertEquals(512, p.record(12_000_000));
+        assertEquals(512, p.current());
+    }
+
+    @Test
+    public void headroom_stepsUp() {
+        ResolutionPolicy p = auto(320);
+        for (int i = 0; i < 3; i++) p.record(2_000_000);
+        // 2 ms * (416/320)^2 = 3.4 ms, inside 60% of the budget
+        assertEquals(416, p.current());
+    }
+
+    @Test
+    public void settlesWithoutOscillating() {
+        ResolutionPolicy p = auto(640);
+        for (int i = 0; i < 60; i++) p.record(cost(p.current()));
+        // 640 costs 12 ms, over budget; 512 costs 7.7 ms and 640 would not fit the headroom
+        assertEquals(512, p.current());
+        for (int i = 0; i < 60; i++) assertEquals(512, p.record(cost(p.current())));
+    }
+
+    @Test
+    public void staysAtTheEnds() {
+        ResolutionPolicy slow = auto(320);
+        for (int i = 0; i < 9; i++) slow.record(50_000_000);
+        assertEquals(320, slow.current());
+        ResolutionPolicy fast = auto(640);
+        for (int i = 0; i < 9; i++) fast.record(1_000);
+        assertEquals(640, fast.current());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initialSizeMustBeACandidate() {
+        auto(600);
+    }
+}
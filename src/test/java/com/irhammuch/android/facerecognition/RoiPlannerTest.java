@@ -0,0 +1,67 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RoiPlannerTest {
+    private static final int W = 1920, H = 1080;
+    private static final long FRAME_US = 33_333;
+    private static final long LEAD_US = 3 * FRAME_US;
+
+    private static BallTracker trackBall(float cx, float cy, float vx) {
+        BallTracker tracker = new BallTracker(0.5f, 0.1f, 5, 1, 0.3f);
+        Detections d = new Detections(4);
+        for (int f = 0; f < 10; f++) {
+            d.clear();
+            float x = cx - (9 - f) * vx;
+            d.add(x - 10, cy - 10, x + 10, cy + 10, 0.9f, 0);
+            tracker.update(d, f * FRAME_US);
+        }
+        return tracker;
+    }
+
+    @Test
+    public void noTrackedBall_searchesFullFrame() {
+        RoiPlanner planner = new RoiPlanner(640, 2f, 10);
+        BallTracker empty = new BallTracker(0.5f, 0.1f, 5, 1, 0.3f);
+        assertEquals(RoiPlanner.FULL_FRAME, planner.plan(empty, W, H, LEAD_US));
+    }
+
+    @Test
+    public void trackedBall_getsNativeResolutionWindowAhead() {
+        RoiPlanner planner = new RoiPlanner(640, 2f, 10);
+        long roi = planner.plan(trackBall(1000, 500, 20), W, H, LEAD_US);
+        assertNotEquals(RoiPlanner.FULL_FRAME, roi);
+        assertEquals(640, RoiPlanner.width(roi));
+        assertEquals(640, RoiPlanner.height(roi));
+        int x = RoiPlanner.x(roi), y = RoiPlanner.y(roi);
+        // current box and the box three frames ahead both inside
+        assertTrue(x <= 990 && x + 640 >= 1070);
+        assertTrue(y <= 490 && y + 640 >= 510);
+    }
+
+    @Test
+    public void windowIsClampedInsideFrame() {
+        RoiPlanner planner = new RoiPlanner(640, 2f, 10);
+        long roi = planner.plan(trackBall(20, 1070, 0), W, H, LEAD_US);
+        assertEquals(0, RoiPlanner.x(roi));
+        assertEquals(H - 640, RoiPlanner.y(roi));
+    }
+
+    @Test
+    public void periodicFullFrameSearch() {
+        RoiPlanner planner = new RoiPlanner(640, 2f, 2);
+        BallTracker tracker = trackBall(1000, 500, 0);
+        assertNotEquals(RoiPlanner.FULL_FRAME, planner.plan(tracker, W, H, LEAD_US));
+        assertNotEquals(RoiPlanner.FULL_FRAME, planner.plan(tracker, W, H, LEAD_US));
+        assertEquals(RoiPlanner.FULL_FRAME, planner.plan(tracker, W, H, LEAD_US));
+        assertNotEquals(RoiPlanner.FULL_FRAME, planner.plan(tracker, W, H, LEAD_US));
+    }
+
+    @Test
+    public void smallFrame_neverCrops() {
+        RoiPlanner planner = new RoiPlanner(640, 2f, 10);
+        assertEquals(RoiPlanner.FULL_FRAME, planner.plan(trackBall(300, 200, 0), 640, 480, LEAD_US));
+    }
+}
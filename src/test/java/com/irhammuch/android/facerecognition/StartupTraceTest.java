@@ -0,0 +1,27 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StartupTraceTest {
+
+    @Test
+    public void phasesAreTimedPerThread() throws InterruptedException {
+        final long[] now = {0};
+        final StartupTrace trace = new StartupTrace(() -> now[0]);
+        now[0] = 5_000_000;
+        assertEquals(5_000_000, trace.mark("model mapped"));
+        now[0] = 12_000_000;
+        // another thread's first phase runs from the start, not from this thread's mark
+        final long[] staged = new long[1];
+        Thread other = new Thread(() -> staged[0] = trace.mark("video staged"));
+        other.start();
+        other.join();
+        assertEquals(12_000_000, staged[0]);
+        now[0] = 20_000_000;
+        assertEquals(15_000_000, trace.mark("engine ready"));
+        assertEquals("model mapped 5.0 ms (at 5.0 ms), video staged 12.0 ms (at 12.0 ms), "
+                + "engine ready 15.0 ms (at 20.0 ms)", trace.toString());
+    }
+}
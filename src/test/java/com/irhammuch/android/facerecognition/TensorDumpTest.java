@@ -0,0 +1,29 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class TensorDumpTest {
+
+    @Test
+    public void writeThenRead_roundTripsShapeAndValues() throws IOException {
+        float[] values = {0.5f, -1f, 3.25f, 0f, 42f, 1e-6f};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TensorDump.write(bytes, new int[]{1, 2, 3}, FloatBuffer.wrap(values));
+
+        TensorDump dump = TensorDump.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertArrayEquals(new int[]{1, 2, 3}, dump.shape);
+        assertArrayEquals(values, dump.data, 0f);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsOtherFiles() throws IOException {
+        TensorDump.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+}
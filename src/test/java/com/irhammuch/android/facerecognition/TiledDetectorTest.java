@@ -0,0 +1,98 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class TiledDetectorTest {
+    private static final int SIZE = 64;
+
+    // Reports the bounding box of all white input pixels, if any, as one detection
+    private static InferenceEngine whiteBoxEngine() {
+        return FakeInferenceEngine.floats(SIZE, new int[]{1, 7}, (input, output) -> {
+            FloatBuffer in = input.duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+            int x1 = SIZE, y1 = SIZE, x2 = -1, y2 = -1;
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    int p = (y * SIZE + x) * 3;
+                    if (in.get(p) > 0.5f && in.get(p + 1) > 0.5f && in.get(p + 2) > 0.5f) {
+                        x1 = Math.min(x1, x);
+                        y1 = Math.min(y1, y);
+                        x2 = Math.max(x2, x + 1);
+                        y2 = Math.max(y2, y + 1);
+                    }
+                }
+            }
+            float[] out = x2 < 0 ? new float[7] : new float[]{1,
+                    (x1 + x2) / 2f / SIZE, (y1 + y2) / 2f / SIZE, (float) (x2 - x1) / SIZE,
+                    (float) (y2 - y1) / SIZE, 0.9f, 0};
+            output.asFloatBuffer().put(out);
+        });
+    }
+
+    private static TiledDetector tiled(InferenceEngine engine, int columns, int rows, float overlap,
+                                       ExecutorService executor) {
+        return new TiledDetector(engine, () -> new Detector(engine, SIZE, true, 0.5f, 0, 0.45f, 10, null),
+                columns, rows, overlap, true, 10, executor, null);
+    }
+
+    private static int[] frame(int w, int h, int x1, int y1, int x2, int y2) {
+        int[] argb = new int[w * h];
+        Arrays.fill(argb, 0xFF202020);
+        for (int y = y1; y < y2; y++) Arrays.fill(argb, y * w + x1, y * w + x2, 0xFFFFFFFF);
+        return argb;
+    }
+
+    @Test
+    public void tiles_coverTheFrameEvenlyWithOverlap() throws Exception {
+        TiledDetector d = tiled(whiteBoxEngine(), 3, 2, 0.2f, null);
+        d.detect(new int[1920 * 1080], 1920, 1080, new Detections(10));
+        assertEquals(6, d.tileCount());
+        // 1920 / (3 - 2 * 0.2) and 1080 / (2 - 0.2), outer tiles on the edges
+        assertEquals(RoiPlanner.pack(0, 0, 739, 600), d.tile(0));
+        assertEquals(RoiPlanner.pack(591, 0, 739, 600), d.tile(1));
+        assertEquals(RoiPlanner.pack(1181, 480, 739, 600), d.tile(5));
+    }
+
+    @Test
+    public void objectSeenByEveryPart_isReportedOnce() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            TiledDetector d = tiled(whiteBoxEngine(), 2, 1, 0.25f, pool);
+            // tiles 0-147 and 109-256; the ball lies in both and in the global pass
+            Detections out = new Detections(10);
+            assertEquals(1, d.detect(frame(256, 128, 120, 60, 132, 72), 256, 128, out));
+            assertEquals(120, out.x1[0], 4);
+            assertEquals(60, out.y1[0], 4);
+            assertEquals(132, out.x2[0], 4);
+            assertEquals(72, out.y2[0], 4);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void fragmentAtATileEdge_mergesIntoTheWholeBox() throws Exception {
+        TiledDetector d = tiled(whiteBoxEngine(), 2, 1, 0.25f, null);
+        // tile 0 ends at 147 and sees only the left part of the ball
+        Detections out = new Detections(10);
+        assertEquals(1, d.detect(frame(256, 128, 140, 20, 156, 36), 256, 128, out));
+        assertEquals(140, out.x1[0], 4);
+        assertEquals(156, out.x2[0], 4);
+    }
+
+    @Test
+    public void frameThatFitsTheInput_runsOnce() throws Exception {
+        TiledDetector d = tiled(whiteBoxEngine(), 2, 2, 0.2f, null);
+        Detections out = new Detections(10);
+        assertEquals(1, d.detect(frame(64, 48, 10, 10, 20, 20), 64, 48, out));
+        assertEquals(10, out.x1[0], 1);
+        assertEquals(20, out.x2[0], 1);
+    }
+}
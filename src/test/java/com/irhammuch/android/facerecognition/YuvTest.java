@@ -0,0 +1,48 @@
+package com.irhammuch.android.facerecognition;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class YuvTest {
+    private static final int W = 4, H = 2;
+
+    // Gray I420 picture whose luma rises along the rows, so every pixel is distinct
+    private static int[] convert(int rotation) {
+        ByteBuffer y = ByteBuffer.allocate(W * H);
+        for (int i = 0; i < W * H; i++) y.put(i, (byte) (20 + 20 * i));
+        ByteBuffer chroma = ByteBuffer.allocate(W * H / 4);
+        for (int i = 0; i < chroma.capacity(); i++) chroma.put(i, (byte) 128);
+        int[] out = new int[W * H];
+        Yuv.toArgb(y, W, chroma, chroma, W / 2, 1, W, H, rotation, out);
+        return out;
+    }
+
+    @Test
+    public void rotation_turnsThePictureClockwise() {
+        int[] up = convert(0);
+        int[] r90 = convert(90), r180 = convert(180), r270 = convert(270);
+        for (int row = 0; row < H; row++) {
+            for (int col = 0; col < W; col++) {
+                int p = up[row * W + col];
+                // turned 90 clockwise: H wide, W high; the left column becomes the top row
+                assertEquals(p, r90[col * H + (H - 1 - row)]);
+                assertEquals(p, r180[(H - 1 - row) * W + (W - 1 - col)]);
+                assertEquals(p, r270[(W - 1 - col) * H + row]);
+            }
+        }
+    }
+
+    @Test
+    public void noRotation_matchesThePlainConversion() {
+        ByteBuffer y = ByteBuffer.allocate(W * H);
+        for (int i = 0; i < W * H; i++) y.put(i, (byte) (20 + 20 * i));
+        ByteBuffer chroma = ByteBuffer.allocate(W * H / 4);
+        for (int i = 0; i < chroma.capacity(); i++) chroma.put(i, (byte) 128);
+        int[] plain = new int[W * H];
+        Yuv.toArgb(y, W, chroma, chroma, W / 2, 1, W, H, plain);
+        assertArrayEquals(plain, convert(0));
+    }
+}